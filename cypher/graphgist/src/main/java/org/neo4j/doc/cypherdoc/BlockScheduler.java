@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.doc.cypherdoc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Processes the blocks of a document with the blocks that do not depend on each other running at the same
+ * time, and with the same output as processing them one after the other.
+ * <p>
+ * Cypher blocks that may change the database are sequence points: they are run once all blocks before them
+ * are done, and before any block after them is started. The Cypher blocks that only read from the database
+ * and the graphs in between sequence points run at the same time, as do SQL blocks, which run in order among
+ * themselves, and blocks that show or test results, which run once the results they would have seen are
+ * there. Every block that is run on its own is given a {@link State#copy() copy} of the state of the document,
+ * with the results it would have seen. Blocks that neither run queries nor look at results are processed
+ * right away.
+ */
+class BlockScheduler
+{
+    private final State state;
+    private final Executor executor;
+    private final List<CompletableFuture<String>> outputs = new ArrayList<>();
+    private CompletableFuture<Result> latestResult = CompletableFuture.completedFuture( null );
+    private CompletableFuture<Result> testedResult = CompletableFuture.completedFuture( null );
+    private CompletableFuture<Result> latestSqlResult = CompletableFuture.completedFuture( null );
+    private CompletableFuture<Result> testedSqlResult = CompletableFuture.completedFuture( null );
+    private CompletableFuture<?> previousSql = CompletableFuture.completedFuture( null );
+    private boolean failed;
+
+    /**
+     * @param executor runs the blocks that can run at the same time as others, which with
+     * {@code Runnable::run} are all processed in order on the calling thread.
+     */
+    BlockScheduler( State state, Executor executor )
+    {
+        this.state = state;
+        this.executor = executor;
+    }
+
+    /**
+     * Schedules the next block of the document. Blocks after a block that has failed are not processed.
+     */
+    void schedule( Block block )
+    {
+        if ( failed || outputs.stream().anyMatch( CompletableFuture::isCompletedExceptionally ) )
+        {
+            failed = true;
+            return;
+        }
+        switch ( block.type )
+        {
+            case CYPHER:
+                cypher( block );
+                break;
+            case SQL:
+                CompletableFuture<State> sql = submit( block, copy -> {}, previousSql );
+                previousSql = sql;
+                latestSqlResult = latest( sql.thenApply( copy -> copy.latestSqlResult ), latestSqlResult );
+                break;
+            case GRAPH:
+                submit( block, copy -> {} );
+                break;
+            case GRAPH_RESULT:
+            case PROFILE:
+            case PROFILETEST:
+            case TABLE:
+                CompletableFuture<Result> latest = latestResult;
+                submit( block, copy -> copy.latestResult = latest.join(), latest );
+                break;
+            case SQL_TABLE:
+                CompletableFuture<Result> latestSql = latestSqlResult;
+                submit( block, copy -> copy.latestSqlResult = latestSql.join(), latestSql );
+                break;
+            case QUERYTEST:
+                queryTest( block );
+                break;
+            default:
+                // changes nothing but the parameters and files of the state, which are copied for later blocks
+                outputs.add( process( block, state ) );
+        }
+    }
+
+    /**
+     * @return the output of all blocks, in order, once they are done.
+     * @throws RuntimeException the failure of the first block that failed, once all blocks are done.
+     */
+    String output()
+    {
+        CompletableFuture.allOf( outputs.toArray( new CompletableFuture<?>[outputs.size()] ) )
+                .handle( ( done, failure ) -> null ).join();
+        StringBuilder output = new StringBuilder( 4096 );
+        for ( CompletableFuture<String> blockOutput : outputs )
+        {
+            try
+            {
+                output.append( blockOutput.join() ).append( CypherDoc.EOL ).append( CypherDoc.EOL );
+            }
+            catch ( CompletionException e )
+            {
+                Throwable cause = e.getCause();
+                if ( cause instanceof RuntimeException )
+                {
+                    throw (RuntimeException) cause;
+                }
+                if ( cause instanceof Error )
+                {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+        return output.toString();
+    }
+
+    private void cypher( Block block )
+    {
+        boolean sequencePoint;
+        try
+        {
+            sequencePoint = mayUpdate( block );
+        }
+        catch ( RuntimeException e )
+        {
+            // the block fails the same way when it is processed, which it then is on its own
+            sequencePoint = true;
+        }
+        CompletableFuture<State> cypher;
+        if ( sequencePoint )
+        {
+            CompletableFuture.allOf( outputs.toArray( new CompletableFuture<?>[outputs.size()] ) )
+                    .handle( ( done, failure ) -> null ).join();
+            if ( outputs.stream().anyMatch( CompletableFuture::isCompletedExceptionally ) )
+            {
+                failed = true;
+                return;
+            }
+            State copy = state.copy();
+            CompletableFuture<String> output = process( block, copy );
+            outputs.add( output );
+            cypher = output.thenApply( processed -> copy );
+        }
+        else
+        {
+            cypher = submit( block, copy -> {} );
+        }
+        latestResult = latest( cypher.thenApply( copy -> copy.latestResult ), latestResult );
+        state.parameters.clear();
+    }
+
+    private boolean mayUpdate( Block block )
+    {
+        for ( String query : BlockType.executedQueries( block ) )
+        {
+            if ( state.mayUpdate( query ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void queryTest( Block block )
+    {
+        CompletableFuture<Result> latest = latestResult;
+        CompletableFuture<Result> tested = testedResult;
+        CompletableFuture<Result> latestSql = latestSqlResult;
+        CompletableFuture<Result> testedSql = testedSqlResult;
+        submit( block, copy ->
+        {
+            copy.latestResult = latest.join();
+            copy.testedResult = tested.join();
+            copy.latestSqlResult = latestSql.join();
+            copy.testedSqlResult = testedSql.join();
+        }, latest, tested, latestSql, testedSql );
+        testedResult = latest;
+        testedSqlResult = latestSql;
+    }
+
+    /**
+     * Processes a block on a copy of the state, once the blocks it depends on are done.
+     *
+     * @param prepare gives the copy the results the block would have seen.
+     * @return the copy, with what the block left in it, once the block is done.
+     */
+    private CompletableFuture<State> submit( Block block, Consumer<State> prepare, CompletableFuture<?>... after )
+    {
+        State copy = state.copy();
+        CompletableFuture<String> output = CompletableFuture.allOf( after ).thenApplyAsync( done ->
+        {
+            prepare.accept( copy );
+            return block.process( copy );
+        }, executor );
+        outputs.add( output );
+        return output.thenApply( processed -> copy );
+    }
+
+    private static CompletableFuture<String> process( Block block, State state )
+    {
+        CompletableFuture<String> output = new CompletableFuture<>();
+        try
+        {
+            output.complete( block.process( state ) );
+        }
+        catch ( RuntimeException | Error e )
+        {
+            output.completeExceptionally( e );
+        }
+        return output;
+    }
+
+    /**
+     * @return the result a block leaves behind, or the one before it if the block did not run any query.
+     */
+    private static CompletableFuture<Result> latest( CompletableFuture<Result> result,
+            CompletableFuture<Result> previous )
+    {
+        return result.thenCombine( previous, ( current, before ) -> current != null ? current : before );
+    }
+}
@@ -23,23 +23,24 @@ import org.apache.commons.lang3.StringUtils;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.ObjectWriter;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.StandardCharsets;
+import java.io.StringWriter;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.neo4j.collection.primitive.PrimitiveLongCollections;
+import org.neo4j.collection.primitive.PrimitiveLongSet;
+import org.neo4j.cypher.javacompat.internal.GraphDatabaseCypherService;
 import org.neo4j.kernel.api.KernelTransaction;
 import org.neo4j.kernel.api.security.AnonymousContext;
 import org.neo4j.kernel.impl.coreapi.InternalTransaction;
@@ -165,11 +166,11 @@ enum BlockType
             {
                 throw new IllegalArgumentException( "Nothing to test" );
             }
-            List<String> tests = block.lines.subList( 1, block.lines.size() - 1 );
+            List<String> tests = queryTests( block );
             boolean checkCypherResults = state.latestResult != null && state.latestResult != state.testedResult;
             boolean checkSqlResults = state.latestSqlResult != null && state.latestSqlResult != state.testedSqlResult;
-            String result = checkCypherResults ? state.latestResult.text : null;
-            String sqlResult = checkSqlResults ? state.latestSqlResult.text : null;
+            Result result = checkCypherResults ? state.latestResult : null;
+            Result sqlResult = checkSqlResults ? state.latestSqlResult : null;
             List<String> failures = new ArrayList<>();
             List<String> sqlFailures = new ArrayList<>();
             for ( String test : tests )
@@ -285,33 +286,20 @@ enum BlockType
         String process( Block block, State state )
         {
             String firstLine = block.lines.get( 0 );
-            boolean exec = !(firstLine.contains( "noexec" ) || firstLine.contains( "hideexec" ));
+            boolean exec = isExecuted( block );
             List<String> statements = getQueriesBlockContent( block );
             List<String> prettifiedStatements = new ArrayList<>();
-            String webQuery = null;
-            String fileQuery = null;
             for ( String query : statements )
             {
-                webQuery = query;
-                fileQuery = query;
+                String webQuery = query;
                 for ( String file : state.knownFiles )
                 {
-                    File absolutePath = new File( state.parentDirectory, file );
-                    String fileUrl = absolutePath.toURI().toString();
-                    fileQuery = replaceFilename( fileQuery, file, fileUrl );
                     webQuery = replaceFilename( webQuery, file, state.url + file );
                 }
                 if ( exec )
                 {
-                    state.latestResult =
-                            new Result( fileQuery, state.database.getGraphDatabaseService().execute( "PROFILE " + fileQuery, state.parameters ), state.database );
+                    state.latestResult = state.execute( query );
                     prettifiedStatements.add( state.prettify( webQuery ) );
-                    try ( InternalTransaction tx = state.database.beginTransaction( KernelTransaction.Type.explicit,
-                            AnonymousContext.read() ) )
-                    {
-                        state.database.getGraphDatabaseService().schema().awaitIndexesOnline( 10000, TimeUnit.SECONDS );
-                        tx.success();
-                    }
                 }
                 else
                 {
@@ -456,18 +444,37 @@ enum BlockType
                 id = "result";
             }
         }
+        // graphs of the same database, or of the same result of it, come out the same
+        String graph = resultOnly ? "result " + sorted( state.latestResult.nodeIds ) + " " +
+                                    sorted( state.latestResult.relationshipIds ) : "full";
+        String dot = state.cached( "graph", graph, () -> renderGraph( state, resultOnly ) );
+        StringBuilder output = new StringBuilder( 512 );
+        output.append( "[\"dot\", \"cypherdoc-" )
+                .append( id )
+                .append( '-' )
+                .append( Integer.toHexString( dot.hashCode() ) )
+                .append( ".svg\", \"neoviz\"]\n----\n" )
+                .append( dot )
+                .append( "----\n" );
+        return output.toString();
+    }
+
+    private static String renderGraph( State state, boolean resultOnly )
+    {
         GraphvizWriter writer = new GraphvizWriter(
                 AsciiDocSimpleStyle.withAutomaticRelationshipTypeColors() );
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try ( InternalTransaction tx = state.database.beginTransaction( KernelTransaction.Type.explicit, AnonymousContext.read() ) )
+        StringWriter out = new StringWriter();
+        GraphDatabaseCypherService database = state.database();
+        try ( InternalTransaction tx = database.beginTransaction( KernelTransaction.Type.explicit, AnonymousContext.read() ) )
         {
+            // nodes and relationships that are unchanged since an earlier graph are not rendered again
             if ( resultOnly )
             {
-                writer.emit( out, ResultWalker.result( state ) );
+                writer.emit( out, ResultWalker.result( state ), state.graphFragments );
             }
             else
             {
-                writer.emit( out, Walker.fullGraph( state.database.getGraphDatabaseService() ) );
+                writer.emit( out, Walker.fullGraph( database.getGraphDatabaseService() ), state.graphFragments );
             }
             tx.success();
         }
@@ -475,23 +482,50 @@ enum BlockType
         {
             e.printStackTrace();
         }
-        StringBuilder output = new StringBuilder( 512 );
-        try
-        {
-            String dot = out.toString( StandardCharsets.UTF_8.name() );
-            output.append( "[\"dot\", \"cypherdoc-" )
-                    .append( id )
-                    .append( '-' )
-                    .append( Integer.toHexString( dot.hashCode() ) )
-                    .append( ".svg\", \"neoviz\"]\n----\n" )
-                    .append( dot )
-                    .append( "----\n" );
-        }
-        catch ( UnsupportedEncodingException e )
+        return out.toString();
+    }
+
+    private static String sorted( PrimitiveLongSet ids )
+    {
+        long[] sorted = PrimitiveLongCollections.asArray( ids.iterator() );
+        Arrays.sort( sorted );
+        return Arrays.toString( sorted );
+    }
+
+    /**
+     * @return the statements a {@link #CYPHER} block runs, as written in the document, in order.
+     */
+    static List<String> executedQueries( Block block )
+    {
+        return isExecuted( block ) ? getQueriesBlockContent( block ) : new ArrayList<>();
+    }
+
+    private static boolean isExecuted( Block block )
+    {
+        String firstLine = block.lines.get( 0 );
+        return !(firstLine.contains( "noexec" ) || firstLine.contains( "hideexec" ));
+    }
+
+    /**
+     * @return {@code query} as it is run, with the files it loads by their absolute {@code file:} URIs.
+     */
+    static String fileQuery( String query, State state )
+    {
+        String fileQuery = query;
+        for ( String file : state.knownFiles )
         {
-            e.printStackTrace();
+            File absolutePath = new File( state.parentDirectory, file );
+            fileQuery = replaceFilename( fileQuery, file, absolutePath.toURI().toString() );
         }
-        return output.toString();
+        return fileQuery;
+    }
+
+    /**
+     * @return the strings a {@link #QUERYTEST} block expects to find in the results.
+     */
+    static List<String> queryTests( Block block )
+    {
+        return block.lines.subList( 1, block.lines.size() - 1 );
     }
 
     private static boolean isABlockOfType( List<String> block, String type )
@@ -653,6 +687,14 @@ enum BlockType
         builder.append( "| " ).append( value ).append( SPACE_SEGMENT.substring( value.length() + 1 ) );
     }
 
+    /**
+     * @return whether {@code query} loads the file known by {@code filename}.
+     */
+    static boolean loadsFile( String query, String filename )
+    {
+        return query.contains( "'" + filename + "'" ) || query.contains( '"' + filename + '"' );
+    }
+
     private static String replaceFilename( String query, String filename, String replacement )
     {
         return query.replace( "'" + filename + "'", "'" + replacement + "'" )
@@ -26,17 +26,14 @@ import java.io.PrintStream;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.neo4j.cypher.javacompat.internal.GraphDatabaseCypherService;
-import org.neo4j.graphdb.config.Setting;
-import org.neo4j.graphdb.factory.GraphDatabaseSettings;
 import org.neo4j.graphdb.mockfs.EphemeralFileSystemAbstraction;
-import org.neo4j.test.TestGraphDatabaseFactory;
 
 /**
  * Parse AsciiDoc-like content for use in Cypher documentation.
@@ -59,6 +56,7 @@ import org.neo4j.test.TestGraphDatabaseFactory;
 public final class CypherDoc
 {
     static final String EOL = System.getProperty( "line.separator" );
+    private static final AtomicInteger SQL_DATABASES = new AtomicInteger();
 
     private CypherDoc()
     {
@@ -69,53 +67,84 @@ public final class CypherDoc
      */
     public static String parse( String input, File parentDirectory, String url )
     {
-        List<Block> blocks = parseBlocks( input );
+        try ( Connection conn = openSqlDatabase();
+              DatabasePool databases = new DatabasePool( 0 ) )
+        {
+            return parse( input, parentDirectory, url, conn, databases, null, Runnable::run );
+        }
+        catch ( SQLException sqlException )
+        {
+            throw new RuntimeException( sqlException );
+        }
+    }
 
-        EphemeralFileSystemAbstraction fs = new EphemeralFileSystemAbstraction();
-        //TODO remove config when compiled plans are feature complete
-        Map<Setting<?>, String> config = new HashMap<>();
-        config.put( GraphDatabaseSettings.cypher_runtime, "INTERPRETED" );
-        GraphDatabaseCypherService database = new GraphDatabaseCypherService(
-                new TestGraphDatabaseFactory().setFileSystem( fs ).newImpermanentDatabase( config ) );
+    /**
+     * Parse a string as CypherDoc-enhanced AsciiDoc, with SQL blocks run against the given database, which
+     * should be empty, and Cypher blocks against a database from the pool, which is only acquired if not all
+     * results can be found in the result cache.
+     *
+     * @param resultCache the results of earlier runs, or {@code null} to run all queries.
+     * @param executor runs the blocks that do not depend on each other at the same time, see
+     * {@link BlockScheduler}.
+     */
+    static String parse( String input, File parentDirectory, String url, Connection sqlDatabase,
+            DatabasePool databases, ResultCache resultCache, Executor executor )
+    {
+        List<Block> blocks = parseBlocks( input );
 
-        Connection conn = null;
+        DatabasePool.LazyDatabase database = databases.lazy();
         TestFailureException failure = null;
         try
         {
-            conn = DriverManager.getConnection( "jdbc:hsqldb:mem:graphgist;shutdown=true" );
-            conn.setAutoCommit( true );
-            return executeBlocks( blocks, new State( database, conn, parentDirectory, url ) );
+            return executeBlocks( blocks, new State( database, resultCache, sqlDatabase, parentDirectory, url ),
+                    executor );
         }
         catch ( TestFailureException exception )
         {
-            dumpStoreFiles( fs, failure = exception, "before-shutdown" );
+            failure = exception;
+            if ( database.acquired() != null )
+            {
+                dumpStoreFiles( database.acquired().fs, exception, "before-shutdown" );
+            }
             throw exception;
         }
-        catch ( SQLException sqlException )
-        {
-            throw new RuntimeException( sqlException );
-        }
         finally
         {
-            database.getGraphDatabaseService().shutdown();
-            if ( failure != null )
+            DatabasePool.PooledDatabase acquired = database.acquired();
+            if ( acquired != null && failure != null )
             {
-                dumpStoreFiles( fs, failure, "after-shutdown" );
+                acquired.shutdown();
+                dumpStoreFiles( acquired.fs, failure, "after-shutdown" );
             }
-            if ( conn != null )
+            else if ( acquired != null )
             {
-                try
-                {
-                    conn.close();
-                }
-                catch ( SQLException sqlException )
-                {
-                    throw new RuntimeException( sqlException );
-                }
+                databases.release( acquired );
             }
         }
     }
 
+    /**
+     * Opens a connection to a new in-memory SQL database, which is gone once the connection is closed.
+     */
+    static Connection openSqlDatabase() throws SQLException
+    {
+        Connection conn = DriverManager.getConnection(
+                "jdbc:hsqldb:mem:graphgist" + SQL_DATABASES.incrementAndGet() + ";shutdown=true" );
+        conn.setAutoCommit( true );
+        return conn;
+    }
+
+    /**
+     * Drops everything SQL blocks may have created in a database from {@link #openSqlDatabase()}.
+     */
+    static void wipeSqlDatabase( Connection conn ) throws SQLException
+    {
+        try ( Statement statement = conn.createStatement() )
+        {
+            statement.execute( "DROP SCHEMA PUBLIC CASCADE" );
+        }
+    }
+
     static List<Block> parseBlocks( String input )
     {
         String[] lines = input.split( EOL );
@@ -152,20 +181,24 @@ public final class CypherDoc
         return blocks;
     }
 
-    private static String executeBlocks( List<Block> blocks, State state )
+    private static String executeBlocks( List<Block> blocks, State state, Executor executor )
     {
-        StringBuilder output = new StringBuilder( 4096 );
+        BlockScheduler scheduler = new BlockScheduler( state, executor );
         boolean hasConsole = false;
-        for ( Block block : blocks )
+        for ( int i = 0; i < blocks.size(); i++ )
         {
+            Block block = blocks.get( i );
             if ( block.type == BlockType.CONSOLE )
             {
                 hasConsole = true;
             }
-            output.append( block.process( state ) )
-                  .append( EOL )
-                  .append( EOL );
+            else if ( block.type == BlockType.CYPHER )
+            {
+                expectContent( blocks, i, state );
+            }
+            scheduler.schedule( block );
         }
+        StringBuilder output = new StringBuilder( scheduler.output() );
         if ( !hasConsole )
         {
             output.append( BlockType.CONSOLE.process( null, state ) );
@@ -174,6 +207,27 @@ public final class CypherDoc
         return output.toString();
     }
 
+    /**
+     * Lets the queries of the Cypher block at {@code index} know what the query test after them, if any,
+     * looks for, so that it can be found in rows that are too many to be part of the result text.
+     */
+    private static void expectContent( List<Block> blocks, int index, State state )
+    {
+        state.expectedContent.clear();
+        for ( Block block : blocks.subList( index + 1, blocks.size() ) )
+        {
+            if ( block.type == BlockType.CYPHER )
+            {
+                return;
+            }
+            if ( block.type == BlockType.QUERYTEST )
+            {
+                state.expectedContent.addAll( BlockType.queryTests( block ) );
+                return;
+            }
+        }
+    }
+
     static String indent( String string )
     {
         return string.replace( "\r\n", "\n" ).replace( "\n", EOL + "\t" );
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.doc.cypherdoc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.neo4j.cypher.javacompat.internal.GraphDatabaseCypherService;
+import org.neo4j.graphdb.config.Setting;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.graphdb.mockfs.EphemeralFileSystemAbstraction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+/**
+ * Hands out started, empty impermanent databases for documents to run in.
+ * <p>
+ * Databases are not wiped and handed out again, since the ids of nodes and relationships show up in the
+ * documents and would then differ from those of a new database. Instead every database is started on a copy
+ * of the file system of a database that has been created and shut down once, which is the same as a new
+ * database but skips creating the store. A pool can keep a number of databases started ahead of time, and
+ * shut down databases that have been used, in the background, so that neither is done while a document waits.
+ * Starting and shutting down are done by separate threads, as many of each as databases are started ahead, so
+ * that one document per worker can be kept supplied.
+ */
+class DatabasePool implements AutoCloseable
+{
+    private final EphemeralFileSystemAbstraction pristine;
+    private final ExecutorService starting;
+    private final ExecutorService stopping;
+    private final BlockingQueue<Future<PooledDatabase>> started;
+
+    /**
+     * @param startedAhead how many databases to keep started ahead of time, or 0 to create new databases when
+     * they are needed, and shut them down when they are released, on the calling thread.
+     */
+    DatabasePool( int startedAhead )
+    {
+        if ( startedAhead > 0 )
+        {
+            pristine = new EphemeralFileSystemAbstraction();
+            newDatabase( pristine ).getGraphDatabaseService().shutdown();
+            starting = lifecycleThreads( "graphgist-starting-", startedAhead );
+            stopping = lifecycleThreads( "graphgist-stopping-", startedAhead );
+            started = new ArrayBlockingQueue<>( startedAhead );
+            for ( int i = 0; i < startedAhead; i++ )
+            {
+                started.add( starting.submit( this::start ) );
+            }
+        }
+        else
+        {
+            pristine = null;
+            starting = null;
+            stopping = null;
+            started = null;
+        }
+    }
+
+    /**
+     * @return a started, empty database, to be {@link #release(PooledDatabase) released} when done with.
+     */
+    PooledDatabase acquire()
+    {
+        if ( started == null )
+        {
+            return start();
+        }
+        try
+        {
+            // hand out the longest started one, and start another one in its place
+            Future<PooledDatabase> database;
+            synchronized ( started )
+            {
+                database = started.take();
+                started.add( starting.submit( this::start ) );
+            }
+            return database.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while waiting for a database to start", e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new RuntimeException( "Failed to start a database", e.getCause() );
+        }
+    }
+
+    /**
+     * @return a database that is acquired from this pool when it is first asked for.
+     */
+    LazyDatabase lazy()
+    {
+        return new LazyDatabase();
+    }
+
+    /**
+     * Shuts down a database that is done with, in the background if databases are started ahead of time.
+     */
+    void release( PooledDatabase database )
+    {
+        if ( stopping == null )
+        {
+            database.shutdown();
+        }
+        else
+        {
+            stopping.execute( database::shutdown );
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if ( starting == null )
+        {
+            return;
+        }
+        synchronized ( started )
+        {
+            for ( Future<PooledDatabase> database; (database = started.poll()) != null; )
+            {
+                try
+                {
+                    database.get().shutdown();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                catch ( ExecutionException e )
+                {
+                    // never started, so nothing to shut down
+                }
+            }
+        }
+        starting.shutdown();
+        stopping.shutdown();
+        try
+        {
+            long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos( 1 );
+            starting.awaitTermination( deadline - System.nanoTime(), TimeUnit.NANOSECONDS );
+            stopping.awaitTermination( deadline - System.nanoTime(), TimeUnit.NANOSECONDS );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ExecutorService lifecycleThreads( String name, int threads )
+    {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool( threads, runnable ->
+        {
+            Thread thread = new Thread( runnable, name + count.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        } );
+    }
+
+    PooledDatabase start()
+    {
+        EphemeralFileSystemAbstraction fs = pristine == null ? new EphemeralFileSystemAbstraction()
+                                                             : pristine.snapshot();
+        return new PooledDatabase( fs, newDatabase( fs ) );
+    }
+
+    private static GraphDatabaseCypherService newDatabase( EphemeralFileSystemAbstraction fs )
+    {
+        //TODO remove config when compiled plans are feature complete
+        Map<Setting<?>, String> config = new HashMap<>();
+        config.put( GraphDatabaseSettings.cypher_runtime, "INTERPRETED" );
+        return new GraphDatabaseCypherService(
+                new TestGraphDatabaseFactory().setFileSystem( fs ).newImpermanentDatabase( config ) );
+    }
+
+    class LazyDatabase implements Supplier<GraphDatabaseCypherService>
+    {
+        private PooledDatabase database;
+
+        @Override
+        public GraphDatabaseCypherService get()
+        {
+            if ( database == null )
+            {
+                database = acquire();
+            }
+            return database.database;
+        }
+
+        /**
+         * @return the database acquired from the pool, or {@code null} if it was never asked for.
+         */
+        PooledDatabase acquired()
+        {
+            return database;
+        }
+    }
+
+    static class PooledDatabase
+    {
+        final EphemeralFileSystemAbstraction fs;
+        final GraphDatabaseCypherService database;
+
+        PooledDatabase( EphemeralFileSystemAbstraction fs, GraphDatabaseCypherService database )
+        {
+            this.fs = fs;
+            this.database = database;
+        }
+
+        void shutdown()
+        {
+            database.getGraphDatabaseService().shutdown();
+        }
+    }
+}
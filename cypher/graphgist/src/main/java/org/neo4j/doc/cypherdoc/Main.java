@@ -26,13 +26,24 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Parses AsciiDoc files with some special markup to produce Cypher tutorials.
  */
 public class Main
 {
+    static final String RESULT_CACHE_PROPERTY = "cypherdoc.resultCache";
     private static final String[] EXTENSIONS = new String[] { ".asciidoc", ".adoc" };
     private static final FileFilter fileFilter = new FileFilter(){
         public boolean accept( File file ) {
@@ -45,6 +56,15 @@ public class Main
      * .asciidoc or .adoc files). The output file name is based on the input
      * file name (and the relative path if a directory got searched). The first
      * argument is the base destination directory.
+     * <p>
+     * The files are transformed in parallel, on as many threads as there are
+     * processors, as are the blocks of each file that do not depend on each
+     * other. All files are transformed even if some of them fail, and the
+     * failures are reported together at the end, in the order of the files.
+     * <p>
+     * If the system property {@value #RESULT_CACHE_PROPERTY} names a directory,
+     * query results are kept there, and documents whose queries have not changed
+     * since an earlier run are written without running them again.
      *
      * @param args base destination directory, followed by files/directories to parse.
      */
@@ -59,6 +79,7 @@ public class Main
         Path destinationDir = getDestinationDir( args[0] );
         String destinationUrl = args[1];
 
+        List<Document> documents = new ArrayList<>();
         for ( int i = 2; i < args.length; i++ )
         {
             String name = args[i];
@@ -66,16 +87,20 @@ public class Main
 
             if ( Files.isDirectory( source ) )
             {
-                executeDirectory( source, destinationDir, destinationUrl, true );
+                collectDirectory( source, destinationDir, destinationUrl, true, documents );
             }
             else
             {
-                executeFile( source, destinationDir, destinationUrl );
+                documents.add( new Document( source, destinationDir, destinationUrl, destinationDir ) );
             }
         }
+        String resultCacheDir = System.getProperty( RESULT_CACHE_PROPERTY );
+        ResultCache resultCache = resultCacheDir == null ? null : new ResultCache( new File( resultCacheDir ) );
+        executeAll( documents, Runtime.getRuntime().availableProcessors(), resultCache );
     }
 
-    private static void executeDirectory( Path sourceDir, Path destinationDir, String destinationUrl, boolean isTopLevelDir )
+    static void collectDirectory( Path sourceDir, Path destinationDir, String destinationUrl,
+            boolean isTopLevelDir, List<Document> documents )
     {
         String sourceDirName = sourceDir.getFileName().toString();
         Path nestedDestinationDir = isTopLevelDir ? destinationDir : destinationDir.resolve( sourceDirName );
@@ -88,26 +113,99 @@ public class Main
                 return file.isDirectory() || fileFilter.accept( file );
             }
         } );
+        Arrays.sort( files );
         for ( File fileInDir : files )
         {
             if ( fileInDir.isDirectory() )
             {
-                executeDirectory( fileInDir.toPath(), nestedDestinationDir, nestedDestinationUrl, false );
+                collectDirectory( fileInDir.toPath(), nestedDestinationDir, nestedDestinationUrl, false, documents );
             }
             else
+            {
+                documents.add( new Document( fileInDir.toPath(), nestedDestinationDir, nestedDestinationUrl,
+                        destinationDir ) );
+            }
+        }
+    }
+
+    /**
+     * Executes the documents on a pool of workers, each of which keeps its SQL database between documents.
+     * Every document gets a new graph database, since the ids shown in the output depend on it being fresh,
+     * but they are started ahead of time and shut down afterwards by a {@link DatabasePool}.
+     */
+    static void executeAll( List<Document> documents, int parallelism, ResultCache resultCache )
+            throws SQLException
+    {
+        List<Connection> sqlDatabases = new CopyOnWriteArrayList<>();
+        ThreadLocal<Connection> workerSqlDatabase = ThreadLocal.withInitial( () ->
+        {
+            try
+            {
+                Connection conn = CypherDoc.openSqlDatabase();
+                sqlDatabases.add( conn );
+                return conn;
+            }
+            catch ( SQLException e )
+            {
+                throw new RuntimeException( e );
+            }
+        } );
+        ExecutorService workers = Executors.newFixedThreadPool( parallelism );
+        // separate from the workers, which wait for the blocks of their documents
+        ExecutorService blocks = Executors.newFixedThreadPool( parallelism );
+        DatabasePool databases = new DatabasePool( parallelism );
+        List<RuntimeException> failures = new ArrayList<>();
+        try
+        {
+            List<Future<?>> executions = new ArrayList<>();
+            for ( Document document : documents )
+            {
+                executions.add( workers.submit( () ->
+                {
+                    Connection sqlDatabase = workerSqlDatabase.get();
+                    CypherDoc.wipeSqlDatabase( sqlDatabase );
+                    executeFile( document, sqlDatabase, databases, resultCache, blocks );
+                    return null;
+                } ) );
+            }
+            for ( int i = 0; i < documents.size(); i++ )
             {
                 try
                 {
-                    executeFile( fileInDir.toPath(), nestedDestinationDir, nestedDestinationUrl );
+                    executions.get( i ).get();
                 }
-                catch ( Throwable e )
+                catch ( ExecutionException e )
                 {
-                    throw new RuntimeException( String.format( "Failed while executing file: %s in the "
-                                                               + "directory %s", fileInDir.getName(),
-                            destinationDir ), e );
+                    failures.add( documents.get( i ).failure( e.getCause() ) );
                 }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException( "Interrupted while executing files", e );
+                }
+            }
+        }
+        finally
+        {
+            workers.shutdownNow();
+            blocks.shutdownNow();
+            databases.close();
+            for ( Connection conn : sqlDatabases )
+            {
+                conn.close();
             }
         }
+        if ( failures.size() == 1 )
+        {
+            throw failures.get( 0 );
+        }
+        if ( !failures.isEmpty() )
+        {
+            RuntimeException failure =
+                    new RuntimeException( String.format( "%d of %d files failed", failures.size(), documents.size() ) );
+            failures.forEach( failure::addSuppressed );
+            throw failure;
+        }
     }
 
     private static Path getDestinationDir( String arg ) throws IOException
@@ -125,13 +223,17 @@ public class Main
     /**
      * Parse a single file.
      */
-    private static void executeFile( Path sourceFile, Path destinationDir, String url ) throws Exception
+    private static void executeFile( Document document, Connection sqlDatabase, DatabasePool databases,
+            ResultCache resultCache, Executor blocks ) throws Exception
     {
+        Path sourceFile = document.source;
+        Path destinationDir = document.destinationDir;
         try
         {
             String name = sourceFile.getFileName().toString();
             String input = String.join( "\n", Files.readAllLines( sourceFile, StandardCharsets.UTF_8 ) );
-            String output = CypherDoc.parse( input, sourceFile.toFile().getParentFile(), url );
+            String output = CypherDoc.parse( input, sourceFile.toFile().getParentFile(), document.url,
+                    sqlDatabase, databases, resultCache, blocks );
 
             Files.createDirectories( destinationDir );
             Path target = destinationDir.resolve( name );
@@ -143,4 +245,26 @@ public class Main
             throw failure;
         }
     }
+
+    static class Document
+    {
+        private final Path source;
+        private final Path destinationDir;
+        private final String url;
+        private final Path reportedDir;
+
+        Document( Path source, Path destinationDir, String url, Path reportedDir )
+        {
+            this.source = source;
+            this.destinationDir = destinationDir;
+            this.url = url;
+            this.reportedDir = reportedDir;
+        }
+
+        RuntimeException failure( Throwable cause )
+        {
+            return new RuntimeException( String.format( "Failed while executing file: %s in the "
+                                                        + "directory %s", source.getFileName(), reportedDir ), cause );
+        }
+    }
 }
@@ -19,32 +19,52 @@
  */
 package org.neo4j.doc.cypherdoc;
 
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Set;
 
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveLongSet;
 import org.neo4j.cypher.javacompat.internal.GraphDatabaseCypherService;
-import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Path;
-import org.neo4j.graphdb.Relationship;
-import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.QueryExecutionType;
 
 class Result
 {
     final String query;
     final String text;
     final String profile;
-    final Set<Long> nodeIds = new HashSet<>();
-    final Set<Long> relationshipIds = new HashSet<>();
+    final PrimitiveLongSet nodeIds = Primitive.longSet();
+    final PrimitiveLongSet relationshipIds = Primitive.longSet();
+    /**
+     * Whether the query may have changed the database.
+     */
+    final boolean updates;
+    /**
+     * Whether rows were left out of {@link #text}, see {@link ResultTable#MAX_ROWS}.
+     */
+    final boolean truncated;
+    private final Set<String> foundInLeftOutRows;
 
-    public Result( String query, org.neo4j.graphdb.Result result, GraphDatabaseCypherService database )
+    /**
+     * Goes through the rows of {@code result} once.
+     *
+     * @param expected strings to look for in rows that are left out of the text, see {@link #contains(String)}.
+     * @param checkUpdates whether to find out if the query {@link #updates updated} the database, or to assume
+     * it did not.
+     */
+    Result( String query, org.neo4j.graphdb.Result result, GraphDatabaseCypherService database,
+            Collection<String> expected, boolean checkUpdates )
     {
         this.query = query;
-        text = result.resultAsString();
-        try ( Transaction tx = database.getGraphDatabaseService().beginTx() )
+        try ( ResultTable table = new ResultTable( result.columns(), database, expected, nodeIds, relationshipIds ) )
         {
-            extract( result );
+            while ( result.hasNext() )
+            {
+                table.add( result.next() );
+            }
+            text = table.toString( result.getQueryStatistics() );
+            truncated = table.truncated();
+            foundInLeftOutRows = table.found();
         }
         String profileText;
         try
@@ -56,6 +76,9 @@ class Result
             profileText = ex.getMessage();
         }
         profile = profileText;
+        updates = checkUpdates &&
+                  (result.getQueryExecutionType().queryType() != QueryExecutionType.QueryType.READ_ONLY ||
+                   result.getQueryStatistics().containsUpdates());
     }
 
     public Result( String query, String text )
@@ -63,45 +86,36 @@ class Result
         this.query = query;
         this.text = text;
         this.profile = "";
+        this.updates = false;
+        this.truncated = false;
+        this.foundInLeftOutRows = Collections.emptySet();
     }
 
-    private void extract( Iterator<?> source )
+    Result( String query, String text, String profile, long[] nodeIds, long[] relationshipIds, boolean updates,
+            boolean truncated )
     {
-        while ( source.hasNext() )
+        this.query = query;
+        this.text = text;
+        this.profile = profile;
+        for ( long nodeId : nodeIds )
         {
-            Object item = source.next();
-            if ( item instanceof Node )
-            {
-                Node node = (Node) item;
-                nodeIds.add( node.getId() );
-            }
-            else if ( item instanceof Relationship )
-            {
-                Relationship relationship = (Relationship) item;
-                relationshipIds.add( relationship.getId() );
-                nodeIds.add( relationship.getStartNode().getId() );
-                nodeIds.add( relationship.getEndNode().getId() );
-            }
-            else if ( item instanceof Path )
-            {
-                Path path = (Path) item;
-                for ( Node node : path.nodes() )
-                {
-                    nodeIds.add( node.getId() );
-                }
-                for ( Relationship relationship : path.relationships() )
-                {
-                    relationshipIds.add( relationship.getId() );
-                }
-            }
-            else if ( item instanceof Map<?,?> )
-            {
-                extract( ((Map<?,?>) item).values().iterator() );
-            }
-            else if ( item instanceof Iterable<?> )
-            {
-                extract( ((Iterable<?>) item).iterator() );
-            }
+            this.nodeIds.add( nodeId );
         }
+        for ( long relationshipId : relationshipIds )
+        {
+            this.relationshipIds.add( relationshipId );
+        }
+        this.updates = updates;
+        this.truncated = truncated;
+        this.foundInLeftOutRows = Collections.emptySet();
+    }
+
+    /**
+     * @return whether the result has {@code content} in it, also in rows that were left out of the text if it
+     * was one of the expected strings the result was looked through for.
+     */
+    boolean contains( String content )
+    {
+        return text.contains( content ) || foundInLeftOutRows.contains( content );
     }
 }
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.doc.cypherdoc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import org.neo4j.collection.primitive.PrimitiveLongCollections;
+import org.neo4j.kernel.internal.Version;
+
+/**
+ * Keeps the results of queries, and other output that depends on the state of the database, on disk between
+ * builds, so that documents that have not changed can be written without running their queries again.
+ * <p>
+ * Entries are keyed by a hash of the query, its parameters, the Neo4j version and the key of the last
+ * query before it that changed the database, which in turn depends on the queries before that. So a
+ * result is only reused if the database it would run against is built up by the same queries, in the same
+ * order, as the database it was cached from. Queries that load files are keyed by the names of the files
+ * relative to the document, and a hash of their contents, see {@link #fileHash(File)}.
+ */
+class ResultCache
+{
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final File directory;
+    private final ConcurrentMap<File, String> fileHashes = new ConcurrentHashMap<>();
+
+    ResultCache( File directory ) throws IOException
+    {
+        this.directory = directory;
+        Files.createDirectories( directory.toPath() );
+    }
+
+    /**
+     * @param previous the key of the last statement that changed the database, or {@code ""} for an empty
+     * database.
+     */
+    String key( String kind, String statement, Map<String, Object> parameters, String previous )
+    {
+        try
+        {
+            MessageDigest digest = sha256();
+            for ( String part : new String[]{Version.getNeo4jVersion(), previous, kind, statement,
+                    JSON.writeValueAsString( new TreeMap<>( parameters ) )} )
+            {
+                byte[] bytes = part.getBytes( StandardCharsets.UTF_8 );
+                digest.update( (byte) (bytes.length >>> 24) );
+                digest.update( (byte) (bytes.length >>> 16) );
+                digest.update( (byte) (bytes.length >>> 8) );
+                digest.update( (byte) bytes.length );
+                digest.update( bytes );
+            }
+            return hex( digest.digest() );
+        }
+        catch ( IOException e )
+        {
+            throw new IllegalArgumentException( "Parameters that can not be written as JSON: " + parameters, e );
+        }
+    }
+
+    /**
+     * @return a hash of the contents of {@code file}, read once for every file, since the files documents load
+     * do not change while they are run.
+     */
+    String fileHash( File file )
+    {
+        return fileHashes.computeIfAbsent( file, toHash ->
+        {
+            try
+            {
+                return hex( sha256().digest( Files.readAllBytes( toHash.toPath() ) ) );
+            }
+            catch ( IOException e )
+            {
+                // a query loading it fails, and failures are not cached
+                return "unreadable";
+            }
+        } );
+    }
+
+    private static MessageDigest sha256()
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-256" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new AssertionError( "SHA-256 is always supported", e );
+        }
+    }
+
+    private static String hex( byte[] hash )
+    {
+        StringBuilder hex = new StringBuilder( hash.length * 2 );
+        for ( byte b : hash )
+        {
+            hex.append( Character.forDigit( (b >> 4) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return the cached result of {@code query}, or {@code null} if there is none.
+     */
+    Result result( String key, String query )
+    {
+        Map<?,?> entry = read( key );
+        if ( entry == null )
+        {
+            return null;
+        }
+        return new Result( query, (String) entry.get( "text" ), (String) entry.get( "profile" ),
+                longs( entry.get( "nodes" ) ), longs( entry.get( "relationships" ) ),
+                Boolean.TRUE.equals( entry.get( "updates" ) ), Boolean.TRUE.equals( entry.get( "truncated" ) ) );
+    }
+
+    void put( String key, Result result )
+    {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put( "text", result.text );
+        entry.put( "profile", result.profile );
+        entry.put( "nodes", PrimitiveLongCollections.asArray( result.nodeIds.iterator() ) );
+        entry.put( "relationships", PrimitiveLongCollections.asArray( result.relationshipIds.iterator() ) );
+        entry.put( "updates", result.updates );
+        entry.put( "truncated", result.truncated );
+        write( key, entry );
+    }
+
+    /**
+     * @return cached output other than query results, or {@code null} if there is none.
+     */
+    String text( String key )
+    {
+        Map<?,?> entry = read( key );
+        return entry == null ? null : (String) entry.get( "text" );
+    }
+
+    void putText( String key, String text )
+    {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put( "text", text );
+        write( key, entry );
+    }
+
+    private Map<?,?> read( String key )
+    {
+        File file = new File( directory, key + ".json" );
+        if ( !file.exists() )
+        {
+            return null;
+        }
+        try
+        {
+            return JSON.readValue( file, Map.class );
+        }
+        catch ( IOException e )
+        {
+            // a broken entry is as good as none, and is written again
+            return null;
+        }
+    }
+
+    private void write( String key, Map<String, Object> entry )
+    {
+        File temporary = null;
+        try
+        {
+            // written aside and moved in place, since documents run in parallel may write the same entry
+            temporary = File.createTempFile( key, ".tmp", directory );
+            JSON.writeValue( temporary, entry );
+            Files.move( temporary.toPath(), new File( directory, key + ".json" ).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Could not write to the result cache in " + directory, e );
+        }
+        finally
+        {
+            if ( temporary != null )
+            {
+                temporary.delete();
+            }
+        }
+    }
+
+    private static long[] longs( Object numbers )
+    {
+        if ( !(numbers instanceof List<?>) )
+        {
+            return new long[0];
+        }
+        List<?> list = (List<?>) numbers;
+        long[] longs = new long[list.size()];
+        for ( int i = 0; i < longs.length; i++ )
+        {
+            longs[i] = ((Number) list.get( i )).longValue();
+        }
+        return longs;
+    }
+}
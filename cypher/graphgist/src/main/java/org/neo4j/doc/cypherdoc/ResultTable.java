@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.doc.cypherdoc;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.neo4j.collection.primitive.PrimitiveIntIterator;
+import org.neo4j.collection.primitive.PrimitiveLongSet;
+import org.neo4j.cypher.javacompat.internal.GraphDatabaseCypherService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.QueryStatistics;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.api.ReadOperations;
+import org.neo4j.kernel.api.Statement;
+import org.neo4j.kernel.api.exceptions.EntityNotFoundException;
+import org.neo4j.kernel.api.exceptions.PropertyKeyIdNotFoundKernelException;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+
+/**
+ * Writes the rows of a query result out as a text table, one row at a time, in the format of
+ * {@link org.neo4j.graphdb.Result#resultAsString()}, and collects the ids of the nodes and relationships in
+ * them along the way.
+ * <p>
+ * Only the first {@link #MAX_ROWS} rows are kept for the table; the rows after that are counted, and looked
+ * through for the expected contents, which {@link #found()} tells which of were found there. Must be fed rows
+ * within the transaction of the query, since the properties of nodes and relationships are part of the table.
+ */
+class ResultTable implements AutoCloseable
+{
+    static final int MAX_ROWS = 1000;
+    private static final String EOL = System.lineSeparator();
+
+    private final List<String> columns;
+    private final int[] widths;
+    private final List<String[]> rows = new ArrayList<>();
+    private final Collection<String> expected;
+    private final Set<String> found = new HashSet<>();
+    private final PrimitiveLongSet nodeIds;
+    private final PrimitiveLongSet relationshipIds;
+    private final GraphDatabaseCypherService database;
+    private ThreadToStatementContextBridge statements;
+    private Transaction transaction;
+    private long rowCount;
+
+    /**
+     * @param expected strings to look for in the rows that are left out of the table.
+     */
+    ResultTable( List<String> columns, GraphDatabaseCypherService database, Collection<String> expected,
+            PrimitiveLongSet nodeIds, PrimitiveLongSet relationshipIds )
+    {
+        this.database = database;
+        this.columns = columns;
+        this.expected = expected;
+        this.nodeIds = nodeIds;
+        this.relationshipIds = relationshipIds;
+        widths = new int[columns.size()];
+        for ( int i = 0; i < widths.length; i++ )
+        {
+            widths[i] = columns.get( i ).length();
+        }
+    }
+
+    void add( Map<String, Object> row )
+    {
+        inTransaction();
+        String[] cells = new String[widths.length];
+        for ( int i = 0; i < cells.length; i++ )
+        {
+            cells[i] = serialize( row.get( columns.get( i ) ) );
+        }
+        rowCount++;
+        if ( rows.size() < MAX_ROWS )
+        {
+            rows.add( cells );
+            for ( int i = 0; i < cells.length; i++ )
+            {
+                widths[i] = Math.max( widths[i], cells[i].length() );
+            }
+        }
+        else if ( !expected.isEmpty() )
+        {
+            String line = line( cells );
+            for ( String content : expected )
+            {
+                if ( line.contains( content ) )
+                {
+                    found.add( content );
+                }
+            }
+        }
+    }
+
+    boolean truncated()
+    {
+        return rowCount > rows.size();
+    }
+
+    /**
+     * @return the expected contents that are in rows left out of the table.
+     */
+    Set<String> found()
+    {
+        return found;
+    }
+
+    String toString( QueryStatistics statistics )
+    {
+        StringBuilder text = new StringBuilder();
+        if ( columns.isEmpty() && !statistics.containsUpdates() )
+        {
+            text.append( "+--------------------------------------------+" ).append( EOL )
+                .append( "| No data returned, and nothing was changed. |" ).append( EOL )
+                .append( "+--------------------------------------------+" ).append( EOL );
+        }
+        else if ( columns.isEmpty() )
+        {
+            text.append( "+-------------------+" ).append( EOL )
+                .append( "| No data returned. |" ).append( EOL )
+                .append( "+-------------------+" ).append( EOL );
+        }
+        else
+        {
+            String header = line( columns.toArray( new String[columns.size()] ) );
+            String separator = "+" + repeat( '-', header.length() - 2 ) + "+";
+            text.append( separator ).append( EOL ).append( header ).append( EOL ).append( separator ).append( EOL );
+            for ( String[] row : rows )
+            {
+                text.append( line( row ) ).append( EOL );
+            }
+            text.append( separator ).append( EOL )
+                .append( rowCount ).append( rowCount > 1 ? " rows" : " row" );
+            if ( truncated() )
+            {
+                text.append( " (only the first " ).append( rows.size() ).append( " are shown)" );
+            }
+            text.append( EOL );
+        }
+        if ( statistics.containsUpdates() )
+        {
+            text.append( statistics );
+        }
+        return text.toString();
+    }
+
+    private String line( String[] cells )
+    {
+        StringBuilder line = new StringBuilder( "|" );
+        for ( int i = 0; i < cells.length; i++ )
+        {
+            line.append( ' ' ).append( cells[i] ).append( repeat( ' ', widths[i] - cells[i].length() ) ).append( " |" );
+        }
+        return line.toString();
+    }
+
+    private String serialize( Object value )
+    {
+        if ( value == null )
+        {
+            return "<null>";
+        }
+        else if ( value instanceof Node )
+        {
+            Node node = (Node) value;
+            nodeIds.add( node.getId() );
+            return "Node[" + node.getId() + "]" + properties( true, node.getId() );
+        }
+        else if ( value instanceof Relationship )
+        {
+            Relationship relationship = (Relationship) value;
+            relationshipIds.add( relationship.getId() );
+            nodeIds.add( relationship.getStartNodeId() );
+            nodeIds.add( relationship.getEndNodeId() );
+            return ":" + relationship.getType().name() + "[" + relationship.getId() + "]" +
+                   properties( false, relationship.getId() );
+        }
+        else if ( value instanceof Map<?,?> )
+        {
+            StringBuilder map = new StringBuilder( "{" );
+            for ( Map.Entry<?,?> entry : ((Map<?,?>) value).entrySet() )
+            {
+                if ( map.length() > 1 )
+                {
+                    map.append( ", " );
+                }
+                map.append( entry.getKey() ).append( " -> " ).append( serialize( entry.getValue() ) );
+            }
+            return map.append( '}' ).toString();
+        }
+        else if ( value instanceof Iterable<?> )
+        {
+            // paths too, which iterate over their nodes and relationships in order
+            return list( ((Iterable<?>) value).iterator() );
+        }
+        else if ( value.getClass().isArray() )
+        {
+            List<Object> elements = new ArrayList<>();
+            for ( int i = 0; i < Array.getLength( value ); i++ )
+            {
+                elements.add( Array.get( value, i ) );
+            }
+            return list( elements.iterator() );
+        }
+        else if ( value instanceof String )
+        {
+            return "\"" + value + "\"";
+        }
+        return value.toString();
+    }
+
+    private String list( Iterator<?> elements )
+    {
+        StringBuilder list = new StringBuilder( "[" );
+        while ( elements.hasNext() )
+        {
+            list.append( serialize( elements.next() ) );
+            if ( elements.hasNext() )
+            {
+                list.append( ',' );
+            }
+        }
+        return list.append( ']' ).toString();
+    }
+
+    /**
+     * Reads the properties through the kernel, like Cypher does, since the order they come in is not the
+     * same as through the core API for nodes and relationships that were created by the query.
+     */
+    private String properties( boolean node, long id )
+    {
+        StringBuilder properties = new StringBuilder( "{" );
+        try ( Statement statement = statements.get() )
+        {
+            ReadOperations read = statement.readOperations();
+            PrimitiveIntIterator keys = node ? read.nodeGetPropertyKeys( id ) : read.relationshipGetPropertyKeys( id );
+            while ( keys.hasNext() )
+            {
+                int key = keys.next();
+                Object value = node ? read.nodeGetProperty( id, key ) : read.relationshipGetProperty( id, key );
+                if ( properties.length() > 1 )
+                {
+                    properties.append( ',' );
+                }
+                properties.append( read.propertyKeyGetName( key ) ).append( ':' ).append( serialize( value ) );
+            }
+        }
+        catch ( EntityNotFoundException e )
+        {
+            // deleted by the query itself
+            properties.setLength( 1 );
+        }
+        catch ( PropertyKeyIdNotFoundKernelException e )
+        {
+            throw new IllegalStateException( e );
+        }
+        return properties.append( '}' ).toString();
+    }
+
+    /**
+     * Rows are read in the transaction of the query for as long as it is open, and in a transaction of our own
+     * after that, which is what the rows of updating queries, that are committed before they are gone through,
+     * are read in from the start.
+     */
+    private void inTransaction()
+    {
+        if ( statements == null )
+        {
+            statements = database.getDependencyResolver().resolveDependency( ThreadToStatementContextBridge.class );
+        }
+        if ( transaction == null && !statements.hasTransaction() )
+        {
+            transaction = database.getGraphDatabaseService().beginTx();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if ( transaction != null )
+        {
+            transaction.success();
+            transaction.close();
+        }
+    }
+
+    private static String repeat( char c, int times )
+    {
+        StringBuilder repeated = new StringBuilder( Math.max( times, 0 ) );
+        for ( int i = 0; i < times; i++ )
+        {
+            repeated.append( c );
+        }
+        return repeated.toString();
+    }
+}
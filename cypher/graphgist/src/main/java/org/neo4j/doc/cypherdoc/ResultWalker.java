@@ -19,50 +19,33 @@
  */
 package org.neo4j.doc.cypherdoc;
 
-import java.util.HashSet;
-import java.util.Set;
-
-import org.neo4j.graphdb.Node;
+import org.neo4j.collection.primitive.PrimitiveLongIterator;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Relationship;
-import org.neo4j.walk.Visitor;
+import org.neo4j.walk.NodeSetWalker;
 import org.neo4j.walk.Walker;
 
 public class ResultWalker
 {
     public static Walker result( State state )
     {
-        final Set<Node> nodes = new HashSet<>();
+        GraphDatabaseService graphDb = state.database().getGraphDatabaseService();
+        NodeSetWalker walker = new NodeSetWalker( graphDb );
 
-        for ( long nodeId : state.latestResult.nodeIds )
+        PrimitiveLongIterator nodeIds = state.latestResult.nodeIds.iterator();
+        while ( nodeIds.hasNext() )
         {
-            nodes.add( state.database.getNodeById( nodeId ) );
+            walker.add( nodeIds.next() );
         }
 
-        for ( long relationshipId : state.latestResult.relationshipIds )
+        PrimitiveLongIterator relationshipIds = state.latestResult.relationshipIds.iterator();
+        while ( relationshipIds.hasNext() )
         {
-            Relationship rel = state.database.getRelationshipById( relationshipId );
-            nodes.add( rel.getStartNode() );
-            nodes.add( rel.getEndNode() );
+            Relationship rel = graphDb.getRelationshipById( relationshipIds.next() );
+            walker.add( rel.getStartNodeId() );
+            walker.add( rel.getEndNodeId() );
         }
 
-        return new Walker()
-        {
-            @Override
-            public <R, E extends Throwable> R accept( Visitor<R, E> visitor ) throws E
-            {
-                for ( Node node : nodes )
-                {
-                    visitor.visitNode( node );
-                    for ( Relationship relationship : node.getRelationships() )
-                    {
-                        if ( nodes.contains( relationship.getOtherNode( node ) ) )
-                        {
-                            visitor.visitRelationship( relationship );
-                        }
-                    }
-                }
-                return visitor.done();
-            }
-        };
+        return walker;
     }
 }
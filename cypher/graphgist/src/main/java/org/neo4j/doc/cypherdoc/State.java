@@ -22,21 +22,39 @@ package org.neo4j.doc.cypherdoc;
 import java.io.File;
 import java.sql.Connection;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.neo4j.cypher.internal.compiler.v3_2.prettifier.Prettifier;
 import org.neo4j.cypher.javacompat.internal.GraphDatabaseCypherService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.QueryExecutionException;
+import org.neo4j.graphdb.QueryExecutionType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.security.AnonymousContext;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
+import org.neo4j.visualization.graphviz.DotFragmentCache;
 
 class State
 {
-    final GraphDatabaseCypherService database;
     final Connection sqlDatabase;
     final File parentDirectory;
     final String url;
     final List<String> knownFiles = new ArrayList<>();
     final Map<String, Object> parameters = new HashMap<>();
+    final DotFragmentCache graphFragments;
+    /**
+     * What the next query test expects to find in the results of the queries before it, so that it can be
+     * looked for in rows that are left out of the {@link Result#text}.
+     */
+    final List<String> expectedContent = new ArrayList<>();
+    private final Queries queries;
 
     Result latestResult;
     Result testedResult;
@@ -45,14 +63,253 @@ class State
 
     State( GraphDatabaseCypherService database, Connection sqlConnection, File parentDirectory, String url )
     {
-        this.database = database;
+        this( () -> database, null, sqlConnection, parentDirectory, url );
+    }
+
+    /**
+     * @param database gives the database to run queries against, which is only asked for once it is needed.
+     * @param resultCache where to look up results before running queries, or {@code null} to always run them.
+     */
+    State( Supplier<GraphDatabaseCypherService> database, ResultCache resultCache, Connection sqlConnection,
+            File parentDirectory, String url )
+    {
+        this.graphFragments = new DotFragmentCache();
+        this.queries = new Queries( database, resultCache, graphFragments );
         this.sqlDatabase = sqlConnection;
         this.parentDirectory = parentDirectory;
         this.url = url.endsWith( "/" ) ? url : url + "/";
     }
 
+    private State( State state )
+    {
+        this.graphFragments = state.graphFragments;
+        this.queries = state.queries;
+        this.sqlDatabase = state.sqlDatabase;
+        this.parentDirectory = state.parentDirectory;
+        this.url = state.url;
+        this.knownFiles.addAll( state.knownFiles );
+        this.parameters.putAll( state.parameters );
+        this.expectedContent.addAll( state.expectedContent );
+    }
+
+    /**
+     * @return a state to process a block with on another thread, with the files, parameters and expected
+     * content of this state, and without results, that runs queries against the same database as this state.
+     */
+    State copy()
+    {
+        return new State( this );
+    }
+
+    /**
+     * @return the database, with all statements so far applied to it.
+     */
+    GraphDatabaseCypherService database()
+    {
+        return queries.database();
+    }
+
+    /**
+     * Runs a query with the current parameters, or looks up its result if it has been run against the same
+     * database before.
+     *
+     * @param written the query as written in the document, with the files it loads by their relative names.
+     */
+    Result execute( String written )
+    {
+        String query = BlockType.fileQuery( written, this );
+        ResultCache resultCache = queries.resultCache;
+        String key = resultCache == null ? null : resultCache.key( "cypher", cachedStatement( written ), parameters,
+                queries.updatesKey );
+        Result result = key == null ? null : resultCache.result( key, query );
+        if ( result != null && result.truncated && !containsExpectedContent( result ) )
+        {
+            // what the query test looks for may be in the rows that were left out when the result was cached
+            result = null;
+        }
+        if ( result == null )
+        {
+            GraphDatabaseCypherService database = database();
+            result = new Result( query, database.getGraphDatabaseService().execute( "PROFILE " + query, parameters ),
+                    database, expectedContent, key != null );
+            queries.awaitIndexesOnline();
+            if ( key != null )
+            {
+                resultCache.put( key, result );
+            }
+        }
+        else if ( result.updates )
+        {
+            queries.pendingUpdates.add( new Statement( query, new HashMap<>( parameters ) ) );
+        }
+        if ( key != null && result.updates )
+        {
+            queries.updatesKey = key;
+        }
+        return result;
+    }
+
+    /**
+     * @return whether running {@code query} with the current parameters may change the database, as told by
+     * the result cache, or else by the plan of the query, which is made without running it.
+     *
+     * @param written the query as written in the document, with the files it loads by their relative names.
+     */
+    boolean mayUpdate( String written )
+    {
+        String query = BlockType.fileQuery( written, this );
+        ResultCache resultCache = queries.resultCache;
+        Result cached = resultCache == null ? null : resultCache.result(
+                resultCache.key( "cypher", cachedStatement( written ), parameters, queries.updatesKey ), query );
+        if ( cached != null )
+        {
+            return cached.updates;
+        }
+        // in a transaction of our own, since a query that fails leaves its transaction open on the thread
+        GraphDatabaseService database = database().getGraphDatabaseService();
+        try ( Transaction tx = database.beginTx() )
+        {
+            // nothing is changed by planning, and what the failed query left behind is rolled back
+            tx.failure();
+            try ( org.neo4j.graphdb.Result plan = database.execute( "EXPLAIN " + query, parameters ) )
+            {
+                return plan.getQueryExecutionType().queryType() != QueryExecutionType.QueryType.READ_ONLY;
+            }
+            catch ( QueryExecutionException e )
+            {
+                // fails the same way when it is run
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return what a query is known by in the result cache: the query as written, so that it does not depend on
+     * where the document is, followed by a hash of the contents of each file it loads, so that a result is not
+     * reused once a file has changed.
+     */
+    private String cachedStatement( String written )
+    {
+        StringBuilder statement = new StringBuilder( written );
+        for ( String file : knownFiles )
+        {
+            if ( BlockType.loadsFile( written, file ) )
+            {
+                statement.append( "\n// " ).append( file ).append( ' ' )
+                        .append( queries.resultCache.fileHash( new File( parentDirectory, file ) ) );
+            }
+        }
+        return statement.toString();
+    }
+
+    private boolean containsExpectedContent( Result result )
+    {
+        for ( String content : expectedContent )
+        {
+            if ( !result.contains( content ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Looks up output that only depends on the database and {@code input}, or produces it and keeps it for
+     * next time.
+     */
+    String cached( String kind, String input, Supplier<String> output )
+    {
+        ResultCache resultCache = queries.resultCache;
+        if ( resultCache == null )
+        {
+            return output.get();
+        }
+        String key = resultCache.key( kind, input, Collections.emptyMap(), queries.updatesKey );
+        String text = resultCache.text( key );
+        if ( text == null )
+        {
+            text = output.get();
+            resultCache.putText( key, text );
+        }
+        return text;
+    }
+
     public String prettify( String query )
     {
-        return Prettifier.apply( query );
+        // the prettifier has a single parser, that is not known to be safe to share between threads
+        synchronized ( Prettifier.class )
+        {
+            return Prettifier.apply( query );
+        }
+    }
+
+    /**
+     * The database of a document, and what has been run against it, shared by the {@link #copy() copies} of
+     * the state of the document.
+     */
+    private static class Queries
+    {
+        private final Supplier<GraphDatabaseCypherService> databaseSupplier;
+        private final ResultCache resultCache;
+        private final DotFragmentCache graphFragments;
+        private GraphDatabaseCypherService database;
+        /**
+         * The key of the last statement that changed the database, see {@link ResultCache}.
+         */
+        private volatile String updatesKey = "";
+        /**
+         * Statements that changed the database, whose results came from the cache, so they have yet to be run.
+         */
+        private final List<Statement> pendingUpdates = new CopyOnWriteArrayList<>();
+
+        Queries( Supplier<GraphDatabaseCypherService> databaseSupplier, ResultCache resultCache,
+                DotFragmentCache graphFragments )
+        {
+            this.databaseSupplier = databaseSupplier;
+            this.resultCache = resultCache;
+            this.graphFragments = graphFragments;
+        }
+
+        synchronized GraphDatabaseCypherService database()
+        {
+            if ( database == null )
+            {
+                database = databaseSupplier.get();
+                database.getGraphDatabaseService().registerTransactionEventHandler( graphFragments );
+            }
+            if ( !pendingUpdates.isEmpty() )
+            {
+                for ( Statement statement : pendingUpdates )
+                {
+                    database.getGraphDatabaseService().execute( statement.query, statement.parameters ).close();
+                    awaitIndexesOnline();
+                }
+                pendingUpdates.clear();
+            }
+            return database;
+        }
+
+        synchronized void awaitIndexesOnline()
+        {
+            try ( InternalTransaction tx = database.beginTransaction( KernelTransaction.Type.explicit,
+                    AnonymousContext.read() ) )
+            {
+                database.getGraphDatabaseService().schema().awaitIndexesOnline( 10000, TimeUnit.SECONDS );
+                tx.success();
+            }
+        }
+    }
+
+    private static class Statement
+    {
+        private final String query;
+        private final Map<String, Object> parameters;
+
+        Statement( String query, Map<String, Object> parameters )
+        {
+            this.query = query;
+            this.parameters = parameters;
+        }
     }
 }
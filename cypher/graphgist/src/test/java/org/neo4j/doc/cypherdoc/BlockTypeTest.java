@@ -38,6 +38,7 @@ import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.neo4j.cypher.javacompat.internal.GraphDatabaseCypherService;
+import org.neo4j.graphdb.QueryStatistics;
 import org.neo4j.graphdb.schema.Schema;
 import org.neo4j.kernel.api.KernelTransaction;
 import org.neo4j.kernel.api.security.AnonymousContext;
@@ -159,6 +160,22 @@ public class BlockTypeTest
                         containsString( "created" ) ) );
     }
 
+    @Test
+    public void queryTestFindsRowsLeftOutOfTruncatedResult()
+    {
+        int rows = ResultTable.MAX_ROWS * 2;
+        state.expectedContent.add( "\"row " + (rows - 1) + "\"" );
+        Block block = Block.getBlock( Arrays.asList( "[source, cypher]", "----",
+                "UNWIND range(1, " + rows + ") AS i RETURN 'row ' + i AS row", "----" ) );
+        block.process( state );
+        assertThat( state.latestResult.truncated, equalTo( true ) );
+        assertThat( state.latestResult.text, containsString( rows + " rows" ) );
+        assertThat( state.latestResult.text, not( containsString( "\"row " + (rows - 1) + "\"" ) ) );
+        block = Block.getBlock( Arrays.asList( TEST_BLOCK_START, TEST_BLOCK_MARKER, "\"row " + (rows - 1) + "\"",
+                TEST_BLOCK_MARKER ) );
+        block.process( state );
+    }
+
     @Test
     public void query_produces_both_dump_and_nodes_and_rels()
     {
@@ -348,6 +365,7 @@ public class BlockTypeTest
                 .thenReturn( mock( InternalTransaction.class ) );
         Block block = new Block( myQuery, BlockType.CYPHER );
         org.neo4j.graphdb.Result result = mock( org.neo4j.graphdb.Result.class );
+        when( result.getQueryStatistics() ).thenReturn( mock( QueryStatistics.class ) );
         ArgumentCaptor<String> fileQuery = ArgumentCaptor.forClass( String.class );
         ArgumentCaptor<String> httpQuery = ArgumentCaptor.forClass( String.class );
 
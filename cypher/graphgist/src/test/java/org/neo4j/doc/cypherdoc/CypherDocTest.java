@@ -19,28 +19,37 @@
  */
 package org.neo4j.doc.cypherdoc;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.fail;
 
 public class CypherDocTest
 {
     @Rule
     public ExpectedException expectedException = ExpectedException.none();
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
 
     @Test
     public void fullDocumentBlockParsing() throws IOException
@@ -130,6 +139,105 @@ public class CypherDocTest
         String output = CypherDoc.parse( content, null, "http://url/" );
     }
 
+    @Test
+    public void shouldReplayUnchangedDocumentsFromResultCacheWithoutDatabase() throws Exception
+    {
+        String content = readFileToString( resourceFile( "/patterns-in-practice.adoc" ) );
+        ResultCache resultCache = new ResultCache( folder.newFolder( "results" ) );
+        AtomicInteger acquired = new AtomicInteger();
+        try ( Connection conn = CypherDoc.openSqlDatabase();
+              DatabasePool databases = new DatabasePool( 0 )
+              {
+                  @Override
+                  PooledDatabase acquire()
+                  {
+                      acquired.incrementAndGet();
+                      return super.acquire();
+                  }
+              } )
+        {
+            String uncached =
+                    CypherDoc.parse( content, null, "http://url/", conn, databases, resultCache, Runnable::run );
+            assertThat( acquired.get(), equalTo( 1 ) );
+
+            String cached =
+                    CypherDoc.parse( content, null, "http://url/", conn, databases, resultCache, Runnable::run );
+            assertThat( cached, equalTo( uncached ) );
+            assertThat( acquired.get(), equalTo( 1 ) );
+
+            String changed = content.replace( "RETURN y,m10,m11", "RETURN y, m10, m11" );
+            assertThat( changed, not( equalTo( content ) ) );
+            assertThat( CypherDoc.parse( changed, null, "http://url/", conn, databases, resultCache, Runnable::run ),
+                    equalTo( CypherDoc.parse( changed, null, "http://url/" ) ) );
+        }
+    }
+
+    @Test
+    public void shouldKeyCachedResultsOfLoadedFilesOnTheirContents() throws Exception
+    {
+        String content = "= Files\n\n//file:people.csv\n\n" +
+                "[source, cypher]\n----\nLOAD CSV WITH HEADERS FROM 'people.csv' AS line RETURN line.name\n----\n\n" +
+                "//table\n";
+        File results = folder.newFolder( "results" );
+        File checkout = folder.newFolder( "checkout" );
+        Path people = checkout.toPath().resolve( "people.csv" );
+        AtomicInteger acquired = new AtomicInteger();
+        try ( Connection conn = CypherDoc.openSqlDatabase();
+              DatabasePool databases = new DatabasePool( 0 )
+              {
+                  @Override
+                  PooledDatabase acquire()
+                  {
+                      acquired.incrementAndGet();
+                      return super.acquire();
+                  }
+              } )
+        {
+            Files.write( people, Arrays.asList( "name", "Alice" ) );
+            assertThat( CypherDoc.parse( content, checkout, "http://url/", conn, databases,
+                    new ResultCache( results ), Runnable::run ), containsString( "Alice" ) );
+
+            // a later build, after the file changed
+            Files.write( people, Arrays.asList( "name", "Bob" ) );
+            String changed = CypherDoc.parse( content, checkout, "http://url/", conn, databases,
+                    new ResultCache( results ), Runnable::run );
+            assertThat( changed, allOf( containsString( "Bob" ), not( containsString( "Alice" ) ) ) );
+            assertThat( acquired.get(), equalTo( 2 ) );
+
+            // and one in another checkout of the same files
+            File moved = folder.newFolder( "moved" );
+            Files.copy( people, moved.toPath().resolve( "people.csv" ) );
+            assertThat( CypherDoc.parse( content, moved, "http://url/", conn, databases,
+                    new ResultCache( results ), Runnable::run ), equalTo( changed ) );
+            assertThat( acquired.get(), equalTo( 2 ) );
+        }
+    }
+
+    @Test
+    public void shouldWriteTheSameOutputWhenRunningIndependentBlocksConcurrently() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try
+        {
+            for ( String resource : Arrays.asList( "/hello-world.asciidoc", "/tests-with-sql.asciidoc",
+                    "/profiling-test.asciidoc", "/patterns-in-practice.adoc" ) )
+            {
+                String content = readFileToString( resourceFile( resource ) );
+                try ( Connection conn = CypherDoc.openSqlDatabase();
+                      DatabasePool databases = new DatabasePool( 0 ) )
+                {
+                    String concurrent =
+                            CypherDoc.parse( content, null, "http://url/", conn, databases, null, executor );
+                    assertThat( resource, concurrent, equalTo( CypherDoc.parse( content, null, "http://url/" ) ) );
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
     private String readFileToString( Path file ) throws IOException
     {
         return String.join( "\n", Files.readAllLines( file ) );
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.doc.cypherdoc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import static java.util.Collections.synchronizedList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DatabasePoolTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldHandOutDatabasesThatStartIdsFromZero() throws Exception
+    {
+        for ( int startedAhead : new int[]{0, 2} )
+        {
+            try ( DatabasePool databases = new DatabasePool( startedAhead ) )
+            {
+                // more than are started ahead, so that some are started after others have been used
+                for ( int i = 0; i < 4; i++ )
+                {
+                    DatabasePool.PooledDatabase database = databases.acquire();
+                    GraphDatabaseService db = database.database.getGraphDatabaseService();
+                    try ( Transaction tx = db.beginTx() )
+                    {
+                        Node node = db.createNode();
+                        assertThat( node.getId(), equalTo( 0L ) );
+                        assertThat( node.createRelationshipTo( db.createNode(), RelationshipType.withName( "R" ) )
+                                .getId(), equalTo( 0L ) );
+                        tx.success();
+                    }
+                    databases.release( database );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldShutDownDatabasesStartedAheadWhenClosed() throws Exception
+    {
+        List<GraphDatabaseService> startedDatabases = synchronizedList( new ArrayList<>() );
+        DatabasePool databases = new DatabasePool( 3 )
+        {
+            @Override
+            PooledDatabase start()
+            {
+                PooledDatabase database = super.start();
+                startedDatabases.add( database.database.getGraphDatabaseService() );
+                return database;
+            }
+        };
+        DatabasePool.PooledDatabase used = databases.acquire();
+        databases.release( used );
+
+        databases.close();
+
+        // the three started ahead, one of which was used, and the one started in place of the used one
+        assertThat( startedDatabases.size(), equalTo( 4 ) );
+        for ( GraphDatabaseService db : startedDatabases )
+        {
+            assertFalse( db.isAvailable( 0 ) );
+        }
+    }
+
+    @Test
+    public void shouldDumpTheStoreOfAFailingDocumentBeforeAndAfterShutdown() throws Exception
+    {
+        String failing = "= Failing\n\n" +
+                "[source, cypher]\n----\nUNWIND [1, 2] AS x CREATE (n {x: x}) RETURN n.x\n----\n\n" +
+                "[source, querytest]\n----\n1 row\n----\n";
+        try ( Connection conn = CypherDoc.openSqlDatabase();
+              DatabasePool databases = new DatabasePool( 1 ) )
+        {
+            CypherDoc.parse( failing, null, "http://url/", conn, databases, null, Runnable::run );
+            fail( "Expected the query test to fail" );
+        }
+        catch ( TestFailureException failure )
+        {
+            File dumps = folder.newFolder( "dumps" );
+            failure.dumpSnapshots( dumps );
+            assertStoreIsDumped( new File( dumps, "before-shutdown.zip" ) );
+            // an impermanent database clears its store when shut down, so there may be nothing left to dump
+            assertTrue( new File( dumps, "after-shutdown.zip" ).isFile() );
+        }
+    }
+
+    private static void assertStoreIsDumped( File file ) throws IOException
+    {
+        assertTrue( file + " is missing", file.isFile() );
+        try ( ZipInputStream zip = new ZipInputStream( new FileInputStream( file ) ) )
+        {
+            assertThat( zip.getNextEntry(), notNullValue() );
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.doc.cypherdoc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.fail;
+
+public class MainTest
+{
+    private static final String PASSING = "= Passing\n\n" +
+            "[source, cypher]\n----\nCREATE (n {name: 'Alice'}) RETURN n.name\n----\n\n" +
+            "[source, querytest]\n----\n1 row\nAlice\n----\n";
+    private static final String FAILING = "= Failing\n\n" +
+            "[source, cypher]\n----\nUNWIND [1, 2] AS x RETURN x\n----\n\n" +
+            "[source, querytest]\n----\n1 row\n----\n";
+    private static final String CREATING_TABLE = "= Creating a table\n\n" +
+            "[source, sql]\n----\nCREATE TABLE person (name VARCHAR(20))\n----\n\n" +
+            "[source, sql]\n----\nINSERT INTO person VALUES ('Alice')\n----\n\n" +
+            "[source, sql]\n----\nSELECT name FROM person\n----\n\n" +
+            "[source, querytest]\n----\n1 row\nAlice\n----\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldReportAllFailuresInTheOrderOfTheFiles() throws Exception
+    {
+        Path source = folder.newFolder( "source" ).toPath();
+        write( source.resolve( "z-failing.adoc" ), FAILING );
+        write( source.resolve( "a-failing.adoc" ), FAILING );
+        write( source.resolve( "b-passing.adoc" ), PASSING );
+        write( source.resolve( "m" ).resolve( "c-failing.adoc" ), FAILING );
+
+        try
+        {
+            executeAll( source, 4 );
+            fail( "Expected the failing files to fail" );
+        }
+        catch ( RuntimeException e )
+        {
+            assertThat( e.getMessage(), equalTo( "3 of 4 files failed" ) );
+            List<String> failed = new ArrayList<>();
+            for ( Throwable failure : e.getSuppressed() )
+            {
+                assertThat( failure.getCause(), instanceOf( TestFailureException.class ) );
+                failed.add( failure.getMessage().replaceAll( "^Failed while executing file: (\\S+) .*", "$1" ) );
+            }
+            assertThat( failed, equalTo( asList( "a-failing.adoc", "c-failing.adoc", "z-failing.adoc" ) ) );
+        }
+        assertThat( read( "b-passing.adoc" ), equalTo( CypherDoc.parse( PASSING, null, "http://url/" ) ) );
+    }
+
+    @Test
+    public void shouldThrowASingleFailureAsItIs() throws Exception
+    {
+        Path source = folder.newFolder( "source" ).toPath();
+        write( source.resolve( "a-failing.adoc" ), FAILING );
+        write( source.resolve( "b-passing.adoc" ), PASSING );
+        write( source.resolve( "c-passing.adoc" ), PASSING );
+
+        try
+        {
+            executeAll( source, 2 );
+            fail( "Expected the failing file to fail" );
+        }
+        catch ( RuntimeException e )
+        {
+            assertThat( e.getMessage(), startsWith( "Failed while executing file: a-failing.adoc " ) );
+            assertThat( e.getCause(), instanceOf( TestFailureException.class ) );
+            assertThat( e.getSuppressed().length, equalTo( 0 ) );
+        }
+        assertThat( read( "b-passing.adoc" ), equalTo( CypherDoc.parse( PASSING, null, "http://url/" ) ) );
+        assertThat( read( "c-passing.adoc" ), equalTo( CypherDoc.parse( PASSING, null, "http://url/" ) ) );
+    }
+
+    @Test
+    public void shouldNotLeakSqlTablesBetweenDocumentsOfOneWorker() throws Exception
+    {
+        Path source = folder.newFolder( "source" ).toPath();
+        write( source.resolve( "a-table.adoc" ), CREATING_TABLE );
+        write( source.resolve( "b-table.adoc" ), CREATING_TABLE );
+
+        // one worker, which keeps its SQL database between the documents
+        executeAll( source, 1 );
+
+        assertThat( read( "b-table.adoc" ), equalTo( read( "a-table.adoc" ) ) );
+    }
+
+    private void executeAll( Path source, int parallelism ) throws Exception
+    {
+        List<Main.Document> documents = new ArrayList<>();
+        Main.collectDirectory( source, destination(), "http://url/", true, documents );
+        Main.executeAll( documents, parallelism, null );
+    }
+
+    private Path destination()
+    {
+        return folder.getRoot().toPath().resolve( "destination" );
+    }
+
+    private String read( String name ) throws IOException
+    {
+        return new String( Files.readAllBytes( destination().resolve( name ) ), StandardCharsets.UTF_8 );
+    }
+
+    private static void write( Path file, String content ) throws IOException
+    {
+        Files.createDirectories( file.getParent() );
+        Files.write( file, content.getBytes( StandardCharsets.UTF_8 ) );
+    }
+}
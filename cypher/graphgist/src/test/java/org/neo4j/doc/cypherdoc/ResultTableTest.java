@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.doc.cypherdoc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.cypher.javacompat.internal.GraphDatabaseCypherService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ResultTableTest
+{
+    private static final List<String> QUERIES = Arrays.asList(
+            "CREATE (a:Person {name: 'Adam', age: 3})-[:KNOWS {since: 2010}]->(b:Person {name: 'Bob'}) RETURN a, b",
+            "MATCH (a:Person)-[r:KNOWS]->(b) RETURN a, r, b",
+            "MATCH p = (a)-[:KNOWS]->(b) RETURN p, nodes(p), relationships(p)",
+            "RETURN {name: 'Adam', tags: ['x', 'y'], nested: {empty: null}} AS map",
+            "RETURN [1, 2, 3] AS numbers, ['a', 'b'] AS strings, [] AS empty, [[1], [2, 3]] AS nested",
+            "RETURN null AS nothing, 1.5 AS number, true AS flag",
+            "UNWIND range(1, 3) AS i RETURN i",
+            "MATCH (n:Nope) RETURN n",
+            "MATCH (n:Nope) DELETE n",
+            "MATCH (n:Person) SET n.seen = true",
+            "MATCH (n:Person {name: 'Bob'}) DETACH DELETE n RETURN n" );
+
+    private GraphDatabaseService expected;
+    private GraphDatabaseService actual;
+
+    @Before
+    public void setUp()
+    {
+        expected = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        actual = new TestGraphDatabaseFactory().newImpermanentDatabase();
+    }
+
+    @After
+    public void tearDown()
+    {
+        expected.shutdown();
+        actual.shutdown();
+    }
+
+    @Test
+    public void shouldWriteTheSameTableAsCypher()
+    {
+        for ( String query : QUERIES )
+        {
+            String cypher;
+            try ( org.neo4j.graphdb.Result result = expected.execute( query ) )
+            {
+                cypher = result.resultAsString();
+            }
+            assertThat( query, table( query ), equalTo( cypher ) );
+        }
+    }
+
+    private String table( String query )
+    {
+        try ( org.neo4j.graphdb.Result result = actual.execute( query );
+              ResultTable table = new ResultTable( result.columns(), new GraphDatabaseCypherService( actual ),
+                      Collections.emptyList(), Primitive.longSet(), Primitive.longSet() ) )
+        {
+            while ( result.hasNext() )
+            {
+                table.add( result.next() );
+            }
+            return table.toString( result.getQueryStatistics() );
+        }
+    }
+}
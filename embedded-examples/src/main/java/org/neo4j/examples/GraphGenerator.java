@@ -0,0 +1,317 @@
+/*
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.examples;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.collection.primitive.PrimitiveIntStack;
+import org.neo4j.collection.primitive.PrimitiveLongStack;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.io.fs.FileUtils;
+
+/**
+ * Generates synthetic graphs for measuring write throughput: trees, chains and power-law social graphs.
+ * <p>
+ * Everything is written in transactions of at most {@code batchSize} nodes and relationships each, and only
+ * node ids are kept between operations, never node proxies. Each generation returns a {@link Report} with
+ * the number of nodes and relationships created and the rate they were created at.
+ */
+public class GraphGenerator
+{
+    private static final File DB_PATH = new File( "target/neo4j-graph-generator-db" );
+
+    private final GraphDatabaseService graphDb;
+    private final int batchSize;
+
+    public static void main( String[] args ) throws IOException
+    {
+        FileUtils.deleteRecursively( DB_PATH );
+        GraphDatabaseService graphDb = new GraphDatabaseFactory().newEmbeddedDatabase( DB_PATH );
+        try
+        {
+            GraphGenerator generator = new GraphGenerator( graphDb, 10_000 );
+            System.out.println( "tree:   " + generator.tree( RelationshipType.withName( "CHILD" ), 2, 16 ) );
+            System.out.println( "chain:  " + generator.chain( RelationshipType.withName( "NEXT" ), 100_000 ) );
+            System.out.println( "social: " + generator.socialGraph(
+                    RelationshipType.withName( "FRIEND" ), 100_000, 5, new Random( 42 ) ) );
+        }
+        finally
+        {
+            graphDb.shutdown();
+        }
+    }
+
+    public GraphGenerator( GraphDatabaseService graphDb, int batchSize )
+    {
+        if ( batchSize < 1 )
+        {
+            throw new IllegalArgumentException( "Batch size must be at least 1, was " + batchSize );
+        }
+        this.graphDb = graphDb;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Generates a complete tree, with relationships from parents to children.
+     * <p>
+     * The tree is grown one level at a time by iterative deepening: for every new level the tree built so far
+     * is walked depth first from the root, and children are created for the nodes on the deepest level. That
+     * way memory use is bounded by the depth and fan-out rather than by the width of the tree.
+     *
+     * @param type type of the relationships between parents and children.
+     * @param fanOut number of children of every node but the leaves.
+     * @param depth number of levels below the root.
+     */
+    public Report tree( RelationshipType type, int fanOut, int depth )
+    {
+        try ( Batch batch = new Batch() )
+        {
+            long root = batch.createNode();
+            PrimitiveLongStack nodes = new PrimitiveLongStack();
+            PrimitiveIntStack levels = new PrimitiveIntStack();
+            for ( int level = 1; level <= depth; level++ )
+            {
+                nodes.push( root );
+                levels.push( 0 );
+                while ( !nodes.isEmpty() )
+                {
+                    long node = nodes.poll();
+                    int nodeLevel = levels.poll();
+                    if ( nodeLevel == level - 1 )
+                    {
+                        for ( int i = 0; i < fanOut; i++ )
+                        {
+                            batch.createRelationship( node, batch.createNode(), type );
+                        }
+                    }
+                    else
+                    {
+                        for ( Relationship child : graphDb.getNodeById( node )
+                                .getRelationships( Direction.OUTGOING, type ) )
+                        {
+                            nodes.push( child.getEndNodeId() );
+                            levels.push( nodeLevel + 1 );
+                        }
+                    }
+                }
+            }
+            return batch.report();
+        }
+    }
+
+    /**
+     * Generates a chain of {@code length} nodes, each with a relationship to the next.
+     */
+    public Report chain( RelationshipType type, long length )
+    {
+        try ( Batch batch = new Batch() )
+        {
+            long previous = -1;
+            for ( long i = 0; i < length; i++ )
+            {
+                long node = batch.createNode();
+                if ( previous != -1 )
+                {
+                    batch.createRelationship( previous, node, type );
+                }
+                previous = node;
+            }
+            return batch.report();
+        }
+    }
+
+    /**
+     * Generates a graph with a power-law degree distribution by preferential attachment (Barabási–Albert):
+     * every new node gets relationships to {@code relationshipsPerNode} distinct existing nodes, picked with
+     * a probability proportional to their degree.
+     * <p>
+     * Picking by degree needs the endpoints of all relationships created so far, which are kept as node ids
+     * in a primitive array.
+     */
+    public Report socialGraph( RelationshipType type, int nodeCount, int relationshipsPerNode, Random random )
+    {
+        try ( Batch batch = new Batch() )
+        {
+            long[] nodes = new long[nodeCount];
+            long[] endpoints = new long[16];
+            int endpointCount = 0;
+            long[] targets = new long[relationshipsPerNode];
+            for ( int i = 0; i < nodeCount; i++ )
+            {
+                long node = batch.createNode();
+                nodes[i] = node;
+
+                int targetCount = 0;
+                int wanted = Math.min( relationshipsPerNode, i );
+                while ( targetCount < wanted )
+                {
+                    long target = endpointCount == 0 ? nodes[random.nextInt( i )]
+                                                     : endpoints[random.nextInt( endpointCount )];
+                    if ( !contains( targets, targetCount, target ) )
+                    {
+                        targets[targetCount++] = target;
+                    }
+                }
+
+                for ( int j = 0; j < targetCount; j++ )
+                {
+                    batch.createRelationship( node, targets[j], type );
+                    if ( endpointCount + 2 > endpoints.length )
+                    {
+                        endpoints = Arrays.copyOf( endpoints, endpoints.length * 2 );
+                    }
+                    endpoints[endpointCount++] = node;
+                    endpoints[endpointCount++] = targets[j];
+                }
+            }
+            return batch.report();
+        }
+    }
+
+    private static boolean contains( long[] values, int count, long value )
+    {
+        for ( int i = 0; i < count; i++ )
+        {
+            if ( values[i] == value )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Number of nodes and relationships created by a generation, and how long it took.
+     */
+    public static class Report
+    {
+        private final long nodes;
+        private final long relationships;
+        private final long elapsedNanos;
+
+        Report( long nodes, long relationships, long elapsedNanos )
+        {
+            this.nodes = nodes;
+            this.relationships = relationships;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long nodes()
+        {
+            return nodes;
+        }
+
+        public long relationships()
+        {
+            return relationships;
+        }
+
+        public long elapsed( TimeUnit unit )
+        {
+            return unit.convert( elapsedNanos, TimeUnit.NANOSECONDS );
+        }
+
+        public double nodesPerSecond()
+        {
+            return perSecond( nodes );
+        }
+
+        public double relationshipsPerSecond()
+        {
+            return perSecond( relationships );
+        }
+
+        private double perSecond( long count )
+        {
+            return elapsedNanos == 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos( 1 ) / elapsedNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format( "%d nodes and %d relationships in %d ms (%.0f nodes/s, %.0f relationships/s)",
+                    nodes, relationships, elapsed( TimeUnit.MILLISECONDS ), nodesPerSecond(),
+                    relationshipsPerSecond() );
+        }
+    }
+
+    /**
+     * Writes through a transaction that is committed, and replaced, every {@link #batchSize} operations.
+     */
+    private class Batch implements AutoCloseable
+    {
+        private final long startTime = System.nanoTime();
+        private Transaction tx = graphDb.beginTx();
+        private int operationsInTx;
+        private long nodes;
+        private long relationships;
+
+        long createNode()
+        {
+            long node = graphDb.createNode().getId();
+            nodes++;
+            operationDone();
+            return node;
+        }
+
+        void createRelationship( long from, long to, RelationshipType type )
+        {
+            graphDb.getNodeById( from ).createRelationshipTo( graphDb.getNodeById( to ), type );
+            relationships++;
+            operationDone();
+        }
+
+        private void operationDone()
+        {
+            if ( ++operationsInTx >= batchSize )
+            {
+                tx.success();
+                tx.close();
+                tx = graphDb.beginTx();
+                operationsInTx = 0;
+            }
+        }
+
+        Report report()
+        {
+            tx.success();
+            tx.close();
+            tx = null;
+            return new Report( nodes, relationships, System.nanoTime() - startTime );
+        }
+
+        @Override
+        public void close()
+        {
+            if ( tx != null )
+            {
+                tx.close();
+            }
+        }
+    }
+}
@@ -23,6 +23,8 @@ import java.io.IOException;
 import java.util.LinkedList;
 import java.util.Queue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
@@ -35,6 +37,13 @@ import org.neo4j.io.fs.FileUtils;
 public class TerminateTransactions
 {
     private static final File DB_PATH = new File( "target/neo4j-terminate-tx-db" );
+    // one thread terminates the transactions of all terminators, see TransactionTerminator for a reusable version
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor( runnable ->
+    {
+        Thread thread = new Thread( runnable, "terminator" );
+        thread.setDaemon( true );
+        return thread;
+    } );
 
     public static void main(String[] args) throws IOException
     {
@@ -104,30 +113,12 @@ public class TerminateTransactions
 
         public void terminateAfter( final long millis )
         {
-            Executors.newSingleThreadExecutor().submit( new Runnable()
+            SCHEDULER.schedule( () ->
             {
-                @Override
-                public void run()
-                {
-                    long startTime = System.currentTimeMillis();
-                    do
-                    {
-                        try
-                        {
-                            Thread.sleep( millis );
-                        }
-                        catch ( InterruptedException ignored )
-                        {
-                            // terminated while sleeping
-                        }
-                    }
-                    while ( (System.currentTimeMillis() - startTime) < millis );
-
-                    // START SNIPPET: terminateTx
-                    tx.terminate();
-                    // END SNIPPET: terminateTx
-                }
-            } );
+                // START SNIPPET: terminateTx
+                tx.terminate();
+                // END SNIPPET: terminateTx
+            }, millis, TimeUnit.MILLISECONDS );
         }
     }
 
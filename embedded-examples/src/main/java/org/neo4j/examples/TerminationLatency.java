@@ -0,0 +1,179 @@
+/*
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.examples;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.TransactionTerminatedException;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.traversal.TraversalDescription;
+import org.neo4j.io.fs.FileUtils;
+
+/**
+ * Measures how long it takes from terminating a transaction until it actually stops, for transactions that
+ * write, that read and that traverse. Each kind of workload runs in a transaction that never ends by itself,
+ * and is terminated after a short while by a {@link TransactionTerminator}.
+ */
+public class TerminationLatency
+{
+    private static final File DB_PATH = new File( "target/neo4j-termination-latency-db" );
+    private static final RelationshipType CHILD = RelationshipType.withName( "CHILD" );
+
+    /**
+     * A unit of work that runs in a transaction until that is terminated.
+     */
+    public interface Workload
+    {
+        void run( GraphDatabaseService graphDb, Transaction tx );
+    }
+
+    public static final Workload WRITES = ( graphDb, tx ) ->
+    {
+        Node previous = graphDb.createNode();
+        while ( true )
+        {
+            Node node = graphDb.createNode();
+            node.setProperty( "value", node.getId() );
+            previous.createRelationshipTo( node, CHILD );
+            previous = node;
+        }
+    };
+
+    public static final Workload READS = ( graphDb, tx ) ->
+    {
+        while ( true )
+        {
+            for ( Node node : graphDb.getAllNodes() )
+            {
+                node.getAllProperties();
+                node.getDegree();
+            }
+        }
+    };
+
+    public static final Workload TRAVERSALS = ( graphDb, tx ) ->
+    {
+        TraversalDescription traversal = graphDb.traversalDescription().breadthFirst()
+                .relationships( CHILD, Direction.OUTGOING );
+        Node root = graphDb.getNodeById( rootOf( graphDb ) );
+        while ( true )
+        {
+            for ( Path path : traversal.traverse( root ) )
+            {
+                path.endNode();
+            }
+        }
+    };
+
+    private final GraphDatabaseService graphDb;
+    private final TransactionTerminator terminator;
+
+    public static void main( String[] args ) throws IOException
+    {
+        FileUtils.deleteRecursively( DB_PATH );
+        GraphDatabaseService graphDb = new GraphDatabaseFactory().newEmbeddedDatabase( DB_PATH );
+        try
+        {
+            new GraphGenerator( graphDb, 10_000 ).tree( CHILD, 2, 15 );
+            int runs = 20;
+            long terminateAfterMillis = 200;
+            System.out.println( "writes:     " + measure( graphDb, WRITES, runs, terminateAfterMillis ) );
+            System.out.println( "reads:      " + measure( graphDb, READS, runs, terminateAfterMillis ) );
+            System.out.println( "traversals: " + measure( graphDb, TRAVERSALS, runs, terminateAfterMillis ) );
+        }
+        finally
+        {
+            graphDb.shutdown();
+        }
+    }
+
+    /**
+     * Runs {@code workload} {@code runs} times, each time terminating it after {@code terminateAfterMillis}.
+     *
+     * @return the latencies from termination until the workload stopped.
+     */
+    public static TransactionTerminator.LatencyHistogram measure( GraphDatabaseService graphDb, Workload workload,
+            int runs, long terminateAfterMillis )
+    {
+        try ( TransactionTerminator terminator = new TransactionTerminator() )
+        {
+            TerminationLatency latency = new TerminationLatency( graphDb, terminator );
+            for ( int i = 0; i < runs; i++ )
+            {
+                latency.runUntilTerminated( workload, terminateAfterMillis );
+            }
+            return terminator.latencies();
+        }
+    }
+
+    public TerminationLatency( GraphDatabaseService graphDb, TransactionTerminator terminator )
+    {
+        this.graphDb = graphDb;
+        this.terminator = terminator;
+    }
+
+    /**
+     * @return the time in nanoseconds from termination until the workload stopped, not counting the rollback.
+     */
+    public long runUntilTerminated( Workload workload, long terminateAfterMillis )
+    {
+        TransactionTerminator.Termination termination = null;
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            termination = terminator.terminateAfter( tx, terminateAfterMillis, TimeUnit.MILLISECONDS );
+            try
+            {
+                workload.run( graphDb, tx );
+            }
+            catch ( TransactionTerminatedException e )
+            {
+                // before the transaction is closed, so that rolling back what the workload did is not counted
+                return termination.observed();
+            }
+            throw new IllegalStateException( "Workload finished before the transaction was terminated" );
+        }
+        finally
+        {
+            if ( termination != null )
+            {
+                termination.cancel();
+            }
+        }
+    }
+
+    private static long rootOf( GraphDatabaseService graphDb )
+    {
+        for ( Node node : graphDb.getAllNodes() )
+        {
+            if ( node.hasRelationship( CHILD, Direction.OUTGOING ) && !node.hasRelationship( CHILD, Direction.INCOMING ) )
+            {
+                return node.getId();
+            }
+        }
+        throw new IllegalStateException( "There is no tree to traverse" );
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.examples;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Terminates transactions after a timeout, using one scheduler thread for any number of transactions,
+ * and keeps a histogram of how long it takes from terminating a transaction until the thread running it
+ * notices, i.e. gets a {@link org.neo4j.graphdb.TransactionTerminatedException}.
+ * <p>
+ * The thread running the transaction reports that by calling {@link Termination#observed()}.
+ */
+public class TransactionTerminator implements AutoCloseable
+{
+    private final ScheduledExecutorService scheduler;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    public TransactionTerminator()
+    {
+        scheduler = Executors.newSingleThreadScheduledExecutor( runnable ->
+        {
+            Thread thread = new Thread( runnable, "transaction-terminator" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+    }
+
+    /**
+     * Schedules {@code tx} to be terminated after {@code delay}.
+     */
+    public Termination terminateAfter( Transaction tx, long delay, TimeUnit unit )
+    {
+        Termination termination = new Termination( tx );
+        termination.scheduled = scheduler.schedule( termination::terminate, delay, unit );
+        return termination;
+    }
+
+    /**
+     * @return the latencies of all terminations observed so far.
+     */
+    public LatencyHistogram latencies()
+    {
+        return latencies;
+    }
+
+    @Override
+    public void close()
+    {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * A scheduled termination of one transaction.
+     */
+    public class Termination
+    {
+        private final Transaction tx;
+        private volatile ScheduledFuture<?> scheduled;
+        private volatile long terminatedAt;
+
+        private Termination( Transaction tx )
+        {
+            this.tx = tx;
+        }
+
+        private void terminate()
+        {
+            terminatedAt = System.nanoTime();
+            tx.terminate();
+        }
+
+        /**
+         * Cancels the termination, unless it has happened already, e.g. because the transaction finished in time.
+         */
+        public void cancel()
+        {
+            scheduled.cancel( false );
+        }
+
+        public boolean isTerminated()
+        {
+            return terminatedAt != 0;
+        }
+
+        /**
+         * To be called by the thread running the transaction when it sees that the transaction was terminated.
+         *
+         * @return the time in nanoseconds since the transaction was terminated, which is also recorded
+         * in the {@link #latencies() histogram}.
+         */
+        public long observed()
+        {
+            if ( !isTerminated() )
+            {
+                throw new IllegalStateException( "Transaction has not been terminated by " + TransactionTerminator.this );
+            }
+            long latency = System.nanoTime() - terminatedAt;
+            latencies.record( latency );
+            return latency;
+        }
+    }
+
+    /**
+     * Histogram of latencies in nanoseconds, with one bucket per power of two. Safe for concurrent use.
+     */
+    public static class LatencyHistogram
+    {
+        private final AtomicLongArray buckets = new AtomicLongArray( 64 );
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record( long nanos )
+        {
+            long value = Math.max( nanos, 0 );
+            buckets.incrementAndGet( 63 - Long.numberOfLeadingZeros( value | 1 ) );
+            count.incrementAndGet();
+            sum.addAndGet( value );
+            max.accumulateAndGet( value, Math::max );
+        }
+
+        public long count()
+        {
+            return count.get();
+        }
+
+        public long max( TimeUnit unit )
+        {
+            return unit.convert( max.get(), TimeUnit.NANOSECONDS );
+        }
+
+        public long mean( TimeUnit unit )
+        {
+            long count = this.count.get();
+            return count == 0 ? 0 : unit.convert( sum.get() / count, TimeUnit.NANOSECONDS );
+        }
+
+        /**
+         * @param percentile between 0 and 100.
+         * @return an upper bound, at most twice the actual value, of the latency below which the given
+         * percentage of all recorded latencies fall.
+         */
+        public long percentile( double percentile, TimeUnit unit )
+        {
+            long count = this.count.get();
+            if ( count == 0 )
+            {
+                return 0;
+            }
+            long rank = (long) Math.ceil( count * percentile / 100 );
+            long seen = 0;
+            for ( int bucket = 0; bucket < 64; bucket++ )
+            {
+                seen += buckets.get( bucket );
+                if ( seen >= Math.max( rank, 1 ) )
+                {
+                    long upperBound = bucket >= 62 ? Long.MAX_VALUE : (2L << bucket) - 1;
+                    return unit.convert( Math.min( upperBound, max.get() ), TimeUnit.NANOSECONDS );
+                }
+            }
+            return max( unit );
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format( "count=%d mean=%dus p50<=%dus p99<=%dus max=%dus", count(),
+                    mean( TimeUnit.MICROSECONDS ), percentile( 50, TimeUnit.MICROSECONDS ),
+                    percentile( 99, TimeUnit.MICROSECONDS ), max( TimeUnit.MICROSECONDS ) );
+        }
+    }
+}
@@ -125,6 +125,20 @@ public class OrderedPath
         return td;
     }
 
+    /**
+     * Finds the same paths as {@link #findPaths()}, but with an {@link OrderedPathExpander} which only fetches
+     * the relationships of the types the path can continue with.
+     */
+    TraversalDescription findPathsByExpander()
+    {
+        OrderedPathExpander orderedPath = OrderedPathExpander.builder()
+                .step( REL1 )
+                .step( REL2 )
+                .step( REL3 )
+                .build();
+        return orderedPath.traversal( db.traversalDescription() );
+    }
+
     String printPaths( TraversalDescription td, Node A )
     {
         try ( Transaction transaction = db.beginTx() )
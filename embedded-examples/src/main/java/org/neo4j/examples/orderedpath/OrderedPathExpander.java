@@ -0,0 +1,325 @@
+/*
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.examples.orderedpath;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.PathExpander;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.traversal.BidirectionalTraversalDescription;
+import org.neo4j.graphdb.traversal.BranchState;
+import org.neo4j.graphdb.traversal.Evaluation;
+import org.neo4j.graphdb.traversal.InitialBranchState;
+import org.neo4j.graphdb.traversal.PathEvaluator;
+import org.neo4j.graphdb.traversal.TraversalDescription;
+import org.neo4j.graphdb.traversal.Uniqueness;
+import org.neo4j.helpers.collection.Iterables;
+
+import static org.neo4j.graphdb.RelationshipType.withName;
+
+/**
+ * Expands only paths whose relationships follow a given sequence of types, like {@code REL1 REL2+ REL3}.
+ * <p>
+ * The sequence is compiled into a small state machine. Each state is the index of the next step to match,
+ * and since a repeated step may match again or be followed by the next one, a path can be in several
+ * states at once, kept as bits of a {@code long} in the {@link BranchState branch state}. At each node only
+ * relationships of the types the current states can match are fetched, instead of fetching all of them and
+ * filtering afterwards.
+ * <p>
+ * Use it through {@link #traversal(TraversalDescription)}, which also adds the matching evaluator, or through
+ * {@link #traversal(BidirectionalTraversalDescription, TraversalDescription)} to match from both ends at once.
+ */
+public class OrderedPathExpander implements PathExpander<Long>
+{
+    private static final int MAX_STEPS = Long.SIZE - 1;
+
+    private final RelationshipType[] types;
+    private final Direction[] directions;
+    private final boolean[] repeated;
+    private final long accepting;
+
+    private OrderedPathExpander( List<RelationshipType> types, List<Direction> directions, List<Boolean> repeated )
+    {
+        int steps = types.size();
+        this.types = types.toArray( new RelationshipType[steps] );
+        this.directions = directions.toArray( new Direction[steps] );
+        this.repeated = new boolean[steps];
+        for ( int i = 0; i < steps; i++ )
+        {
+            this.repeated[i] = repeated.get( i );
+        }
+        this.accepting = 1L << steps;
+    }
+
+    private OrderedPathExpander( RelationshipType[] types, Direction[] directions, boolean[] repeated )
+    {
+        this.types = types;
+        this.directions = directions;
+        this.repeated = repeated;
+        this.accepting = 1L << types.length;
+    }
+
+    /**
+     * Compiles a space separated sequence of relationship type names. A name followed by {@code +} matches
+     * one or more relationships of that type. A name preceded by {@code >} or {@code <} only matches
+     * outgoing or incoming relationships, otherwise relationships in either direction match.
+     */
+    public static OrderedPathExpander compile( String pattern )
+    {
+        Builder builder = builder();
+        for ( String token : pattern.trim().split( "\\s+" ) )
+        {
+            Direction direction = Direction.BOTH;
+            if ( token.startsWith( ">" ) )
+            {
+                direction = Direction.OUTGOING;
+                token = token.substring( 1 );
+            }
+            else if ( token.startsWith( "<" ) )
+            {
+                direction = Direction.INCOMING;
+                token = token.substring( 1 );
+            }
+            boolean oneOrMore = token.endsWith( "+" );
+            if ( oneOrMore )
+            {
+                token = token.substring( 0, token.length() - 1 );
+            }
+            if ( token.isEmpty() )
+            {
+                throw new IllegalArgumentException( "Missing relationship type in '" + pattern + "'" );
+            }
+            if ( oneOrMore )
+            {
+                builder.oneOrMore( withName( token ), direction );
+            }
+            else
+            {
+                builder.step( withName( token ), direction );
+            }
+        }
+        return builder.build();
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * @return {@code base} set up to return the paths matching this sequence.
+     */
+    public TraversalDescription traversal( TraversalDescription base )
+    {
+        return base.expand( this, new InitialBranchState.State<>( 1L, 1L ) )
+                .evaluator( new Matcher() )
+                .uniqueness( Uniqueness.NODE_PATH );
+    }
+
+    /**
+     * @return {@code base} set up to return the paths matching this sequence between its start and end nodes,
+     * with {@code side} expanding from the start nodes and reversed from the end nodes.
+     */
+    public BidirectionalTraversalDescription traversal( BidirectionalTraversalDescription base,
+            TraversalDescription side )
+    {
+        return base.mirroredSides( side.expand( this, new InitialBranchState.State<>( 1L, 1L ) )
+                .uniqueness( Uniqueness.NODE_PATH ) )
+                .collisionEvaluator( path -> Evaluation.ofIncludes( matches( path ) ) );
+    }
+
+    /**
+     * @return whether all relationships of {@code path}, from its start node, follow this sequence.
+     */
+    public boolean matches( Path path )
+    {
+        long states = 1L;
+        Iterator<Node> nodes = path.nodes().iterator();
+        nodes.next();
+        for ( Relationship relationship : path.relationships() )
+        {
+            states = advance( states, relationship, nodes.next() );
+        }
+        return (states & accepting) != 0;
+    }
+
+    @Override
+    public Iterable<Relationship> expand( Path path, BranchState<Long> state )
+    {
+        long states = statesOf( path, state );
+        state.setState( states );
+
+        // one fetch per type, with both directions if different steps want different ones
+        Map<RelationshipType,Direction> wanted = new LinkedHashMap<>();
+        for ( int step = 0; step < types.length; step++ )
+        {
+            if ( (states & (1L << step)) != 0 )
+            {
+                wanted.merge( types[step], directions[step], ( a, b ) -> a == b ? a : Direction.BOTH );
+            }
+        }
+        if ( wanted.isEmpty() )
+        {
+            return Collections.emptyList();
+        }
+        Node node = path.endNode();
+        if ( wanted.size() == 1 )
+        {
+            Map.Entry<RelationshipType,Direction> only = wanted.entrySet().iterator().next();
+            return node.getRelationships( only.getValue(), only.getKey() );
+        }
+        List<Iterable<Relationship>> relationships = new ArrayList<>( wanted.size() );
+        wanted.forEach( ( type, direction ) -> relationships.add( node.getRelationships( direction, type ) ) );
+        return Iterables.concat( relationships );
+    }
+
+    @Override
+    public OrderedPathExpander reverse()
+    {
+        // the same sequence walked from its end: last step first, each in the opposite direction
+        int steps = types.length;
+        RelationshipType[] reversedTypes = new RelationshipType[steps];
+        Direction[] reversedDirections = new Direction[steps];
+        boolean[] reversedRepeated = new boolean[steps];
+        for ( int i = 0; i < steps; i++ )
+        {
+            reversedTypes[i] = types[steps - 1 - i];
+            reversedDirections[i] = directions[steps - 1 - i].reverse();
+            reversedRepeated[i] = repeated[steps - 1 - i];
+        }
+        return new OrderedPathExpander( reversedTypes, reversedDirections, reversedRepeated );
+    }
+
+    /**
+     * The states {@code path} is in, given the states of the path without its last relationship, which is
+     * what the branch state holds until it is updated for the children of this path.
+     */
+    private long statesOf( Path path, BranchState<Long> state )
+    {
+        long previous = state.getState();
+        Relationship last = path.lastRelationship();
+        return last == null ? previous : advance( previous, last, path.endNode() );
+    }
+
+    private long advance( long states, Relationship relationship, Node reached )
+    {
+        long next = 0;
+        for ( int step = 0; step < types.length; step++ )
+        {
+            if ( (states & (1L << step)) != 0 && matches( step, relationship, reached ) )
+            {
+                next |= 1L << (step + 1);
+                if ( repeated[step] )
+                {
+                    next |= 1L << step;
+                }
+            }
+        }
+        return next;
+    }
+
+    private boolean matches( int step, Relationship relationship, Node reached )
+    {
+        if ( !relationship.isType( types[step] ) )
+        {
+            return false;
+        }
+        switch ( directions[step] )
+        {
+        case OUTGOING:
+            return relationship.getEndNodeId() == reached.getId();
+        case INCOMING:
+            return relationship.getStartNodeId() == reached.getId();
+        default:
+            return true;
+        }
+    }
+
+    private class Matcher extends PathEvaluator.Adapter<Long>
+    {
+        @Override
+        public Evaluation evaluate( Path path, BranchState<Long> state )
+        {
+            long states = statesOf( path, state );
+            return Evaluation.of( (states & accepting) != 0, (states & ~accepting) != 0 );
+        }
+    }
+
+    public static class Builder
+    {
+        private final List<RelationshipType> types = new ArrayList<>();
+        private final List<Direction> directions = new ArrayList<>();
+        private final List<Boolean> repeated = new ArrayList<>();
+
+        private Builder()
+        {
+        }
+
+        /**
+         * Adds a step matching exactly one relationship of {@code type}, in either direction.
+         */
+        public Builder step( RelationshipType type )
+        {
+            return step( type, Direction.BOTH );
+        }
+
+        public Builder step( RelationshipType type, Direction direction )
+        {
+            return add( type, direction, false );
+        }
+
+        /**
+         * Adds a step matching one or more consecutive relationships of {@code type}.
+         */
+        public Builder oneOrMore( RelationshipType type, Direction direction )
+        {
+            return add( type, direction, true );
+        }
+
+        private Builder add( RelationshipType type, Direction direction, boolean oneOrMore )
+        {
+            if ( types.size() == MAX_STEPS )
+            {
+                throw new IllegalArgumentException( "An ordered path can have at most " + MAX_STEPS + " steps" );
+            }
+            types.add( type );
+            directions.add( direction );
+            repeated.add( oneOrMore );
+            return this;
+        }
+
+        public OrderedPathExpander build()
+        {
+            if ( types.isEmpty() )
+            {
+                throw new IllegalArgumentException( "An ordered path needs at least one step" );
+            }
+            return new OrderedPathExpander( types, directions, repeated );
+        }
+    }
+}
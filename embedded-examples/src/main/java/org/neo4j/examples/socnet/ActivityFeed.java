@@ -0,0 +1,130 @@
+/*
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.examples.socnet;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Page-wise access to the activity feed of a person, i.e. the status updates of all friends, newest first.
+ * Only as many statuses as fit on the requested page are pulled out of the underlying merge.
+ * <p>
+ * Statuses posted at the same time are ordered by id, so that a {@link Cursor} of timestamp and status id
+ * picks up right after the last status of a page, also when the statuses after it share its timestamp.
+ */
+public class ActivityFeed
+{
+    public static final Cursor FIRST_PAGE = new Cursor( Long.MAX_VALUE, Long.MAX_VALUE );
+
+    private ActivityFeed()
+    {
+    }
+
+    /**
+     * Returns the next page of the activity feed of {@code person}.
+     *
+     * @param person the person whose feed to read.
+     * @param pageSize maximum number of status updates to return.
+     * @param after cursor into the feed, only statuses after it in the feed are returned. Use
+     * {@link #FIRST_PAGE} for the first page and {@link #nextCursor(List)} of the previous page to continue.
+     * @return at most {@code pageSize} status updates, newest first.
+     */
+    public static List<StatusUpdate> feed( Person person, int pageSize, Cursor after )
+    {
+        if ( pageSize < 0 )
+        {
+            throw new IllegalArgumentException( "Page size must not be negative, was " + pageSize );
+        }
+
+        List<StatusUpdate> page = new ArrayList<>( Math.min( pageSize, 64 ) );
+        Iterator<StatusUpdate> statuses = new FriendsStatusUpdateIterator( person, after.timestamp, after.statusId );
+        while ( page.size() < pageSize && statuses.hasNext() )
+        {
+            page.add( statuses.next() );
+        }
+        return page;
+    }
+
+    /**
+     * @param page a page previously returned from {@link #feed(Person, int, Cursor)}.
+     * @return the cursor to pass to {@link #feed(Person, int, Cursor)} to get the page following {@code page}.
+     */
+    public static Cursor nextCursor( List<StatusUpdate> page )
+    {
+        if ( page.isEmpty() )
+        {
+            return new Cursor( Long.MIN_VALUE, Long.MIN_VALUE );
+        }
+        StatusUpdate last = page.get( page.size() - 1 );
+        return new Cursor( last.getTimestamp(), last.getUnderlyingNode().getId() );
+    }
+
+    /**
+     * A position in an activity feed or a {@link Timeline}, right after the status with the given timestamp and id.
+     */
+    public static final class Cursor
+    {
+        private final long timestamp;
+        private final long statusId;
+
+        public Cursor( long timestamp, long statusId )
+        {
+            this.timestamp = timestamp;
+            this.statusId = statusId;
+        }
+
+        public long getTimestamp()
+        {
+            return timestamp;
+        }
+
+        public long getStatusId()
+        {
+            return statusId;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !(o instanceof Cursor) )
+            {
+                return false;
+            }
+            Cursor cursor = (Cursor) o;
+            return timestamp == cursor.timestamp && statusId == cursor.statusId;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * Long.hashCode( timestamp ) + Long.hashCode( statusId );
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Cursor[" + timestamp + ", " + statusId + "]";
+        }
+    }
+}
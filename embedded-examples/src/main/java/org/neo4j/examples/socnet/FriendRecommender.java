@@ -0,0 +1,195 @@
+/*
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.examples.socnet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveLongIntMap;
+import org.neo4j.collection.primitive.PrimitiveLongSet;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import static org.neo4j.examples.socnet.RelTypes.FRIEND;
+
+/**
+ * Recommends friends of friends, ranked by the number of friends they have in common with the start person.
+ * <p>
+ * The mutual friend counts are gathered in a single two hop expansion from the start node, keyed on node id,
+ * and the best candidates are picked with a heap bounded to the number of recommendations asked for.
+ * Ties are broken on the lower node id, so that the result is stable.
+ */
+class FriendRecommender
+{
+    private FriendRecommender()
+    {
+    }
+
+    /**
+     * @param paths the path service to give the recommended persons, {@code null} for none.
+     */
+    static List<Person> recommend( Node start, int numberOfFriendsToReturn, PathService paths )
+    {
+        if ( numberOfFriendsToReturn <= 0 )
+        {
+            return new ArrayList<>();
+        }
+
+        long startId = start.getId();
+        List<Node> friends = new ArrayList<>();
+        try ( PrimitiveLongSet friendIds = Primitive.longSet();
+              PrimitiveLongIntMap mutualFriends = Primitive.longIntMap() )
+        {
+            for ( Relationship friendRel : start.getRelationships( FRIEND ) )
+            {
+                Node friend = friendRel.getOtherNode( start );
+                if ( friendIds.add( friend.getId() ) )
+                {
+                    friends.add( friend );
+                }
+            }
+
+            for ( Node friend : friends )
+            {
+                long friendId = friend.getId();
+                for ( Relationship friendRel : friend.getRelationships( FRIEND ) )
+                {
+                    long candidate = friendRel.getOtherNodeId( friendId );
+                    if ( candidate != startId && !friendIds.contains( candidate ) )
+                    {
+                        int count = mutualFriends.get( candidate );
+                        mutualFriends.put( candidate, count == -1 ? 1 : count + 1 );
+                    }
+                }
+            }
+
+            TopCandidates top = new TopCandidates( Math.min( numberOfFriendsToReturn, mutualFriends.size() ) );
+            mutualFriends.visitEntries( ( candidate, count ) ->
+            {
+                top.offer( candidate, count );
+                return false;
+            } );
+            return top.toPersons( start.getGraphDatabase(), paths );
+        }
+    }
+
+    /**
+     * Min-heap of (count, id) pairs in parallel primitive arrays, holding the best candidates seen so far.
+     * The root is the worst of those, so a new candidate only has to beat the root to get in.
+     */
+    private static class TopCandidates
+    {
+        private final long[] ids;
+        private final int[] counts;
+        private int size;
+
+        TopCandidates( int capacity )
+        {
+            ids = new long[capacity];
+            counts = new int[capacity];
+        }
+
+        void offer( long id, int count )
+        {
+            if ( size < ids.length )
+            {
+                ids[size] = id;
+                counts[size] = count;
+                siftUp( size++ );
+            }
+            else if ( isBetter( id, count, 0 ) )
+            {
+                ids[0] = id;
+                counts[0] = count;
+                siftDown( 0, size );
+            }
+        }
+
+        List<Person> toPersons( GraphDatabaseService graphDb, PathService paths )
+        {
+            // Repeatedly moving the worst candidate to the end leaves the arrays sorted best first
+            for ( int end = size - 1; end > 0; end-- )
+            {
+                swap( 0, end );
+                siftDown( 0, end );
+            }
+            List<Person> persons = new ArrayList<>( size );
+            for ( int i = 0; i < size; i++ )
+            {
+                persons.add( new Person( graphDb.getNodeById( ids[i] ), paths ) );
+            }
+            return persons;
+        }
+
+        private boolean isBetter( long id, int count, int slot )
+        {
+            return count != counts[slot] ? count > counts[slot] : id < ids[slot];
+        }
+
+        private void siftUp( int slot )
+        {
+            while ( slot > 0 )
+            {
+                int parent = (slot - 1) >>> 1;
+                if ( !isBetter( ids[parent], counts[parent], slot ) )
+                {
+                    return;
+                }
+                swap( slot, parent );
+                slot = parent;
+            }
+        }
+
+        private void siftDown( int slot, int end )
+        {
+            while ( true )
+            {
+                int worst = slot;
+                int left = 2 * slot + 1;
+                int right = left + 1;
+                if ( left < end && isBetter( ids[worst], counts[worst], left ) )
+                {
+                    worst = left;
+                }
+                if ( right < end && isBetter( ids[worst], counts[worst], right ) )
+                {
+                    worst = right;
+                }
+                if ( worst == slot )
+                {
+                    return;
+                }
+                swap( slot, worst );
+                slot = worst;
+            }
+        }
+
+        private void swap( int a, int b )
+        {
+            long id = ids[a];
+            ids[a] = ids[b];
+            ids[b] = id;
+            int count = counts[a];
+            counts[a] = counts[b];
+            counts[b] = count;
+        }
+    }
+}
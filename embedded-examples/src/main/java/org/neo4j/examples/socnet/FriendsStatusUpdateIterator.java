@@ -18,73 +18,114 @@
  */
 package org.neo4j.examples.socnet;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 
-import org.neo4j.helpers.collection.PositionedIterator;
-
+/**
+ * Merges the status update lists of all friends of a person into one stream, newest first.
+ * <p>
+ * Every friend's list is already ordered newest first, so the friends are kept in a heap keyed
+ * on the date of their current status, with statuses posted at the same time ordered by id.
+ * Producing the next update costs one heap operation, i.e. O(log F) for F friends with statuses,
+ * and a friend's list is only read one status past those posted at the time of its current one, see
+ * {@link Timeline#statusesAfter(Person, long, long)}.
+ */
 class FriendsStatusUpdateIterator implements Iterator<StatusUpdate> {
-    private ArrayList<PositionedIterator<StatusUpdate>> statuses = new ArrayList<PositionedIterator<StatusUpdate>>();
-    private StatusUpdateComparator comparator = new StatusUpdateComparator();
+    private final PriorityQueue<FriendStatuses> statuses;
 
     public FriendsStatusUpdateIterator( Person person )
     {
+        this( person, Long.MAX_VALUE, Long.MAX_VALUE );
+    }
+
+    /**
+     * Starts the merge after a given status, in the order of this iterator, where statuses with the same
+     * timestamp come in descending order of their ids.
+     *
+     * @param person the person whose friends' statuses to merge.
+     * @param timestamp only include statuses older than this timestamp, or posted at this timestamp
+     * and with a lower id than {@code statusId}.
+     * @param statusId the id of the status to start after, {@link Long#MAX_VALUE} along with a timestamp
+     * of {@link Long#MAX_VALUE} includes everything.
+     */
+    public FriendsStatusUpdateIterator( Person person, long timestamp, long statusId )
+    {
+        statuses = new PriorityQueue<>( 16, new StatusUpdateComparator() );
         for ( Person friend : person.getFriends() )
         {
-            Iterator<StatusUpdate> iterator = friend.getStatus().iterator();
-            if (iterator.hasNext()) {
-                statuses.add(new PositionedIterator<StatusUpdate>(iterator));
+            FriendStatuses friendStatuses = new FriendStatuses( Timeline.statusesAfter( friend, timestamp, statusId ) );
+            if ( friendStatuses.advance() )
+            {
+                statuses.add( friendStatuses );
             }
         }
-
-        sort();
     }
 
     public boolean hasNext()
     {
-        return statuses.size() > 0;
+        return !statuses.isEmpty();
     }
 
     public StatusUpdate next()
     {
-        if ( statuses.size() == 0 )
+        if ( statuses.isEmpty() )
         {
             throw new NoSuchElementException();
         }
         // START SNIPPET: getActivityStream
-        PositionedIterator<StatusUpdate> first = statuses.get(0);
-        StatusUpdate returnVal = first.current();
+        FriendStatuses first = statuses.poll();
+        StatusUpdate returnVal = first.current;
 
-        if ( !first.hasNext() )
-        {
-            statuses.remove( 0 );
-        }
-        else
+        if ( first.advance() )
         {
-            first.next();
-            sort();
+            statuses.add( first );
         }
 
         return returnVal;
         // END SNIPPET: getActivityStream
     }
 
-    private void sort()
+    public void remove()
     {
-        Collections.sort( statuses, comparator );
+        throw new UnsupportedOperationException( "Don't know how to do that..." );
     }
 
-    public void remove()
+    /**
+     * Cursor over one friend's statuses, caching the date and id of the current one so that heap
+     * comparisons don't go back to the node properties.
+     */
+    private static class FriendStatuses
     {
-        throw new UnsupportedOperationException( "Don't know how to do that..." );
+        private final Iterator<StatusUpdate> iterator;
+        private StatusUpdate current;
+        private long currentDate;
+        private long currentId;
+
+        FriendStatuses( Iterator<StatusUpdate> iterator )
+        {
+            this.iterator = iterator;
+        }
+
+        boolean advance()
+        {
+            if ( !iterator.hasNext() )
+            {
+                current = null;
+                return false;
+            }
+            current = iterator.next();
+            currentDate = current.getTimestamp();
+            currentId = current.getUnderlyingNode().getId();
+            return true;
+        }
     }
 
-    private class StatusUpdateComparator implements Comparator<PositionedIterator<StatusUpdate>> {
-        public int compare(PositionedIterator<StatusUpdate> a, PositionedIterator<StatusUpdate> b) {
-            return a.current().getDate().compareTo(b.current().getDate());
+    private static class StatusUpdateComparator implements Comparator<FriendStatuses> {
+        public int compare(FriendStatuses a, FriendStatuses b) {
+            int byDate = Long.compare( b.currentDate, a.currentDate );
+            return byDate != 0 ? byDate : Long.compare( b.currentId, a.currentId );
         }
     }
 }
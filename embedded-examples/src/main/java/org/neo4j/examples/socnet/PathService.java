@@ -0,0 +1,370 @@
+/*
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.examples.socnet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveLongLongMap;
+import org.neo4j.collection.primitive.PrimitiveLongStack;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.txstate.TxStateHolder;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import static org.neo4j.examples.socnet.RelTypes.FRIEND;
+
+/**
+ * Finds shortest friend paths between persons with a bidirectional breadth first search.
+ * <p>
+ * Both searches keep their visited nodes, and the node each was reached from, in primitive id maps,
+ * and the side with the smaller frontier is the one expanded next. Searches are bounded both by path
+ * length and by the number of nodes visited.
+ * <p>
+ * A service created with a cache size keeps the most recently asked for paths, keyed on
+ * (source, target, max depth). The cache is dropped as soon as a transaction that creates or deletes
+ * {@link RelTypes#FRIEND} relationships commits. Transactions that have changes of their own neither use
+ * nor fill the cache, since they may see friendships no one else does. Such a service must be
+ * {@link #close() closed} to unregister from the database.
+ */
+public class PathService implements AutoCloseable
+{
+    private static final long[] NO_PATH = new long[0];
+
+    private final GraphDatabaseService graphDb;
+    private final int maxVisitedNodes;
+    private final PathCache cache;
+    private final FriendChangeHandler friendChangeHandler;
+    private final ThreadToStatementContextBridge transactions;
+
+    public PathService( GraphDatabaseService graphDb )
+    {
+        this( graphDb, Integer.MAX_VALUE, 0 );
+    }
+
+    /**
+     * @param graphDb the database to search.
+     * @param maxVisitedNodes give up on a search once this many nodes have been visited by both sides together.
+     * @param cacheSize number of recent results to keep, {@code 0} disables caching.
+     */
+    public PathService( GraphDatabaseService graphDb, int maxVisitedNodes, int cacheSize )
+    {
+        if ( maxVisitedNodes < 2 )
+        {
+            throw new IllegalArgumentException( "Must be allowed to visit at least 2 nodes, was " + maxVisitedNodes );
+        }
+        this.graphDb = graphDb;
+        this.maxVisitedNodes = maxVisitedNodes;
+        if ( cacheSize > 0 )
+        {
+            cache = new PathCache( cacheSize );
+            friendChangeHandler = new FriendChangeHandler();
+            graphDb.registerTransactionEventHandler( friendChangeHandler );
+            transactions = ((GraphDatabaseAPI) graphDb).getDependencyResolver()
+                    .resolveDependency( ThreadToStatementContextBridge.class );
+        }
+        else
+        {
+            cache = null;
+            friendChangeHandler = null;
+            transactions = null;
+        }
+    }
+
+    /**
+     * Finds a shortest path of friends from {@code from} to {@code to}, must be called within a transaction.
+     *
+     * @return the persons along the path, starting with {@code from} and ending with {@code to},
+     * or an empty list if there is no such path of at most {@code maxDepth} relationships.
+     */
+    public List<Person> shortestPath( Person from, Person to, int maxDepth )
+    {
+        long source = from.getUnderlyingNode().getId();
+        long target = to.getUnderlyingNode().getId();
+
+        long[] path;
+        if ( cache == null || hasUncommittedChanges() )
+        {
+            path = findPath( source, target, maxDepth );
+        }
+        else
+        {
+            PathKey key = new PathKey( source, target, maxDepth );
+            path = cache.get( key );
+            if ( path == null )
+            {
+                long generation = cache.generation();
+                path = findPath( source, target, maxDepth );
+                cache.put( key, path, generation );
+            }
+        }
+        return toPersons( path );
+    }
+
+    @Override
+    public void close()
+    {
+        if ( friendChangeHandler != null )
+        {
+            graphDb.unregisterTransactionEventHandler( friendChangeHandler );
+            cache.clear();
+        }
+    }
+
+    private boolean hasUncommittedChanges()
+    {
+        KernelTransaction transaction = transactions.getKernelTransactionBoundToThisThread( true );
+        return !(transaction instanceof TxStateHolder) || ((TxStateHolder) transaction).hasTxStateWithChanges();
+    }
+
+    private long[] findPath( long source, long target, int maxDepth )
+    {
+        if ( source == target )
+        {
+            return new long[]{source};
+        }
+
+        // maps every visited node to the node it was reached from, the start nodes map to themselves
+        try ( PrimitiveLongLongMap forward = Primitive.offHeapLongLongMap();
+              PrimitiveLongLongMap backward = Primitive.offHeapLongLongMap() )
+        {
+            PrimitiveLongStack forwardFrontier = new PrimitiveLongStack();
+            PrimitiveLongStack backwardFrontier = new PrimitiveLongStack();
+            forward.put( source, source );
+            forwardFrontier.push( source );
+            backward.put( target, target );
+            backwardFrontier.push( target );
+
+            for ( int depth = 0; depth < maxDepth; depth++ )
+            {
+                if ( forwardFrontier.isEmpty() || backwardFrontier.isEmpty() )
+                {
+                    return NO_PATH;
+                }
+
+                long meeting;
+                if ( forwardFrontier.size() <= backwardFrontier.size() )
+                {
+                    PrimitiveLongStack next = new PrimitiveLongStack();
+                    meeting = expand( forwardFrontier, next, forward, backward );
+                    forwardFrontier = next;
+                }
+                else
+                {
+                    PrimitiveLongStack next = new PrimitiveLongStack();
+                    meeting = expand( backwardFrontier, next, backward, forward );
+                    backwardFrontier = next;
+                }
+
+                if ( meeting >= 0 )
+                {
+                    return joinPath( meeting, forward, backward );
+                }
+                if ( forward.size() + backward.size() >= maxVisitedNodes )
+                {
+                    return NO_PATH;
+                }
+            }
+            return NO_PATH;
+        }
+    }
+
+    /**
+     * Expands one level of one of the searches.
+     *
+     * @return the id of the first node found that the other search has already visited, or {@code -1}.
+     */
+    private long expand( PrimitiveLongStack frontier, PrimitiveLongStack next,
+            PrimitiveLongLongMap visited, PrimitiveLongLongMap otherVisited )
+    {
+        while ( !frontier.isEmpty() )
+        {
+            long id = frontier.poll();
+            Node node = graphDb.getNodeById( id );
+            for ( Relationship friendRel : node.getRelationships( FRIEND ) )
+            {
+                long otherId = friendRel.getOtherNodeId( id );
+                if ( visited.containsKey( otherId ) )
+                {
+                    continue;
+                }
+                visited.put( otherId, id );
+                if ( otherVisited.containsKey( otherId ) )
+                {
+                    return otherId;
+                }
+                next.push( otherId );
+            }
+        }
+        return -1;
+    }
+
+    private long[] joinPath( long meeting, PrimitiveLongLongMap forward, PrimitiveLongLongMap backward )
+    {
+        List<Long> ids = new ArrayList<>();
+        for ( long id = meeting; ; id = forward.get( id ) )
+        {
+            ids.add( id );
+            if ( forward.get( id ) == id )
+            {
+                break;
+            }
+        }
+        Collections.reverse( ids );
+        for ( long id = meeting; backward.get( id ) != id; )
+        {
+            id = backward.get( id );
+            ids.add( id );
+        }
+
+        long[] path = new long[ids.size()];
+        for ( int i = 0; i < path.length; i++ )
+        {
+            path[i] = ids.get( i );
+        }
+        return path;
+    }
+
+    private List<Person> toPersons( long[] path )
+    {
+        List<Person> persons = new ArrayList<>( path.length );
+        for ( long id : path )
+        {
+            persons.add( new Person( graphDb.getNodeById( id ), this ) );
+        }
+        return persons;
+    }
+
+    private static final class PathKey
+    {
+        private final long source;
+        private final long target;
+        private final int maxDepth;
+
+        PathKey( long source, long target, int maxDepth )
+        {
+            this.source = source;
+            this.target = target;
+            this.maxDepth = maxDepth;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( !(o instanceof PathKey) )
+            {
+                return false;
+            }
+            PathKey other = (PathKey) o;
+            return source == other.source && target == other.target && maxDepth == other.maxDepth;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * (31 * Long.hashCode( source ) + Long.hashCode( target )) + maxDepth;
+        }
+    }
+
+    /**
+     * Least recently used cache of paths. Every invalidation bumps a generation, and results computed
+     * during an older generation are not cached since they may have seen the friendships before the change.
+     */
+    private static final class PathCache
+    {
+        private final Map<PathKey,long[]> paths;
+        private long generation;
+
+        PathCache( final int size )
+        {
+            paths = new LinkedHashMap<PathKey,long[]>( 16, 0.75f, true )
+            {
+                @Override
+                protected boolean removeEldestEntry( Map.Entry<PathKey,long[]> eldest )
+                {
+                    return size() > size;
+                }
+            };
+        }
+
+        synchronized long[] get( PathKey key )
+        {
+            return paths.get( key );
+        }
+
+        synchronized long generation()
+        {
+            return generation;
+        }
+
+        synchronized void put( PathKey key, long[] path, long computedInGeneration )
+        {
+            if ( computedInGeneration == generation )
+            {
+                paths.put( key, path );
+            }
+        }
+
+        synchronized void clear()
+        {
+            generation++;
+            paths.clear();
+        }
+    }
+
+    private class FriendChangeHandler extends TransactionEventHandler.Adapter<Boolean>
+    {
+        @Override
+        public Boolean beforeCommit( TransactionData data ) throws Exception
+        {
+            return containsFriendship( data.createdRelationships() ) ||
+                   containsFriendship( data.deletedRelationships() );
+        }
+
+        @Override
+        public void afterCommit( TransactionData data, Boolean friendshipsChanged )
+        {
+            if ( friendshipsChanged )
+            {
+                cache.clear();
+            }
+        }
+
+        private boolean containsFriendship( Iterable<Relationship> relationships )
+        {
+            for ( Relationship relationship : relationships )
+            {
+                if ( relationship.isType( FRIEND ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
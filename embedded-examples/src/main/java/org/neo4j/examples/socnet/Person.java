@@ -18,17 +18,16 @@
  */
 package org.neo4j.examples.socnet;
 
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.Iterator;
 
-import org.neo4j.graphalgo.GraphAlgoFactory;
-import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveLongSet;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.Relationship;
@@ -41,13 +40,10 @@ import org.neo4j.helpers.collection.IterableWrapper;
 import static org.neo4j.examples.socnet.RelTypes.FRIEND;
 import static org.neo4j.examples.socnet.RelTypes.NEXT;
 import static org.neo4j.examples.socnet.RelTypes.STATUS;
-import static org.neo4j.graphdb.Direction.BOTH;
-import static org.neo4j.graphdb.PathExpanders.forTypeAndDirection;
-import static org.neo4j.helpers.collection.Iterables.addToCollection;
-import static org.neo4j.helpers.collection.Iterables.count;
 
 public class Person
 {
+    static final Label LABEL = Label.label( "Person" );
     static final String NAME = "name";
 
     // START SNIPPET: the-node
@@ -65,6 +61,18 @@ public class Person
 
     // END SNIPPET: the-node
 
+    /**
+     * Finds the shortest paths of this person, that of the {@link PersonRepository} the person came from,
+     * or {@code null} for a person that did not come from one.
+     */
+    private PathService paths;
+
+    Person( Node personNode, PathService paths )
+    {
+        this( personNode );
+        this.paths = paths;
+    }
+
     // START SNIPPET: delegate-to-the-node
     public String getName()
     {
@@ -107,9 +115,30 @@ public class Person
         }
     }
 
+    /**
+     * Adds all of {@code otherPersons} as friends, in the transaction of the caller. The existing friends
+     * are looked up once for the whole batch rather than once per added friend.
+     */
+    public void addFriends( Collection<Person> otherPersons )
+    {
+        try ( PrimitiveLongSet friendIds = getFriendIds() )
+        {
+            long id = underlyingNode.getId();
+            for ( Person otherPerson : otherPersons )
+            {
+                Node otherNode = otherPerson.getUnderlyingNode();
+                long otherId = otherNode.getId();
+                if ( otherId != id && friendIds.add( otherId ) )
+                {
+                    underlyingNode.createRelationshipTo( otherNode, FRIEND );
+                }
+            }
+        }
+    }
+
     public long getNrOfFriends()
     {
-        return count( getFriends() );
+        return underlyingNode.getDegree( FRIEND );
     }
 
     public Iterable<Person> getFriends()
@@ -129,6 +158,30 @@ public class Person
         }
     }
 
+    /**
+     * Removes all of {@code otherPersons} as friends, in the transaction of the caller, with a single pass
+     * over the friend relationships of this person.
+     */
+    public void removeFriends( Collection<Person> otherPersons )
+    {
+        try ( PrimitiveLongSet otherIds = Primitive.longSet( otherPersons.size() ) )
+        {
+            for ( Person otherPerson : otherPersons )
+            {
+                otherIds.add( otherPerson.getUnderlyingNode().getId() );
+            }
+            long id = underlyingNode.getId();
+            for ( Relationship friendRel : underlyingNode.getRelationships( FRIEND ) )
+            {
+                long otherId = friendRel.getOtherNodeId( id );
+                if ( otherId != id && otherIds.contains( otherId ) )
+                {
+                    friendRel.delete();
+                }
+            }
+        }
+    }
+
     public Iterable<Person> getFriendsOfFriends()
     {
         return getFriendsByDepth( 2 );
@@ -137,37 +190,21 @@ public class Person
     public Iterable<Person> getShortestPathTo( Person otherPerson,
                                                int maxDepth )
     {
-        // use graph algo to calculate a shortest path
-        PathFinder<Path> finder = GraphAlgoFactory.shortestPath(
-                forTypeAndDirection(FRIEND, BOTH ), maxDepth );
-
-        Path path = finder.findSinglePath( underlyingNode,
-                otherPerson.getUnderlyingNode() );
-        return createPersonsFromNodes( path );
+        // bidirectional breadth first search over the FRIEND relationships
+        if ( paths != null )
+        {
+            return paths.shortestPath( this, otherPerson, maxDepth );
+        }
+        try ( PathService uncachedPaths = new PathService( graphDb() ) )
+        {
+            return uncachedPaths.shortestPath( this, otherPerson, maxDepth );
+        }
     }
 
     public Iterable<Person> getFriendRecommendation(
             int numberOfFriendsToReturn )
     {
-        HashSet<Person> friends = new HashSet<>();
-        addToCollection( getFriends(), friends );
-
-        HashSet<Person> friendsOfFriends = new HashSet<>();
-        addToCollection( getFriendsOfFriends(), friendsOfFriends );
-
-        friendsOfFriends.removeAll( friends );
-
-        ArrayList<RankedPerson> rankedFriends = new ArrayList<>();
-        for ( Person friend : friendsOfFriends )
-        {
-            long rank = getNumberOfPathsToPerson( friend );
-            rankedFriends.add( new RankedPerson( friend, rank ) );
-        }
-
-        Collections.sort( rankedFriends, new RankedComparer() );
-        trimTo( rankedFriends, numberOfFriendsToReturn );
-
-        return onlyFriend( rankedFriends );
+        return FriendRecommender.recommend( underlyingNode, numberOfFriendsToReturn, paths );
     }
 
     public Iterable<StatusUpdate> getStatus()
@@ -203,24 +240,7 @@ public class Person
 
     public void addStatus( String text )
     {
-        StatusUpdate oldStatus;
-        if ( getStatus().iterator().hasNext() )
-        {
-            oldStatus = getStatus().iterator().next();
-        } else
-        {
-            oldStatus = null;
-        }
-
-        Node newStatus = createNewStatusNode( text );
-
-        if ( oldStatus != null )
-        {
-            underlyingNode.getSingleRelationship( RelTypes.STATUS, Direction.OUTGOING ).delete();
-            newStatus.createRelationshipTo( oldStatus.getUnderlyingNode(), RelTypes.NEXT );
-        }
-
-        underlyingNode.createRelationshipTo( newStatus, RelTypes.STATUS );
+        Timeline.push( underlyingNode, createNewStatusNode( text ) );
     }
 
     private GraphDatabaseService graphDb()
@@ -236,70 +256,38 @@ public class Person
         return newStatus;
     }
 
-    private final class RankedPerson
-    {
-        final Person person;
-
-        final long rank;
-
-        private RankedPerson( Person person, long rank )
-        {
-
-            this.person = person;
-            this.rank = rank;
-        }
-
-        public Person getPerson()
-        {
-            return person;
-        }
-        public long getRank()
-        {
-            return rank;
-        }
-
-    }
-
-    private class RankedComparer implements Comparator<RankedPerson>
-    {
-        @Override
-        public int compare( RankedPerson a, RankedPerson b )
-        {
-            return Long.compare( b.getRank(), a.getRank() );
-        }
-
-    }
-
-    private void trimTo( ArrayList<RankedPerson> rankedFriends,
-                         int numberOfFriendsToReturn )
+    private Relationship getFriendRelationshipTo( Person otherPerson )
     {
-        while ( rankedFriends.size() > numberOfFriendsToReturn )
+        // scan the friends of whichever of the two has fewer, the degree is known without loading any relationship
+        Node node = underlyingNode;
+        Node otherNode = otherPerson.getUnderlyingNode();
+        if ( otherNode.getDegree( FRIEND ) < node.getDegree( FRIEND ) )
         {
-            rankedFriends.remove( rankedFriends.size() - 1 );
+            node = otherNode;
+            otherNode = underlyingNode;
         }
-    }
 
-    private Iterable<Person> onlyFriend( Iterable<RankedPerson> rankedFriends )
-    {
-        ArrayList<Person> retVal = new ArrayList<>();
-        for ( RankedPerson person : rankedFriends )
+        long id = node.getId();
+        long otherId = otherNode.getId();
+        for ( Relationship rel : node.getRelationships( FRIEND ) )
         {
-            retVal.add( person.getPerson() );
+            if ( rel.getOtherNodeId( id ) == otherId )
+            {
+                return rel;
+            }
         }
-        return retVal;
+        return null;
     }
 
-    private Relationship getFriendRelationshipTo( Person otherPerson )
+    private PrimitiveLongSet getFriendIds()
     {
-        Node otherNode = otherPerson.getUnderlyingNode();
+        long id = underlyingNode.getId();
+        PrimitiveLongSet friendIds = Primitive.longSet( underlyingNode.getDegree( FRIEND ) );
         for ( Relationship rel : underlyingNode.getRelationships( FRIEND ) )
         {
-            if ( rel.getOtherNode( underlyingNode ).equals( otherNode ) )
-            {
-                return rel;
-            }
+            friendIds.add( rel.getOtherNodeId( id ) );
         }
-        return null;
+        return friendIds;
     }
 
     private Iterable<Person> getFriendsByDepth( int depth )
@@ -323,26 +311,7 @@ public class Person
             @Override
             protected Person underlyingObjectToObject( Path path )
             {
-                return new Person( path.endNode() );
-            }
-        };
-    }
-
-    private long getNumberOfPathsToPerson( Person otherPerson )
-    {
-        PathFinder<Path> finder = GraphAlgoFactory.allPaths( forTypeAndDirection( FRIEND, BOTH ), 2 );
-        Iterable<Path> paths = finder.findAllPaths( getUnderlyingNode(), otherPerson.getUnderlyingNode() );
-        return count( paths );
-    }
-
-    private Iterable<Person> createPersonsFromNodes( final Path path )
-    {
-        return new IterableWrapper<Person, Node>( path.nodes() )
-        {
-            @Override
-            protected Person underlyingObjectToObject( Node node )
-            {
-                return new Person( node );
+                return new Person( path.endNode(), paths );
             }
         };
     }
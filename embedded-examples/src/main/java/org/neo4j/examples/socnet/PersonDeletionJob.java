@@ -0,0 +1,170 @@
+/*
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.examples.socnet;
+
+import java.util.Iterator;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+import static org.neo4j.examples.socnet.RelTypes.FRIEND;
+import static org.neo4j.examples.socnet.RelTypes.NEXT;
+import static org.neo4j.examples.socnet.RelTypes.STATUS;
+
+/**
+ * Deletes a person and everything hanging off it in a series of small transactions, so that neither the size
+ * of a transaction nor how long it holds on to its locks grows with the number of friends and status updates.
+ * <p>
+ * The first transaction takes the person out of the repository, so that it can't be found any more and its
+ * name can be reused right away. After that every transaction deletes at most {@code batchSize} friendships
+ * or status updates, newest status update first, and finally the person node itself is deleted.
+ * The job opens its own transactions, so it must not be run inside one. It is typically handed to an
+ * executor to run in the background.
+ */
+public class PersonDeletionJob implements Runnable
+{
+    /**
+     * Told about the progress of a deletion after each committed transaction.
+     */
+    public interface Progress
+    {
+        Progress NONE = ( friendshipsDeleted, statusesDeleted, done ) -> {};
+
+        void deleted( long friendshipsDeleted, long statusesDeleted, boolean done );
+    }
+
+    private final GraphDatabaseService graphDb;
+    private final PersonRepository personRepository;
+    private final Node personNode;
+    private final int batchSize;
+    private final Progress progress;
+    private long friendshipsDeleted;
+    private long statusesDeleted;
+
+    PersonDeletionJob( GraphDatabaseService graphDb, PersonRepository personRepository, Person person,
+            int batchSize, Progress progress )
+    {
+        if ( batchSize < 1 )
+        {
+            throw new IllegalArgumentException( "Batch size must be at least 1, was " + batchSize );
+        }
+        this.graphDb = graphDb;
+        this.personRepository = personRepository;
+        this.personNode = person.getUnderlyingNode();
+        this.batchSize = batchSize;
+        this.progress = progress;
+    }
+
+    @Override
+    public void run()
+    {
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            personRepository.detachPerson( new Person( personNode ) );
+            tx.success();
+        }
+
+        boolean moreFriends = true;
+        while ( moreFriends )
+        {
+            try ( Transaction tx = graphDb.beginTx() )
+            {
+                moreFriends = deleteFriendships();
+                tx.success();
+            }
+            progress.deleted( friendshipsDeleted, statusesDeleted, false );
+        }
+
+        boolean moreStatuses = true;
+        while ( moreStatuses )
+        {
+            try ( Transaction tx = graphDb.beginTx() )
+            {
+                moreStatuses = deleteStatuses();
+                tx.success();
+            }
+            progress.deleted( friendshipsDeleted, statusesDeleted, false );
+        }
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            for ( Relationship relationship : personNode.getRelationships() )
+            {
+                relationship.delete();
+            }
+            personNode.delete();
+            tx.success();
+        }
+        progress.deleted( friendshipsDeleted, statusesDeleted, true );
+    }
+
+    /**
+     * @return whether there may be more friendships left to delete.
+     */
+    private boolean deleteFriendships()
+    {
+        Iterator<Relationship> friendships = personNode.getRelationships( FRIEND ).iterator();
+        for ( int i = 0; i < batchSize && friendships.hasNext(); i++ )
+        {
+            friendships.next().delete();
+            friendshipsDeleted++;
+        }
+        return friendships.hasNext();
+    }
+
+    /**
+     * Deletes the newest status updates and points the person to the newest remaining one.
+     *
+     * @return whether there may be more status updates left to delete.
+     */
+    private boolean deleteStatuses()
+    {
+        Relationship head = personNode.getSingleRelationship( STATUS, Direction.OUTGOING );
+        if ( head == null )
+        {
+            return false;
+        }
+        Node status = head.getEndNode();
+        head.delete();
+
+        for ( int i = 0; i < batchSize && status != null; i++ )
+        {
+            Relationship next = status.getSingleRelationship( NEXT, Direction.OUTGOING );
+            Node olderStatus = next == null ? null : next.getEndNode();
+            // the newer updates, and with them everything pointing to this one, are already deleted
+            for ( Relationship relationship : status.getRelationships() )
+            {
+                relationship.delete();
+            }
+            status.delete();
+            statusesDeleted++;
+            status = olderStatus;
+        }
+
+        if ( status == null )
+        {
+            return false;
+        }
+        personNode.createRelationshipTo( status, STATUS );
+        return true;
+    }
+}
@@ -18,52 +18,310 @@
  */
 package org.neo4j.examples.socnet;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.neo4j.graphdb.ConstraintViolationException;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.graphdb.schema.ConstraintDefinition;
+import org.neo4j.graphdb.schema.ConstraintType;
 import org.neo4j.helpers.collection.IterableWrapper;
+import org.neo4j.helpers.collection.Iterables;
 
+import static java.util.Arrays.asList;
 import static org.neo4j.examples.socnet.RelTypes.A_PERSON;
+import static org.neo4j.examples.socnet.RelTypes.FRIEND;
 
-public class PersonRepository
+/**
+ * Creates, finds and deletes persons.
+ * <p>
+ * Person names are kept unique in one of two ways. If the database has a uniqueness constraint on the
+ * {@link Person#NAME name} of {@link Person#LABEL persons}, see
+ * {@link #createUniqueNameConstraint(GraphDatabaseService)}, that constraint does the job and persons are found
+ * through its index. Otherwise every person is linked from a reference node, and creating that link takes the
+ * lock on the reference node that guards against two persons getting the same name. To lower the contention on
+ * that lock the persons can be spread over a number of reference nodes, picked by the hash of the name so that
+ * equal names meet on the same lock. The number of reference nodes is kept on the first of them, since a
+ * repository that picked them differently would no longer find the persons.
+ * <p>
+ * A repository opened without the constraint checks for it again on every call, and uses it as soon as it has
+ * been created. Persons from before persons were labelled must be {@link #labelAllPersons(GraphDatabaseService)
+ * labelled} before the constraint can be created, or they could no longer be found through it.
+ * <p>
+ * The persons of a repository find their {@link Person#getShortestPathTo(Person, int) shortest paths} through
+ * a {@link PathService} of the repository, which caches them until friendships change. The repository must be
+ * {@link #close() closed} to stop keeping track of that.
+ */
+public class PersonRepository implements AutoCloseable
 {
+    private static final String REFERENCE = "reference";
+    private static final String PERSONS = "persons";
+    private static final String BUCKETS = "buckets";
+    private static final int STORED_BUCKETS = 0;
+    private static final int PATH_CACHE_SIZE = 1024;
+
     private final GraphDatabaseService graphDb;
     private final Index<Node> index;
-    private final Node personRefNode;
+    private volatile boolean uniqueNameConstraint;
+    private final Node[] personRefNodes;
+    private final PathService pathService;
 
+    /**
+     * Creates a repository with as many reference nodes as the database already has, or one for a new database.
+     */
     public PersonRepository( GraphDatabaseService graphDb, Index<Node> index )
     {
+        this( graphDb, index, STORED_BUCKETS );
+    }
+
+    /**
+     * @param graphDb the database holding the persons.
+     * @param index legacy index of persons by name, used when there is no uniqueness constraint on names.
+     * @param buckets number of reference nodes to spread the persons over when there is no uniqueness
+     * constraint on names.
+     * @throws IllegalArgumentException if the persons in the database are already spread over a different
+     * number of reference nodes.
+     */
+    public PersonRepository( GraphDatabaseService graphDb, Index<Node> index, int buckets )
+    {
+        if ( buckets < 1 && buckets != STORED_BUCKETS )
+        {
+            throw new IllegalArgumentException( "Need at least one bucket, was " + buckets );
+        }
         this.graphDb = graphDb;
         this.index = index;
+        this.uniqueNameConstraint = hasUniqueNameConstraint( graphDb );
+
+        personRefNodes = uniqueNameConstraint ? new Node[0] : getPersonsRootNodes( buckets );
+        pathService = new PathService( graphDb, Integer.MAX_VALUE, PATH_CACHE_SIZE );
+    }
 
-        personRefNode = getPersonsRootNode( graphDb );
+    @Override
+    public void close()
+    {
+        pathService.close();
+    }
+
+    /**
+     * Creates the uniqueness constraint on person names, which must be done in a transaction of its own.
+     * Repositories will rely on the constraint rather than on reference nodes from then on.
+     * <p>
+     * Looking for persons without the {@link Person#LABEL label} takes a scan of all nodes, since a schema
+     * transaction cannot read the legacy index of reference nodes.
+     *
+     * @throws IllegalStateException if there are persons without the label, see
+     * {@link #labelAllPersons(GraphDatabaseService)}.
+     */
+    public static void createUniqueNameConstraint( GraphDatabaseService graphDb )
+    {
+        long unlabelled = 0;
+        for ( Node node : graphDb.getAllNodes() )
+        {
+            if ( !node.hasLabel( Person.LABEL ) && node.hasRelationship( Direction.INCOMING, A_PERSON ) )
+            {
+                unlabelled++;
+            }
+        }
+        if ( unlabelled > 0 )
+        {
+            throw new IllegalStateException( unlabelled + " persons have no label and would no longer be found, " +
+                                             "label them before creating the constraint" );
+        }
+        graphDb.schema().constraintFor( Person.LABEL ).assertPropertyIsUnique( Person.NAME ).create();
+    }
+
+    /**
+     * Adds the {@link Person#LABEL label} to persons created before persons were labelled, which must be done
+     * before {@link #createUniqueNameConstraint(GraphDatabaseService) creating the constraint}.
+     *
+     * @return the number of persons that were labelled.
+     */
+    public static long labelAllPersons( GraphDatabaseService graphDb )
+    {
+        long labelled = 0;
+        for ( Node personNode : personsLinkedFrom( existingPersonsRootNodes( graphDb ) ) )
+        {
+            if ( !personNode.hasLabel( Person.LABEL ) )
+            {
+                personNode.addLabel( Person.LABEL );
+                labelled++;
+            }
+        }
+        return labelled;
     }
 
-    private Node getPersonsRootNode( GraphDatabaseService graphDb )
+    private boolean usesUniqueNameConstraint()
     {
-        Index<Node> referenceIndex = graphDb.index().forNodes( "reference");
-        IndexHits<Node> result = referenceIndex.get( "reference", "person" );
+        if ( !uniqueNameConstraint && hasUniqueNameConstraint( graphDb ) )
+        {
+            uniqueNameConstraint = true;
+        }
+        return uniqueNameConstraint;
+    }
+
+    private static boolean hasUniqueNameConstraint( GraphDatabaseService graphDb )
+    {
+        for ( ConstraintDefinition constraint : graphDb.schema().getConstraints( Person.LABEL ) )
+        {
+            if ( (constraint.isConstraintType( ConstraintType.UNIQUENESS ) ||
+                  constraint.isConstraintType( ConstraintType.NODE_KEY )) &&
+                 Iterables.count( constraint.getPropertyKeys() ) == 1 &&
+                 Iterables.single( constraint.getPropertyKeys() ).equals( Person.NAME ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Node[] getPersonsRootNodes( int buckets )
+    {
+        Node firstRefNode = mergePersonsRootNodes();
+        if ( !firstRefNode.hasProperty( BUCKETS ) && !firstRefNode.hasRelationship( Direction.OUTGOING, A_PERSON ) )
+        {
+            firstRefNode.setProperty( BUCKETS, buckets == STORED_BUCKETS ? 1 : buckets );
+        }
+        // databases from before persons were spread over several reference nodes have just the one
+        int storedBuckets = (Integer) firstRefNode.getProperty( BUCKETS, 1 );
+        if ( buckets != STORED_BUCKETS && buckets != storedBuckets )
+        {
+            throw new IllegalArgumentException( "The persons in this database are spread over " + storedBuckets +
+                                                " buckets, not " + buckets );
+        }
+
+        Node[] refNodes = new Node[storedBuckets];
+        refNodes[0] = firstRefNode;
+        for ( int i = 1; i < refNodes.length; i++ )
+        {
+            refNodes[i] = getPersonsRootNode( graphDb, PERSONS + "#" + i );
+        }
+        return refNodes;
+    }
+
+    /**
+     * Databases from before the reference node was looked up under the key it is stored under have a
+     * reference node for every repository that was created. Their persons are moved over to the first one,
+     * and the others deleted.
+     */
+    private Node mergePersonsRootNodes()
+    {
+        Index<Node> referenceIndex = graphDb.index().forNodes( REFERENCE );
+        List<Node> refNodes = personsRootNodes( graphDb, PERSONS );
+        if ( refNodes.isEmpty() )
+        {
+            return getPersonsRootNode( graphDb, PERSONS );
+        }
+        Node firstRefNode = refNodes.get( 0 );
+        for ( Node extraRefNode : refNodes.subList( 1, refNodes.size() ) )
+        {
+            for ( Relationship membership : extraRefNode.getRelationships( Direction.OUTGOING, A_PERSON ) )
+            {
+                firstRefNode.createRelationshipTo( membership.getEndNode(), A_PERSON );
+                membership.delete();
+            }
+            referenceIndex.remove( extraRefNode );
+            extraRefNode.delete();
+        }
+        return firstRefNode;
+    }
+
+    private Node getPersonsRootNode( GraphDatabaseService graphDb, String reference )
+    {
+        Index<Node> referenceIndex = graphDb.index().forNodes( REFERENCE );
+        IndexHits<Node> result = referenceIndex.get( REFERENCE, reference );
         if (result.hasNext())
         {
             return result.next();
         }
 
         Node refNode = this.graphDb.createNode();
-        refNode.setProperty( "reference", "persons" );
-        referenceIndex.add( refNode, "reference", "persons" );
+        refNode.setProperty( REFERENCE, reference );
+        referenceIndex.add( refNode, REFERENCE, reference );
         return refNode;
     }
 
+    /**
+     * @return the reference nodes stored under {@code reference}, oldest first.
+     */
+    private static List<Node> personsRootNodes( GraphDatabaseService graphDb, String reference )
+    {
+        List<Node> refNodes = new ArrayList<>();
+        if ( !graphDb.index().existsForNodes( REFERENCE ) )
+        {
+            // asking for the index would create it
+            return refNodes;
+        }
+        try ( IndexHits<Node> hits = graphDb.index().forNodes( REFERENCE ).get( REFERENCE, reference ) )
+        {
+            hits.forEachRemaining( refNodes::add );
+        }
+        refNodes.sort( Comparator.comparingLong( Node::getId ) );
+        return refNodes;
+    }
+
+    /**
+     * @return all reference nodes of persons in the database, without creating any.
+     */
+    private static List<Node> existingPersonsRootNodes( GraphDatabaseService graphDb )
+    {
+        List<Node> refNodes = personsRootNodes( graphDb, PERSONS );
+        int storedBuckets = 1;
+        for ( Node refNode : refNodes )
+        {
+            storedBuckets = Math.max( storedBuckets, (Integer) refNode.getProperty( BUCKETS, 1 ) );
+        }
+        for ( int i = 1; i < storedBuckets; i++ )
+        {
+            refNodes.addAll( personsRootNodes( graphDb, PERSONS + "#" + i ) );
+        }
+        return refNodes;
+    }
+
+    private static Iterable<Node> personsLinkedFrom( List<Node> refNodes )
+    {
+        List<Iterable<Node>> buckets = new ArrayList<>( refNodes.size() );
+        for ( Node refNode : refNodes )
+        {
+            buckets.add( new IterableWrapper<Node, Relationship>( refNode.getRelationships( A_PERSON ) )
+            {
+                @Override
+                protected Node underlyingObjectToObject( Relationship personRel )
+                {
+                    return personRel.getEndNode();
+                }
+            } );
+        }
+        return Iterables.concat( buckets );
+    }
+
     public Person createPerson( String name ) throws Exception
     {
+        if ( usesUniqueNameConstraint() )
+        {
+            Node newPersonNode = graphDb.createNode( Person.LABEL );
+            try
+            {
+                newPersonNode.setProperty( Person.NAME, name );
+            }
+            catch ( ConstraintViolationException e )
+            {
+                newPersonNode.delete();
+                throw new Exception( "Person with this name already exists ", e );
+            }
+            return new Person( newPersonNode, pathService );
+        }
+
         // to guard against duplications we use the lock grabbed on ref node
         // when
         // creating a relationship and are optimistic about person not existing
-        Node newPersonNode = graphDb.createNode();
-        personRefNode.createRelationshipTo( newPersonNode, A_PERSON );
+        Node newPersonNode = graphDb.createNode( Person.LABEL );
+        personRefNodeFor( name ).createRelationshipTo( newPersonNode, A_PERSON );
         // lock now taken, we can check if  already exist in index
         Node alreadyExist = index.get( Person.NAME, name ).getSingle();
         if ( alreadyExist != null )
@@ -72,29 +330,35 @@ public class PersonRepository
         }
         newPersonNode.setProperty( Person.NAME, name );
         index.add( newPersonNode, Person.NAME, name );
-        return new Person( newPersonNode );
+        return new Person( newPersonNode, pathService );
+    }
+
+    private Node personRefNodeFor( String name )
+    {
+        return personRefNodes[Math.floorMod( name.hashCode(), personRefNodes.length )];
     }
 
     public Person getPersonByName( String name )
     {
-        Node personNode = index.get( Person.NAME, name ).getSingle();
+        Node personNode = usesUniqueNameConstraint()
+                          ? graphDb.findNode( Person.LABEL, Person.NAME, name )
+                          : index.get( Person.NAME, name ).getSingle();
         if ( personNode == null )
         {
             throw new IllegalArgumentException( "Person[" + name
                     + "] not found" );
         }
-        return new Person( personNode );
+        return new Person( personNode, pathService );
     }
 
     public void deletePerson( Person person )
     {
         Node personNode = person.getUnderlyingNode();
-        index.remove( personNode, Person.NAME, person.getName() );
-        for ( Person friend : person.getFriends() )
+        detachPerson( person );
+        for ( Relationship friendRel : personNode.getRelationships( FRIEND ) )
         {
-            person.removeFriend( friend );
+            friendRel.delete();
         }
-        personNode.getSingleRelationship( A_PERSON, Direction.INCOMING ).delete();
 
         for ( StatusUpdate status : person.getStatus() )
         {
@@ -106,18 +370,58 @@ public class PersonRepository
             statusNode.delete();
         }
 
+        for ( Relationship r : personNode.getRelationships() )
+        {
+            r.delete();
+        }
         personNode.delete();
     }
 
+    /**
+     * Returns a job that deletes {@code person} in transactions of at most {@code batchSize} friendships or
+     * status updates each, for persons with too many of those to delete in one transaction.
+     * The job must be run outside of any transaction.
+     */
+    public PersonDeletionJob deletionJob( Person person, int batchSize, PersonDeletionJob.Progress progress )
+    {
+        return new PersonDeletionJob( graphDb, this, person, batchSize, progress );
+    }
+
+    /**
+     * Takes {@code person} out of this repository, after which it can no longer be found and its name is free.
+     */
+    void detachPerson( Person person )
+    {
+        Node personNode = person.getUnderlyingNode();
+        index.remove( personNode, Person.NAME, person.getName() );
+        personNode.removeLabel( Person.LABEL );
+        Relationship membership = personNode.getSingleRelationship( A_PERSON, Direction.INCOMING );
+        if ( membership != null )
+        {
+            membership.delete();
+        }
+    }
+
     public Iterable<Person> getAllPersons()
     {
-        return new IterableWrapper<Person, Relationship>(
-                personRefNode.getRelationships( A_PERSON ) )
+        if ( usesUniqueNameConstraint() )
+        {
+            return new IterableWrapper<Person, Node>( () -> graphDb.findNodes( Person.LABEL ) )
+            {
+                @Override
+                protected Person underlyingObjectToObject( Node personNode )
+                {
+                    return new Person( personNode, pathService );
+                }
+            };
+        }
+
+        return new IterableWrapper<Person, Node>( personsLinkedFrom( asList( personRefNodes ) ) )
         {
             @Override
-            protected Person underlyingObjectToObject( Relationship personRel )
+            protected Person underlyingObjectToObject( Node personNode )
             {
-                return new Person( personRel.getEndNode() );
+                return new Person( personNode, pathService );
             }
         };
     }
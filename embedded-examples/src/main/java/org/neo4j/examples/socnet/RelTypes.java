@@ -27,5 +27,6 @@ public enum RelTypes implements RelationshipType
     A_PERSON,
     STATUS,
     NEXT,
+    SKIP,
     FRIEND
 }
@@ -73,9 +73,12 @@ public class StatusUpdate
 
     public Date getDate()
     {
-        Long l = (Long) underlyingNode.getProperty( DATE );
+        return new Date( getTimestamp() );
+    }
 
-        return new Date( l );
+    public long getTimestamp()
+    {
+        return (Long) underlyingNode.getProperty( DATE );
     }
 
 }
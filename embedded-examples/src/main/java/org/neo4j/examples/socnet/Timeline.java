@@ -0,0 +1,283 @@
+/*
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.examples.socnet;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.examples.socnet.ActivityFeed.Cursor;
+import org.neo4j.helpers.collection.PrefetchingIterator;
+
+import static org.neo4j.examples.socnet.RelTypes.NEXT;
+import static org.neo4j.examples.socnet.RelTypes.SKIP;
+import static org.neo4j.examples.socnet.RelTypes.STATUS;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+
+/**
+ * The status updates of a person, kept as a list starting at the {@link RelTypes#STATUS} relationship
+ * with the newest update and continuing through {@link RelTypes#NEXT} relationships to older ones.
+ * <p>
+ * Besides {@link RelTypes#NEXT}, every update has a {@link RelTypes#SKIP} relationship to an older update,
+ * laid out as skew-binary jump pointers: the target is picked from the previous head alone when the update
+ * is added, and following skips wherever they don't pass the wanted date reaches any date in O(log n) steps.
+ * Updates created before skips were introduced don't have them, and are simply walked one by one.
+ * <p>
+ * Updates posted at the same time are read in descending order of their ids, like in the
+ * {@link ActivityFeed}, so that a {@link Cursor} of timestamp and status id picks up right after the last
+ * update of a page.
+ */
+public class Timeline
+{
+    /**
+     * Position of the update in the list, counted from the oldest update, which has position 0.
+     */
+    static final String SEQUENCE = "SEQUENCE";
+
+    private Timeline()
+    {
+    }
+
+    /**
+     * Returns a page of the status updates of {@code person}, newest first.
+     *
+     * @param person the person whose updates to read.
+     * @param limit maximum number of updates to return.
+     * @param after only updates after this position are returned. Use {@link ActivityFeed#FIRST_PAGE} for the
+     * newest updates, {@link ActivityFeed#nextCursor(List)} of the previous page to continue, or a cursor with
+     * a status id of {@link Long#MIN_VALUE} for the updates posted strictly before its timestamp.
+     * @return at most {@code limit} status updates, newest first.
+     */
+    public static List<StatusUpdate> timeline( Person person, int limit, Cursor after )
+    {
+        if ( limit < 0 )
+        {
+            throw new IllegalArgumentException( "Limit must not be negative, was " + limit );
+        }
+
+        List<StatusUpdate> page = new ArrayList<>( Math.min( limit, 64 ) );
+        Iterator<StatusUpdate> statuses = statusesAfter( person, after.getTimestamp(), after.getStatusId() );
+        while ( page.size() < limit && statuses.hasNext() )
+        {
+            page.add( statuses.next() );
+        }
+        return page;
+    }
+
+    /**
+     * @return a lazy iterator over the updates of {@code person} older than {@code timestamp}, or posted at
+     * {@code timestamp} and with a lower id than {@code statusId}, newest first and those posted at the same
+     * time in descending order of their ids.
+     */
+    static Iterator<StatusUpdate> statusesAfter( Person person, long timestamp, long statusId )
+    {
+        long beforeDate = timestamp == Long.MAX_VALUE ? timestamp : timestamp + 1;
+        return new IdOrderedStatusIterator( statusesBefore( person, beforeDate ), timestamp, statusId );
+    }
+
+    /**
+     * @return a lazy iterator over the updates of {@code person} posted strictly before {@code beforeDate},
+     * newest first.
+     */
+    private static Iterator<StatusUpdate> statusesBefore( Person person, long beforeDate )
+    {
+        Relationship head = person.getUnderlyingNode().getSingleRelationship( STATUS, OUTGOING );
+        Node first = head == null ? null : seek( head.getEndNode(), beforeDate );
+        return new StatusIterator( first );
+    }
+
+    /**
+     * Makes {@code newStatus} the newest update of the person, touching only the current head of the list.
+     */
+    static void push( Node personNode, Node newStatus )
+    {
+        Relationship head = personNode.getSingleRelationship( STATUS, OUTGOING );
+        if ( head == null )
+        {
+            newStatus.setProperty( SEQUENCE, 0L );
+        }
+        else
+        {
+            Node oldStatus = head.getEndNode();
+            head.delete();
+            newStatus.createRelationshipTo( oldStatus, NEXT );
+
+            Long sequence = (Long) oldStatus.getProperty( SEQUENCE, null );
+            if ( sequence != null )
+            {
+                newStatus.setProperty( SEQUENCE, sequence + 1 );
+                newStatus.createRelationshipTo( skipTargetFor( oldStatus, sequence ), SKIP );
+            }
+        }
+        personNode.createRelationshipTo( newStatus, STATUS );
+    }
+
+    private static Node skipTargetFor( Node previous, long previousSequence )
+    {
+        // Jump twice as far as the previous update does if its jump spans as many updates as the one after it,
+        // otherwise jump to the previous update. The oldest update jumps to itself.
+        Node jump = skipOf( previous );
+        Node jumpOfJump = skipOf( jump );
+        long jumpSequence = sequenceOf( jump );
+        if ( previousSequence - jumpSequence == jumpSequence - sequenceOf( jumpOfJump ) )
+        {
+            return jumpOfJump;
+        }
+        return previous;
+    }
+
+    /**
+     * @return the newest update, starting at {@code status} and moving towards older ones, posted strictly
+     * before {@code beforeDate}, or {@code null} if there is no such update.
+     */
+    private static Node seek( Node status, long beforeDate )
+    {
+        while ( status != null && dateOf( status ) >= beforeDate )
+        {
+            Relationship skip = status.getSingleRelationship( SKIP, OUTGOING );
+            if ( skip != null && dateOf( skip.getEndNode() ) >= beforeDate )
+            {
+                // nothing between here and the skip target is old enough
+                status = skip.getEndNode();
+            }
+            else
+            {
+                status = nextOf( status );
+            }
+        }
+        return status;
+    }
+
+    private static Node skipOf( Node status )
+    {
+        Relationship skip = status.getSingleRelationship( SKIP, OUTGOING );
+        return skip == null ? status : skip.getEndNode();
+    }
+
+    private static Node nextOf( Node status )
+    {
+        Relationship next = status.getSingleRelationship( NEXT, OUTGOING );
+        return next == null ? null : next.getEndNode();
+    }
+
+    private static long sequenceOf( Node status )
+    {
+        return (Long) status.getProperty( SEQUENCE );
+    }
+
+    private static long dateOf( Node status )
+    {
+        return (Long) status.getProperty( StatusUpdate.DATE );
+    }
+
+    private static class StatusIterator extends PrefetchingIterator<StatusUpdate>
+    {
+        private Node nextStatus;
+
+        StatusIterator( Node first )
+        {
+            this.nextStatus = first;
+        }
+
+        @Override
+        protected StatusUpdate fetchNextOrNull()
+        {
+            if ( nextStatus == null )
+            {
+                return null;
+            }
+            StatusUpdate status = new StatusUpdate( nextStatus );
+            nextStatus = nextOf( nextStatus );
+            return status;
+        }
+    }
+
+    /**
+     * Reads ahead the updates that share a timestamp and returns them in descending order of their ids,
+     * leaving out those at or after the status to start after.
+     */
+    private static class IdOrderedStatusIterator extends PrefetchingIterator<StatusUpdate>
+    {
+        private final Iterator<StatusUpdate> statuses;
+        private final long startTimestamp;
+        private final long startStatusId;
+        private final List<StatusUpdate> sameTimestamp = new ArrayList<>();
+        private StatusUpdate readAhead;
+
+        IdOrderedStatusIterator( Iterator<StatusUpdate> statuses, long startTimestamp, long startStatusId )
+        {
+            this.statuses = statuses;
+            this.startTimestamp = startTimestamp;
+            this.startStatusId = startStatusId;
+        }
+
+        @Override
+        protected StatusUpdate fetchNextOrNull()
+        {
+            while ( sameTimestamp.isEmpty() )
+            {
+                if ( readAhead == null && !statuses.hasNext() )
+                {
+                    return null;
+                }
+                readSameTimestamp();
+            }
+            return sameTimestamp.remove( sameTimestamp.size() - 1 );
+        }
+
+        /**
+         * Reads the next run of statuses with the same timestamp, in ascending order of their ids so that
+         * they can be taken from the end.
+         */
+        private void readSameTimestamp()
+        {
+            StatusUpdate first = readAhead != null ? readAhead : statuses.next();
+            readAhead = null;
+            long date = first.getTimestamp();
+            add( first, date );
+            while ( statuses.hasNext() )
+            {
+                StatusUpdate status = statuses.next();
+                if ( status.getTimestamp() != date )
+                {
+                    readAhead = status;
+                    break;
+                }
+                add( status, date );
+            }
+            sameTimestamp.sort( Comparator.comparingLong( IdOrderedStatusIterator::idOf ) );
+        }
+
+        private void add( StatusUpdate status, long date )
+        {
+            if ( date < startTimestamp || idOf( status ) < startStatusId )
+            {
+                sameTimestamp.add( status );
+            }
+        }
+
+        private static long idOf( StatusUpdate status )
+        {
+            return status.getUnderlyingNode().getId();
+        }
+    }
+}
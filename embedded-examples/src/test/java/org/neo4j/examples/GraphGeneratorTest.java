@@ -0,0 +1,120 @@
+/*
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.examples;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.helpers.collection.Iterables.count;
+
+public class GraphGeneratorTest
+{
+    private static final RelationshipType TYPE = RelationshipType.withName( "TYPE" );
+
+    private GraphDatabaseService graphDb;
+    private GraphGenerator generator;
+
+    @Before
+    public void setup()
+    {
+        graphDb = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        generator = new GraphGenerator( graphDb, 7 );
+    }
+
+    @After
+    public void teardown()
+    {
+        graphDb.shutdown();
+    }
+
+    @Test
+    public void shouldGenerateCompleteTree()
+    {
+        GraphGenerator.Report report = generator.tree( TYPE, 3, 4 );
+
+        assertThat( report.nodes(), equalTo( 1L + 3 + 9 + 27 + 81 ) );
+        assertThat( report.relationships(), equalTo( report.nodes() - 1 ) );
+        assertDatabaseHolds( report );
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            for ( Node node : graphDb.getAllNodes() )
+            {
+                int children = node.getDegree( TYPE, Direction.OUTGOING );
+                assertTrue( children == 0 || children == 3 );
+                assertTrue( node.getDegree( TYPE, Direction.INCOMING ) <= 1 );
+            }
+        }
+    }
+
+    @Test
+    public void shouldGenerateChain()
+    {
+        GraphGenerator.Report report = generator.chain( TYPE, 20 );
+
+        assertThat( report.nodes(), equalTo( 20L ) );
+        assertThat( report.relationships(), equalTo( 19L ) );
+        assertDatabaseHolds( report );
+    }
+
+    @Test
+    public void shouldGenerateSocialGraphWithoutDuplicateRelationships()
+    {
+        GraphGenerator.Report report = generator.socialGraph( TYPE, 200, 3, new Random( 1 ) );
+
+        assertThat( report.nodes(), equalTo( 200L ) );
+        assertThat( report.relationships(), equalTo( 1L + 2 + 3 * 197 ) );
+        assertDatabaseHolds( report );
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            Set<String> pairs = new HashSet<>();
+            for ( Relationship relationship : graphDb.getAllRelationships() )
+            {
+                long start = relationship.getStartNodeId();
+                long end = relationship.getEndNodeId();
+                assertTrue( start != end );
+                assertTrue( pairs.add( Math.min( start, end ) + "-" + Math.max( start, end ) ) );
+            }
+        }
+    }
+
+    private void assertDatabaseHolds( GraphGenerator.Report report )
+    {
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            assertThat( count( graphDb.getAllNodes() ), equalTo( report.nodes() ) );
+            assertThat( count( graphDb.getAllRelationships() ), equalTo( report.relationships() ) );
+        }
+    }
+}
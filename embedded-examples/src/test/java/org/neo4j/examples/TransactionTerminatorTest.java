@@ -0,0 +1,98 @@
+/*
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.examples;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.neo4j.helpers.collection.Iterables.count;
+
+public class TransactionTerminatorTest
+{
+    private GraphDatabaseService graphDb;
+    private TransactionTerminator terminator;
+
+    @Before
+    public void setup()
+    {
+        graphDb = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        terminator = new TransactionTerminator();
+    }
+
+    @After
+    public void teardown()
+    {
+        terminator.close();
+        graphDb.shutdown();
+    }
+
+    @Test
+    public void shouldTerminateEachKindOfWorkloadAndRecordLatency()
+    {
+        new GraphGenerator( graphDb, 1_000 ).chain( RelationshipType.withName( "CHILD" ), 100 );
+        TerminationLatency latency = new TerminationLatency( graphDb, terminator );
+
+        long writes = latency.runUntilTerminated( TerminationLatency.WRITES, 50 );
+        long reads = latency.runUntilTerminated( TerminationLatency.READS, 50 );
+        long traversals = latency.runUntilTerminated( TerminationLatency.TRAVERSALS, 50 );
+
+        TransactionTerminator.LatencyHistogram latencies = terminator.latencies();
+        assertThat( latencies.count(), equalTo( 3L ) );
+        assertThat( latencies.max( TimeUnit.NANOSECONDS ), equalTo( Math.max( writes, Math.max( reads, traversals ) ) ) );
+        assertThat( latencies.percentile( 50, TimeUnit.NANOSECONDS ),
+                lessThanOrEqualTo( latencies.max( TimeUnit.NANOSECONDS ) ) );
+        assertThat( latencies.max( TimeUnit.NANOSECONDS ), greaterThan( 0L ) );
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            // terminated writes are rolled back
+            assertThat( count( graphDb.getAllNodes() ), equalTo( 100L ) );
+        }
+    }
+
+    @Test
+    public void shouldNotTerminateTransactionWhenCancelledInTime()
+    {
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            TransactionTerminator.Termination termination = terminator.terminateAfter( tx, 1, TimeUnit.MINUTES );
+            graphDb.createNode();
+            termination.cancel();
+            tx.success();
+            assertFalse( termination.isTerminated() );
+        }
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            assertThat( count( graphDb.getAllNodes() ), equalTo( 1L ) );
+        }
+        assertThat( terminator.latencies().count(), equalTo( 0L ) );
+    }
+}
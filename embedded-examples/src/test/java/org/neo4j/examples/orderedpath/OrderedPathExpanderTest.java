@@ -0,0 +1,194 @@
+/*
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.examples.orderedpath;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.traversal.BidirectionalTraversalDescription;
+import org.neo4j.graphdb.traversal.Paths;
+import org.neo4j.graphdb.traversal.TraversalDescription;
+import org.neo4j.helpers.collection.Iterables;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.neo4j.graphdb.RelationshipType.withName;
+
+public class OrderedPathExpanderTest
+{
+    private GraphDatabaseService db;
+    private OrderedPath orderedPath;
+
+    @Before
+    public void setup()
+    {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        orderedPath = new OrderedPath( db );
+    }
+
+    @After
+    public void teardown()
+    {
+        orderedPath.shutdownGraph();
+    }
+
+    @Test
+    public void shouldFindSamePathsAsEvaluatorAmongDistractors()
+    {
+        Node A = orderedPath.createTheGraph();
+        addDistractors( 20 );
+
+        Set<String> expected = paths( orderedPath.findPaths(), A );
+        assertEquals( new TreeSet<>( asList( "(A)--[REL1]-->(B)--[REL2]-->(C)--[REL3]-->(D)" ) ), expected );
+        assertEquals( expected, paths( orderedPath.findPathsByExpander(), A ) );
+    }
+
+    @Test
+    public void shouldMatchRepeatedSteps()
+    {
+        Node start = chain( "REL1", "REL2", "REL2", "REL2", "REL3" )[0];
+
+        assertEquals( new TreeSet<>( asList(
+                "(0)--[REL1]-->(1)--[REL2]-->(2)--[REL2]-->(3)--[REL2]-->(4)--[REL3]-->(5)" ) ),
+                paths( "REL1 REL2+ REL3", start ) );
+        assertEquals( new TreeSet<>( asList( "(0)--[REL1]-->(1)--[REL2]-->(2)",
+                "(0)--[REL1]-->(1)--[REL2]-->(2)--[REL2]-->(3)",
+                "(0)--[REL1]-->(1)--[REL2]-->(2)--[REL2]-->(3)--[REL2]-->(4)" ) ),
+                paths( "REL1 REL2+", start ) );
+        assertEquals( new TreeSet<String>(), paths( "REL1 REL2 REL3", start ) );
+    }
+
+    @Test
+    public void shouldRespectDirections()
+    {
+        Node[] nodes = chain( "REL1", "REL2" );
+
+        assertEquals( 1, paths( ">REL1 >REL2", nodes[0] ).size() );
+        assertEquals( 0, paths( ">REL1 <REL2", nodes[0] ).size() );
+        assertEquals( 1, paths( "<REL2 <REL1", nodes[2] ).size() );
+    }
+
+    @Test
+    public void shouldMatchReversedSequenceFromTheEnd()
+    {
+        Node end = chain( "REL1", "REL2", "REL2", "REL3" )[4];
+        OrderedPathExpander expander = OrderedPathExpander.compile( ">REL1 REL2+ >REL3" );
+
+        assertEquals( new TreeSet<>( asList( "(4)<--[REL3]--(3)<--[REL2]--(2)<--[REL2]--(1)<--[REL1]--(0)" ) ),
+                paths( expander.reverse().traversal( db.traversalDescription() ), end ) );
+        assertEquals( new TreeSet<String>(), paths( expander.traversal( db.traversalDescription() ), end ) );
+    }
+
+    @Test
+    public void shouldMatchFromBothEnds()
+    {
+        Node[] nodes = chain( "REL1", "REL2", "REL2", "REL2", "REL3" );
+        addDistractors( 5 );
+
+        assertEquals( new TreeSet<>( asList(
+                "(0)--[REL1]-->(1)--[REL2]-->(2)--[REL2]-->(3)--[REL2]-->(4)--[REL3]-->(5)" ) ),
+                paths( "REL1 REL2+ >REL3", nodes[0], nodes[5] ) );
+        assertEquals( new TreeSet<String>(), paths( "REL1 REL2 REL3", nodes[0], nodes[5] ) );
+        assertEquals( new TreeSet<String>(), paths( "REL1 REL2+ <REL3", nodes[0], nodes[5] ) );
+    }
+
+    /**
+     * Gives every node {@code distractors} relationships, of other types than the ordered ones, to the nodes
+     * following it.
+     */
+    private void addDistractors( int distractors )
+    {
+        try ( Transaction tx = db.beginTx() )
+        {
+            List<Node> nodes = Iterables.asList( db.getAllNodes() );
+            for ( int i = 0; i < nodes.size(); i++ )
+            {
+                for ( int j = 0; j < distractors; j++ )
+                {
+                    Node other = nodes.get( (i + 1 + j) % nodes.size() );
+                    nodes.get( i ).createRelationshipTo( other, withName( "DISTRACTOR" + j % 10 ) );
+                }
+            }
+            tx.success();
+        }
+    }
+
+    private Node[] chain( String... types )
+    {
+        try ( Transaction tx = db.beginTx() )
+        {
+            Node[] nodes = new Node[types.length + 1];
+            for ( int i = 0; i < nodes.length; i++ )
+            {
+                nodes[i] = db.createNode();
+                nodes[i].setProperty( "name", String.valueOf( i ) );
+                if ( i > 0 )
+                {
+                    nodes[i - 1].createRelationshipTo( nodes[i], withName( types[i - 1] ) );
+                }
+            }
+            tx.success();
+            return nodes;
+        }
+    }
+
+    private Set<String> paths( String pattern, Node start )
+    {
+        return paths( OrderedPathExpander.compile( pattern ).traversal( db.traversalDescription() ), start );
+    }
+
+    private Set<String> paths( String pattern, Node start, Node end )
+    {
+        BidirectionalTraversalDescription td = OrderedPathExpander.compile( pattern )
+                .traversal( db.bidirectionalTraversalDescription(), db.traversalDescription() );
+        try ( Transaction tx = db.beginTx() )
+        {
+            return toStrings( td.traverse( start, end ) );
+        }
+    }
+
+    private Set<String> paths( TraversalDescription td, Node start )
+    {
+        try ( Transaction tx = db.beginTx() )
+        {
+            return toStrings( td.traverse( start ) );
+        }
+    }
+
+    private static Set<String> toStrings( Iterable<Path> traverser )
+    {
+        Set<String> paths = new TreeSet<>();
+        OrderedPath.PathPrinter printer = new OrderedPath.PathPrinter( "name" );
+        for ( Path path : traverser )
+        {
+            paths.add( Paths.pathToString( path, printer ) );
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.examples.socnet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.Iterables.count;
+import static org.neo4j.helpers.collection.Iterators.asSet;
+
+public class PersonRepositoryTest
+{
+    private static final int nrOfPersons = 50;
+
+    private GraphDatabaseService graphDb;
+
+    @Before
+    public void setup()
+    {
+        graphDb = new TestGraphDatabaseFactory().newImpermanentDatabase();
+    }
+
+    @After
+    public void teardown()
+    {
+        graphDb.shutdown();
+    }
+
+    @Test
+    public void personsCanBeSpreadOverBuckets() throws Exception
+    {
+        assertRepositoryKeepsNamesUnique( 8 );
+
+        // a repository created later finds the same buckets
+        try ( Transaction tx = graphDb.beginTx();
+              PersonRepository personRepository = new PersonRepository( graphDb, index(), 8 ) )
+        {
+            assertThat( namesOf( personRepository.getAllPersons() ).size(), equalTo( nrOfPersons - 1 ) );
+        }
+    }
+
+    @Test
+    public void bucketCountIsKeptInTheDatabase() throws Exception
+    {
+        assertRepositoryKeepsNamesUnique( 8 );
+
+        try ( Transaction tx = graphDb.beginTx();
+              PersonRepository personRepository = new PersonRepository( graphDb, index() ) )
+        {
+            assertThat( namesOf( personRepository.getAllPersons() ).size(), equalTo( nrOfPersons - 1 ) );
+            assertThat( personRepository.getPersonByName( "person#7" ).getName(), equalTo( "person#7" ) );
+        }
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            new PersonRepository( graphDb, index(), 4 );
+            fail( "Should not be able to spread the persons over a different number of buckets" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertThat( e.getMessage(), equalTo( "The persons in this database are spread over 8 buckets, not 4" ) );
+        }
+    }
+
+    @Test
+    public void personNamesCanBeKeptUniqueByConstraint() throws Exception
+    {
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            PersonRepository.createUniqueNameConstraint( graphDb );
+            tx.success();
+        }
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            graphDb.schema().awaitIndexesOnline( 10, TimeUnit.SECONDS );
+        }
+
+        assertRepositoryKeepsNamesUnique( 1 );
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            Node refNode = graphDb.index().forNodes( "reference" ).get( "reference", "persons" ).getSingle();
+            assertThat( refNode, nullValue() );
+        }
+    }
+
+    @Test
+    public void openRepositoriesUseTheConstraintOnceItIsCreated() throws Exception
+    {
+        try ( PersonRepository personRepository = openRepository() )
+        {
+            try ( Transaction tx = graphDb.beginTx() )
+            {
+                personRepository.createPerson( "before" );
+                tx.success();
+            }
+            createUniqueNameConstraint();
+
+            try ( Transaction tx = graphDb.beginTx() )
+            {
+                personRepository.createPerson( "after" );
+                tx.success();
+            }
+            try ( Transaction tx = graphDb.beginTx();
+                  PersonRepository newRepository = new PersonRepository( graphDb, index() ) )
+            {
+                assertThat( namesOf( personRepository.getAllPersons() ), equalTo( asSet( "before", "after" ) ) );
+                assertThat( namesOf( newRepository.getAllPersons() ), equalTo( asSet( "before", "after" ) ) );
+                assertThat( newRepository.getPersonByName( "after" ).getName(), equalTo( "after" ) );
+            }
+        }
+    }
+
+    @Test
+    public void personsWithoutLabelMustBeLabelledBeforeCreatingTheConstraint() throws Exception
+    {
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            createUnlabelledPerson( createPersonsReferenceNode(), "old timer" );
+            tx.success();
+        }
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            PersonRepository.createUniqueNameConstraint( graphDb );
+            fail( "Should not be able to create the constraint while there are persons without the label" );
+        }
+        catch ( IllegalStateException e )
+        {
+            assertThat( e.getMessage(), startsWith( "1 persons have no label" ) );
+        }
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            assertThat( PersonRepository.labelAllPersons( graphDb ), equalTo( 1L ) );
+            tx.success();
+        }
+        createUniqueNameConstraint();
+
+        try ( Transaction tx = graphDb.beginTx();
+              PersonRepository personRepository = new PersonRepository( graphDb, index() ) )
+        {
+            assertThat( personRepository.getPersonByName( "old timer" ).getName(), equalTo( "old timer" ) );
+            assertThat( namesOf( personRepository.getAllPersons() ), equalTo( asSet( "old timer" ) ) );
+        }
+    }
+
+    @Test
+    public void personsOfDuplicateReferenceNodesAreMergedIntoOne() throws Exception
+    {
+        // what repositories created when the reference node was looked up under the wrong key
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            createUnlabelledPerson( createPersonsReferenceNode(), "first" );
+            createUnlabelledPerson( createPersonsReferenceNode(), "second" );
+            createPersonsReferenceNode();
+            tx.success();
+        }
+
+        try ( Transaction tx = graphDb.beginTx();
+              PersonRepository personRepository = new PersonRepository( graphDb, index() ) )
+        {
+            assertThat( namesOf( personRepository.getAllPersons() ), equalTo( asSet( "first", "second" ) ) );
+            tx.success();
+        }
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            assertThat( count( graphDb.index().forNodes( "reference" ).get( "reference", "persons" ) ),
+                    equalTo( 1L ) );
+            assertThat( count( graphDb.getAllNodes() ), equalTo( 3L ) );
+        }
+    }
+
+    @Test
+    public void personWithManyStatusesIsDeletedInBoundedTransactions() throws Exception
+    {
+        int nrOfStatuses = 100_000;
+        int nrOfFriends = 2_500;
+        int batchSize = 1_000;
+        Person person;
+        PersonRepository personRepository;
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            personRepository = new PersonRepository( graphDb, index() );
+            person = personRepository.createPerson( "heavy user" );
+            List<Person> friends = new ArrayList<>();
+            for ( int i = 0; i < nrOfFriends; i++ )
+            {
+                friends.add( personRepository.createPerson( "friend#" + i ) );
+            }
+            person.addFriends( friends );
+            tx.success();
+        }
+        for ( int i = 0; i < nrOfStatuses; )
+        {
+            try ( Transaction tx = graphDb.beginTx() )
+            {
+                for ( int end = i + 10_000; i < end; i++ )
+                {
+                    person.addStatus( "Status " + i );
+                }
+                tx.success();
+            }
+        }
+
+        // The budget: no transaction may delete more than a batch worth of nodes, nor more relationships
+        // than a batch of status updates have, i.e. a NEXT and a SKIP each plus the one STATUS
+        final AtomicLong mostNodesDeletedInOneTransaction = new AtomicLong();
+        final AtomicLong mostRelationshipsDeletedInOneTransaction = new AtomicLong();
+        graphDb.registerTransactionEventHandler( new TransactionEventHandler.Adapter<Object>()
+        {
+            @Override
+            public Object beforeCommit( TransactionData data ) throws Exception
+            {
+                mostNodesDeletedInOneTransaction.accumulateAndGet( count( data.deletedNodes() ), Math::max );
+                mostRelationshipsDeletedInOneTransaction.accumulateAndGet(
+                        count( data.deletedRelationships() ), Math::max );
+                return null;
+            }
+        } );
+
+        final List<long[]> reports = new ArrayList<>();
+        personRepository.deletionJob( person, batchSize, ( friendshipsDeleted, statusesDeleted, done ) ->
+                reports.add( new long[]{friendshipsDeleted, statusesDeleted, done ? 1 : 0} ) ).run();
+
+        assertThat( mostNodesDeletedInOneTransaction.get(), lessThanOrEqualTo( (long) batchSize ) );
+        assertThat( mostRelationshipsDeletedInOneTransaction.get(), lessThanOrEqualTo( 2L * batchSize + 1 ) );
+        long[] last = reports.get( reports.size() - 1 );
+        assertThat( last[0], equalTo( (long) nrOfFriends ) );
+        assertThat( last[1], equalTo( (long) nrOfStatuses ) );
+        assertThat( last[2], equalTo( 1L ) );
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            assertThat( namesOf( personRepository.getAllPersons() ).size(), equalTo( nrOfFriends ) );
+            assertThat( count( graphDb.getAllNodes() ), equalTo( nrOfFriends + 1L ) );
+        }
+        personRepository.close();
+    }
+
+    private void assertRepositoryKeepsNamesUnique( int buckets ) throws Exception
+    {
+        try ( Transaction tx = graphDb.beginTx();
+              PersonRepository personRepository = new PersonRepository( graphDb, index(), buckets ) )
+        {
+            for ( int i = 0; i < nrOfPersons; i++ )
+            {
+                personRepository.createPerson( "person#" + i );
+            }
+            tx.success();
+        }
+
+        try ( Transaction tx = graphDb.beginTx();
+              PersonRepository personRepository = new PersonRepository( graphDb, index(), buckets ) )
+        {
+            personRepository.createPerson( "person#7" );
+            fail( "Should not be able to create two persons with the same name" );
+        }
+        catch ( Exception e )
+        {
+            assertThat( e.getMessage(), equalTo( "Person with this name already exists " ) );
+        }
+
+        try ( Transaction tx = graphDb.beginTx();
+              PersonRepository personRepository = new PersonRepository( graphDb, index(), buckets ) )
+        {
+            assertThat( personRepository.getPersonByName( "person#7" ).getName(), equalTo( "person#7" ) );
+            assertThat( namesOf( personRepository.getAllPersons() ).size(), equalTo( nrOfPersons ) );
+
+            personRepository.deletePerson( personRepository.getPersonByName( "person#3" ) );
+            tx.success();
+        }
+
+        try ( Transaction tx = graphDb.beginTx();
+              PersonRepository personRepository = new PersonRepository( graphDb, index(), buckets ) )
+        {
+            Set<String> names = namesOf( personRepository.getAllPersons() );
+            assertThat( names.size(), equalTo( nrOfPersons - 1 ) );
+            assertThat( names.contains( "person#3" ), equalTo( false ) );
+        }
+    }
+
+    private PersonRepository openRepository()
+    {
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            PersonRepository personRepository = new PersonRepository( graphDb, index() );
+            tx.success();
+            return personRepository;
+        }
+    }
+
+    private void createUniqueNameConstraint()
+    {
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            PersonRepository.createUniqueNameConstraint( graphDb );
+            tx.success();
+        }
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            graphDb.schema().awaitIndexesOnline( 10, TimeUnit.SECONDS );
+        }
+    }
+
+    private Node createPersonsReferenceNode()
+    {
+        Node refNode = graphDb.createNode();
+        refNode.setProperty( "reference", "persons" );
+        graphDb.index().forNodes( "reference" ).add( refNode, "reference", "persons" );
+        return refNode;
+    }
+
+    private void createUnlabelledPerson( Node refNode, String name )
+    {
+        Node personNode = graphDb.createNode();
+        refNode.createRelationshipTo( personNode, RelTypes.A_PERSON );
+        personNode.setProperty( Person.NAME, name );
+        index().add( personNode, Person.NAME, name );
+    }
+
+    private Index<Node> index()
+    {
+        return graphDb.index().forNodes( "nodes" );
+    }
+
+    private Set<String> namesOf( Iterable<Person> persons )
+    {
+        Set<String> names = new HashSet<>();
+        for ( Person person : persons )
+        {
+            names.add( person.getName() );
+        }
+        return names;
+    }
+}
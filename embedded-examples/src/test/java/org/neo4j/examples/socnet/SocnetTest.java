@@ -23,9 +23,13 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
@@ -38,6 +42,7 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.hasItems;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.neo4j.helpers.collection.Iterators.addToCollection;
 import static org.neo4j.helpers.collection.Iterators.single;
 
@@ -66,6 +71,7 @@ public class SocnetTest
     @After
     public void teardown()
     {
+        personRepository.close();
         graphDb.shutdown();
     }
 
@@ -114,6 +120,88 @@ public class SocnetTest
         }
     }
 
+    @Test
+    public void timelineIsPagedFromAnyDate() throws Exception
+    {
+        int numberOfStatuses = 100;
+        Person person;
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            person = getRandomPerson();
+            for ( int i = 0; i < numberOfStatuses; i++ )
+            {
+                person.addStatus( "Status " + i );
+                person.getStatus().iterator().next().getUnderlyingNode().setProperty( StatusUpdate.DATE, 1000L + i );
+            }
+            tx.success();
+        }
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            List<StatusUpdate> newest = Timeline.timeline( person, 3, ActivityFeed.FIRST_PAGE );
+            assertThat( newest.size(), equalTo( 3 ) );
+            assertThat( newest.get( 0 ).getStatusText(), equalTo( "Status 99" ) );
+            assertThat( newest.get( 2 ).getStatusText(), equalTo( "Status 97" ) );
+
+            for ( int before = 1000; before <= 1000 + numberOfStatuses; before++ )
+            {
+                List<StatusUpdate> page =
+                        Timeline.timeline( person, 10, new ActivityFeed.Cursor( before, Long.MIN_VALUE ) );
+                int expectedSize = Math.min( 10, before - 1000 );
+                assertThat( page.size(), equalTo( expectedSize ) );
+                for ( int i = 0; i < expectedSize; i++ )
+                {
+                    assertThat( page.get( i ).getTimestamp(), equalTo( before - 1L - i ) );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void timelinePagesDoNotSkipStatusesSharingATimestamp() throws Exception
+    {
+        Person person;
+        int numberOfStatuses = 25;
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            person = getRandomPerson();
+            for ( int i = 0; i < numberOfStatuses; i++ )
+            {
+                person.addStatus( "Status " + i );
+                // Five statuses per timestamp, so that pages of seven end in the middle of a timestamp
+                Node status = person.getStatus().iterator().next().getUnderlyingNode();
+                status.setProperty( StatusUpdate.DATE, 1000L + i / 5 );
+            }
+            tx.success();
+        }
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            List<StatusUpdate> all = new ArrayList<>();
+            ActivityFeed.Cursor cursor = ActivityFeed.FIRST_PAGE;
+            List<StatusUpdate> page;
+            do
+            {
+                page = Timeline.timeline( person, 7, cursor );
+                all.addAll( page );
+                cursor = ActivityFeed.nextCursor( page );
+            }
+            while ( !page.isEmpty() );
+
+            Set<String> texts = new HashSet<>();
+            for ( StatusUpdate status : all )
+            {
+                texts.add( status.getStatusText() );
+            }
+            assertThat( all.size(), equalTo( numberOfStatuses ) );
+            assertThat( texts.size(), equalTo( numberOfStatuses ) );
+            for ( int i = 1; i < all.size(); i++ )
+            {
+                assertTrue( all.get( i - 1 ).getTimestamp() >= all.get( i ).getTimestamp() );
+            }
+        }
+    }
+
     @Test
     public void removingOneFriendIsHandledCleanly()
     {
@@ -143,6 +231,44 @@ public class SocnetTest
         }
     }
 
+    @Test
+    public void addingAndRemovingFriendsInBulk() throws Exception
+    {
+        deleteSocialGraph();
+        Person a;
+        Person b;
+        Person c;
+        Person d;
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            a = personRepository.createPerson( "a" );
+            b = personRepository.createPerson( "b" );
+            c = personRepository.createPerson( "c" );
+            d = personRepository.createPerson( "d" );
+            b.addFriend( a );
+
+            // B is already a friend and A can't befriend itself, so only C and D are added
+            a.addFriends( Arrays.asList( a, b, c, d, c ) );
+            tx.success();
+        }
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            assertThat( a.getNrOfFriends(), equalTo( 3L ) );
+            assertThat( a.getFriends(), hasItems( b, c, d ) );
+
+            a.removeFriends( Arrays.asList( b, d ) );
+            tx.success();
+        }
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            assertThat( a.getNrOfFriends(), equalTo( 1L ) );
+            assertThat( b.getNrOfFriends(), equalTo( 0L ) );
+            assertThat( a.getFriends(), hasItems( c ) );
+        }
+    }
+
     @Test
     public void retrieveStatusUpdatesInDateOrder() throws Exception
     {
@@ -171,6 +297,92 @@ public class SocnetTest
         }
     }
 
+    @Test
+    public void activityFeedIsPagedNewestFirst() throws Exception
+    {
+        Person person;
+        int numberOfStatuses = 25;
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            person = getRandomPersonWithFriends();
+            for ( int i = 0; i < numberOfStatuses; i++ )
+            {
+                Person friend = getRandomFriendOf( person );
+                friend.addStatus( "Status " + i );
+                // Give every status a distinct timestamp, statuses are otherwise likely to share a millisecond
+                friend.getStatus().iterator().next().getUnderlyingNode().setProperty( StatusUpdate.DATE, 1000L + i );
+            }
+            tx.success();
+        }
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            ArrayList<StatusUpdate> all = new ArrayList<>();
+            ActivityFeed.Cursor cursor = ActivityFeed.FIRST_PAGE;
+            List<StatusUpdate> page;
+            do
+            {
+                page = ActivityFeed.feed( person, 7, cursor );
+                assertTrue( page.size() <= 7 );
+                all.addAll( page );
+                cursor = ActivityFeed.nextCursor( page );
+            }
+            while ( !page.isEmpty() );
+
+            assertThat( all.size(), equalTo( numberOfStatuses ) );
+            for ( int i = 0; i < numberOfStatuses; i++ )
+            {
+                assertThat( all.get( i ).getTimestamp(), equalTo( 1000L + numberOfStatuses - 1 - i ) );
+            }
+        }
+    }
+
+    @Test
+    public void activityFeedPagesDoNotSkipStatusesSharingATimestamp() throws Exception
+    {
+        Person person;
+        int numberOfStatuses = 25;
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            person = getRandomPersonWithFriends();
+            for ( int i = 0; i < numberOfStatuses; i++ )
+            {
+                Person friend = getRandomFriendOf( person );
+                friend.addStatus( "Status " + i );
+                // Five statuses per timestamp, so that pages of seven end in the middle of a timestamp
+                Node status = friend.getStatus().iterator().next().getUnderlyingNode();
+                status.setProperty( StatusUpdate.DATE, 1000L + i / 5 );
+            }
+            tx.success();
+        }
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            List<StatusUpdate> all = new ArrayList<>();
+            ActivityFeed.Cursor cursor = ActivityFeed.FIRST_PAGE;
+            List<StatusUpdate> page;
+            do
+            {
+                page = ActivityFeed.feed( person, 7, cursor );
+                all.addAll( page );
+                cursor = ActivityFeed.nextCursor( page );
+            }
+            while ( !page.isEmpty() );
+
+            Set<String> texts = new HashSet<>();
+            for ( StatusUpdate status : all )
+            {
+                texts.add( status.getStatusText() );
+            }
+            assertThat( all.size(), equalTo( numberOfStatuses ) );
+            assertThat( texts.size(), equalTo( numberOfStatuses ) );
+            for ( int i = 1; i < all.size(); i++ )
+            {
+                assertTrue( all.get( i - 1 ).getTimestamp() >= all.get( i ).getTimestamp() );
+            }
+        }
+    }
+
     @Test
     public void friendsOfFriendsWorks() throws Exception
     {
@@ -239,6 +451,102 @@ public class SocnetTest
         }
     }
 
+    @Test
+    public void cachedPathsAreDroppedWhenFriendshipsChange() throws Exception
+    {
+        deleteSocialGraph();
+
+        Person start;
+        Person middleMan;
+        Person shortcut;
+        Person endMan;
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            start = personRepository.createPerson( "start" );
+            middleMan = personRepository.createPerson( "middle" );
+            shortcut = personRepository.createPerson( "shortcut" );
+            endMan = personRepository.createPerson( "endMan" );
+
+            // Start -> middleMan -> shortcut -> endMan
+            start.addFriend( middleMan );
+            middleMan.addFriend( shortcut );
+            shortcut.addFriend( endMan );
+            tx.success();
+        }
+
+        try ( PathService pathService = new PathService( graphDb, 100, 10 ) )
+        {
+            try ( Transaction tx = graphDb.beginTx() )
+            {
+                assertPathIs( pathService.shortestPath( start, endMan, 4 ), start, middleMan, shortcut, endMan );
+                assertPathIs( pathService.shortestPath( start, endMan, 2 ) );
+            }
+
+            try ( Transaction tx = graphDb.beginTx() )
+            {
+                start.addFriend( shortcut );
+                tx.success();
+            }
+
+            try ( Transaction tx = graphDb.beginTx() )
+            {
+                assertPathIs( pathService.shortestPath( start, endMan, 4 ), start, shortcut, endMan );
+                assertPathIs( pathService.shortestPath( start, endMan, 2 ), start, shortcut, endMan );
+                assertPathIs( pathService.shortestPath( endMan, start, 2 ), endMan, shortcut, start );
+                assertPathIs( pathService.shortestPath( start, start, 2 ), start );
+            }
+        }
+    }
+
+    @Test
+    public void shortestPathsOfPersonsAreCachedByTheirRepository() throws Exception
+    {
+        deleteSocialGraph();
+
+        Person start;
+        Person middleMan;
+        Person endMan;
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            start = personRepository.createPerson( "start" );
+            middleMan = personRepository.createPerson( "middle" );
+            endMan = personRepository.createPerson( "endMan" );
+            start.addFriend( middleMan );
+            middleMan.addFriend( endMan );
+            tx.success();
+        }
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            assertPathIs( start.getShortestPathTo( endMan, 4 ), start, middleMan, endMan );
+        }
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            // a transaction sees its own friendships, cached or not
+            start.addFriend( endMan );
+            assertPathIs( personRepository.getPersonByName( "start" ).getShortestPathTo( endMan, 4 ),
+                    start, endMan );
+        }
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            // and what it found is not cached once it is rolled back
+            assertPathIs( start.getShortestPathTo( endMan, 4 ), start, middleMan, endMan );
+        }
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            start.addFriend( endMan );
+            tx.success();
+        }
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            assertPathIs( start.getShortestPathTo( endMan, 4 ), start, endMan );
+        }
+    }
+
     @Test
     public void singleFriendRecommendation() throws Exception
     {
@@ -311,6 +619,37 @@ public class SocnetTest
         }
     }
 
+    @Test
+    public void friendRecommendationLeavesOutExistingFriends() throws Exception
+    {
+        deleteSocialGraph();
+        Person a;
+        Person d;
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            a = personRepository.createPerson( "a" );
+            Person b = personRepository.createPerson( "b" );
+            Person c = personRepository.createPerson( "c" );
+            d = personRepository.createPerson( "d" );
+
+            // A is friends with B and C, who are friends with each other and with D
+            a.addFriend( b );
+            a.addFriend( c );
+            b.addFriend( c );
+            b.addFriend( d );
+            c.addFriend( d );
+            tx.success();
+        }
+
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            ArrayList<Person> recommendations = fromIterableToArrayList( a.getFriendRecommendation( 10 ).iterator() );
+            assertThat( recommendations.size(), equalTo( 1 ) );
+            assertThat( recommendations.get( 0 ), equalTo( d ) );
+            assertThat( a.getFriendRecommendation( 0 ).iterator().hasNext(), equalTo( false ) );
+        }
+    }
+
     private <T> ArrayList<T> fromIterableToArrayList( Iterator<T> iterable )
     {
         ArrayList<T> collection = new ArrayList<>();
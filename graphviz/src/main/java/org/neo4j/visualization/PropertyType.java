@@ -131,6 +131,10 @@ public enum PropertyType
      */
     public static PropertyType getTypeOf( Object propertyValue )
     {
+        if ( propertyValue instanceof String )
+        {
+            return STRING;
+        }
         return getTypeFor( propertyValue.getClass() );
     }
 
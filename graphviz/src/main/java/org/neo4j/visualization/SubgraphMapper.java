@@ -19,11 +19,13 @@
  */
 package org.neo4j.visualization;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.TreeMap;
 
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveLongIntMap;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.walk.Visitor;
@@ -33,8 +35,18 @@ public interface SubgraphMapper
 {
     String getSubgraphFor( Node node );
 
+    /**
+     * Walks the nodes grouped by subgraph, the subgraphs in order of their names, followed by the nodes that are
+     * in no subgraph, and then the relationships between the walked nodes.
+     * <p>
+     * Nodes are kept track of by id only, in a primitive map from node id to subgraph. Once all nodes are
+     * mapped, their ids are counting sorted by subgraph into one array, so grouping them takes a single pass
+     * over the map however many subgraphs there are, at 8 bytes per node. Nothing is held on to between walks.
+     */
     public abstract class SubgraphMappingWalker extends Walker
     {
+        private static final int NO_SUBGRAPH = 0;
+
         private final SubgraphMapper mapper;
 
         protected SubgraphMappingWalker( SubgraphMapper mapper )
@@ -42,68 +54,85 @@ public interface SubgraphMapper
             this.mapper = mapper;
         }
 
-        private Map<String, Collection<Node>> subgraphs;
-        private Collection<Node> generic;
-        private Collection<Relationship> relationships;
+        private String subgraphFor( Node node )
+        {
+            return mapper == null ? null : mapper.getSubgraphFor( node );
+        }
 
-        private synchronized void initialize()
+        @Override
+        public final <R, E extends Throwable> R accept( Visitor<R, E> visitor ) throws E
         {
-            if ( subgraphs != null ) return;
-            Map<Node, String> mappings = new HashMap<Node, String>();
-            subgraphs = new HashMap<String, Collection<Node>>();
-            generic = new ArrayList<Node>();
+            PrimitiveLongIntMap subgraphOf = Primitive.longIntMap();
+            Map<String, Integer> subgraphs = new TreeMap<>();
+            int[] sizes = new int[1];
+            GraphDatabaseService graphDb = null;
             for ( Node node : nodes() )
             {
-                if ( mappings.containsKey( node ) ) continue;
+                if ( subgraphOf.containsKey( node.getId() ) ) continue;
+                graphDb = node.getGraphDatabase();
                 String subgraph = subgraphFor( node );
-                if ( !subgraphs.containsKey( subgraph ) && subgraph != null )
+                int index = NO_SUBGRAPH;
+                if ( subgraph != null )
                 {
-                    subgraphs.put( subgraph, new ArrayList<Node>() );
+                    index = subgraphs.computeIfAbsent( subgraph, name -> subgraphs.size() + 1 );
                 }
-                mappings.put( node, subgraph );
-            }
-            relationships = new ArrayList<Relationship>();
-            for ( Relationship rel : relationships() )
-            {
-                if ( mappings.containsKey( rel.getStartNode() )
-                     && mappings.containsKey( rel.getEndNode() ) )
+                subgraphOf.put( node.getId(), index );
+                if ( index >= sizes.length )
                 {
-                    relationships.add( rel );
+                    sizes = Arrays.copyOf( sizes, index * 2 );
                 }
+                sizes[index]++;
             }
-            for ( Map.Entry<Node, String> e : mappings.entrySet() )
+
+            int[] starts = new int[sizes.length + 1];
+            for ( int index = 0; index < sizes.length; index++ )
             {
-                ( e.getValue() == null ? generic : subgraphs.get( e.getValue() ) ).add( e.getKey() );
+                starts[index + 1] = starts[index] + sizes[index];
             }
-        }
-
-        private String subgraphFor( Node node )
-        {
-            return mapper == null ? null : mapper.getSubgraphFor( node );
-        }
+            long[] ids = idsBySubgraph( subgraphOf, starts );
 
-        @Override
-        public final <R, E extends Throwable> R accept( Visitor<R, E> visitor ) throws E
-        {
-            initialize();
-            for ( Map.Entry<String, Collection<Node>> subgraph : subgraphs.entrySet() )
+            for ( Map.Entry<String, Integer> subgraph : subgraphs.entrySet() )
             {
+                int index = subgraph.getValue();
                 Visitor<R, E> subVisitor = visitor.visitSubgraph( subgraph.getKey() );
-                for ( Node node : subgraph.getValue() )
-                {
-                    subVisitor.visitNode( node );
-                }
+                visitNodes( subVisitor, graphDb, ids, starts[index], starts[index + 1] );
                 subVisitor.done();
             }
-            for ( Node node : generic )
+            visitNodes( visitor, graphDb, ids, starts[NO_SUBGRAPH], starts[NO_SUBGRAPH + 1] );
+            for ( Relationship relationship : relationships() )
             {
-                visitor.visitNode( node );
+                if ( subgraphOf.containsKey( relationship.getStartNodeId() )
+                     && subgraphOf.containsKey( relationship.getEndNodeId() ) )
+                {
+                    visitor.visitRelationship( relationship );
+                }
             }
-            for ( Relationship relationship : relationships )
+            return visitor.done();
+        }
+
+        /**
+         * @return all mapped ids, those of subgraph {@code i} from {@code starts[i]} to {@code starts[i + 1]}.
+         */
+        private static long[] idsBySubgraph( PrimitiveLongIntMap subgraphOf, int[] starts )
+        {
+            long[] ids = new long[starts[starts.length - 1]];
+            int[] next = Arrays.copyOf( starts, starts.length - 1 );
+            subgraphOf.visitEntries( ( id, index ) ->
+            {
+                ids[next[index]++] = id;
+                return false;
+            } );
+            return ids;
+        }
+
+        private static <E extends Throwable> void visitNodes( Visitor<?, E> visitor, GraphDatabaseService graphDb,
+                long[] ids, int from, int to ) throws E
+        {
+            Arrays.sort( ids, from, to );
+            for ( int i = from; i < to; i++ )
             {
-                visitor.visitRelationship( relationship );
+                visitor.visitNode( graphDb.getNodeById( ids[i] ) );
             }
-            return visitor.done();
         }
 
         protected abstract Iterable<Node> nodes();
@@ -89,20 +89,54 @@ public interface ValueFormatter<T>
     {
         public String formatString( String string )
         {
-            string = string.replace( "\\n", "\\\\n" );
-            string = string.replace( "\\", "\\\\" );
-            string = string.replace( "\"", "\\\"" );
-            string = string.replace( "'", "\\\\'" );
-            string = string.replace( "\n", "\\\\n" );
-            string = string.replace( "<", "\\<" );
-            string = string.replace( ">", "\\>" );
-            string = string.replace( "[", "\\[" );
-            string = string.replace( "]", "\\]" );
-            string = string.replace( "{", "\\{" );
-            string = string.replace( "}", "\\}" );
-            string = string.replace( "|", "\\|" );
+            StringBuilder result = new StringBuilder( string.length() + 8 ).append( '\'' );
+            int start = 0;
+            for ( int i = 0; i < string.length(); i++ )
+            {
+                String escape = escapeOf( string, i );
+                if ( escape != null )
+                {
+                    result.append( string, start, i ).append( escape );
+                    start = i + 1;
+                }
+            }
+            return result.append( string, start, string.length() ).append( '\'' ).toString();
+        }
 
-            return "'" + string + "'";
+        /**
+         * The escaping of the character at {@code index}, or {@code null} if it is kept as it is. A literal
+         * {@code \n} ends up with its backslash escaped twice.
+         */
+        private String escapeOf( String string, int index )
+        {
+            switch ( string.charAt( index ) )
+            {
+                case '\\':
+                    boolean beforeN = index + 1 < string.length() && string.charAt( index + 1 ) == 'n';
+                    return beforeN ? "\\\\\\\\" : "\\\\";
+                case '"':
+                    return "\\\"";
+                case '\'':
+                    return "\\\\'";
+                case '\n':
+                    return "\\\\n";
+                case '<':
+                    return "\\<";
+                case '>':
+                    return "\\>";
+                case '[':
+                    return "\\[";
+                case ']':
+                    return "\\]";
+                case '{':
+                    return "\\{";
+                case '}':
+                    return "\\}";
+                case '|':
+                    return "\\|";
+                default:
+                    return null;
+            }
         }
 
         public String formatStringArray( String[] value )
@@ -36,8 +36,8 @@ import org.neo4j.walk.Visitor;
 public class Visualizer<E extends Throwable> implements Visitor<Void, E>
 {
     private final GraphRenderer<E> renderer;
-    private Set<Relationship> visitedRelationships = new HashSet<Relationship>();
-    private Set<Node> visitedNodes = new HashSet<Node>();
+    private final Set<Relationship> visitedRelationships;
+    private final Set<Node> visitedNodes;
 
     /**
      * Creates a new visualizer.
@@ -45,8 +45,24 @@ public class Visualizer<E extends Throwable> implements Visitor<Void, E>
      *            An object capable of rendering the different parts of a graph.
      */
     public Visualizer( GraphRenderer<E> renderer )
+    {
+        this( renderer, true );
+    }
+
+    /**
+     * Creates a new visualizer.
+     * @param renderer
+     *            An object capable of rendering the different parts of a graph.
+     * @param skipDuplicates
+     *            whether to keep track of visited nodes and relationships to only render them once.
+     *            Not needed for walkers that {@link org.neo4j.walk.Walker#visitsEachEntityOnce() visit
+     *            each entity once}, and takes memory proportional to the size of the graph.
+     */
+    public Visualizer( GraphRenderer<E> renderer, boolean skipDuplicates )
     {
         this.renderer = renderer;
+        this.visitedRelationships = skipDuplicates ? new HashSet<>() : null;
+        this.visitedNodes = skipDuplicates ? new HashSet<>() : null;
     }
 
     public Void done() throws E
@@ -57,7 +73,7 @@ public class Visualizer<E extends Throwable> implements Visitor<Void, E>
 
     public void visitNode( Node node ) throws E
     {
-        if ( visitedNodes.add( node ) )
+        if ( visitedNodes == null || visitedNodes.add( node ) )
         {
             renderProperties( renderer.renderNode( node ), node );
         }
@@ -65,7 +81,7 @@ public class Visualizer<E extends Throwable> implements Visitor<Void, E>
 
     public void visitRelationship( Relationship relationship ) throws E
     {
-        if ( visitedRelationships.add( relationship ) )
+        if ( visitedRelationships == null || visitedRelationships.add( relationship ) )
         {
             renderProperties( renderer.renderRelationship( relationship ),
                 relationship );
@@ -74,7 +90,7 @@ public class Visualizer<E extends Throwable> implements Visitor<Void, E>
 
     public Visitor<Void, E> visitSubgraph( String name ) throws E
     {
-        return new Visualizer<E>( renderer.renderSubgraph( name ) );
+        return new Visualizer<E>( renderer.renderSubgraph( name ), visitedNodes != null );
     }
 
     private void renderProperties( PropertyRenderer<E> propertyRenderer,
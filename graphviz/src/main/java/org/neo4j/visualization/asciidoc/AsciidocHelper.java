@@ -19,10 +19,9 @@
  */
 package org.neo4j.visualization.asciidoc;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.StandardCharsets;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.regex.Pattern;
 
 import org.neo4j.graphdb.GraphDatabaseService;
@@ -138,35 +137,46 @@ public class AsciidocHelper
     {
         try ( Transaction tx = graph.beginTx() )
         {
-            GraphvizWriter writer = new GraphvizWriter( graphStyle );
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StringWriter out = new StringWriter();
             try
             {
-                writer.emit( out, Walker.fullGraph( graph ) );
+                writeGraphViz( out, title, identifier, graphStyle, graphvizOptions, Walker.fullGraph( graph ) );
             }
             catch ( IOException e )
             {
                 e.printStackTrace();
             }
 
-            String safeTitle = title.replaceAll( ILLEGAL_STRINGS, "" );
-
             tx.success();
-
-            try
-            {
-                return "." + title + "\n[\"dot\", \""
-                       + (safeTitle + "-" + identifier).replace( " ", "-" )
-                       + ".svg\", \"neoviz\", \"" + graphvizOptions + "\"]\n"
-                       + "----\n" + out.toString( StandardCharsets.UTF_8.name() ) + "----\n";
-            }
-            catch ( UnsupportedEncodingException e )
-            {
-                throw new RuntimeException( e );
-            }
+            return out.toString();
         }
     }
 
+    /**
+     * Write graphviz output, in the same form as {@link #createGraphViz(String, GraphDatabaseService, String,
+     * GraphStyle, String)}, straight to {@code out} as the graph is walked. Together with
+     * {@link Walker#fullGraph(GraphDatabaseService, int)} this writes out graphs of any size.
+     *
+     * @param out where to write the output, is neither flushed nor closed
+     * @param title the title of the visualization
+     * @param identifier the identifier to include in the filename
+     * @param graphStyle the style configuration to use
+     * @param graphvizOptions options to pass on to graphviz
+     * @param walker walks the graph, within whatever transactions it needs
+     * @throws IOException if {@code out} fails
+     */
+    public static void writeGraphViz( Writer out, String title, String identifier, GraphStyle graphStyle,
+                                      String graphvizOptions, Walker walker ) throws IOException
+    {
+        String safeTitle = title.replaceAll( ILLEGAL_STRINGS, "" );
+        out.write( "." + title + "\n[\"dot\", \""
+                   + (safeTitle + "-" + identifier).replace( " ", "-" )
+                   + ".svg\", \"neoviz\", \"" + graphvizOptions + "\"]\n"
+                   + "----\n" );
+        new GraphvizWriter( graphStyle ).emit( out, walker );
+        out.write( "----\n" );
+    }
+
     public static String createOutputSnippet( final String output )
     {
         return "[source]\n----\n" + output + "\n----\n";
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.visualization.binary;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.visualization.GraphRenderer;
+import org.neo4j.visualization.PropertyRenderer;
+import org.neo4j.visualization.PropertyType;
+
+/**
+ * Renders a graph in a compact binary format, as records in the order they are walked.
+ * <p>
+ * The output starts with the bytes {@code NGB} and the format version, followed by records that each start
+ * with a tag byte:
+ * <ul>
+ * <li>{@link #NODE}: id, number of labels, labels, properties</li>
+ * <li>{@link #RELATIONSHIP}: id, type, start node id, end node id, properties</li>
+ * <li>{@link #SUBGRAPH}: name, followed by the records of the subgraph and {@link #SUBGRAPH_END}</li>
+ * <li>{@link #END}: the end of the graph</li>
+ * </ul>
+ * Ids, counts and lengths are unsigned variable length integers, seven bits to a byte with the high bit
+ * set on all but the last byte. Property keys, labels, types and subgraph names are written as references
+ * into a string table that is built up while writing: a reference to the next entry of the table is
+ * followed by the string itself, and later references to it are just the number. Strings are written as
+ * their UTF-8 length and bytes.
+ * <p>
+ * Properties are written as a tag byte, one more than the {@link PropertyType#ordinal() ordinal} of the
+ * type of the value, then the key and the value, and are ended by a zero byte. Integral values are zig-zag
+ * encoded variable length integers, arrays are their length followed by the elements.
+ */
+public class BinaryGraphRenderer implements GraphRenderer<IOException>
+{
+    public static final int VERSION = 1;
+    public static final int END = 0;
+    public static final int NODE = 1;
+    public static final int RELATIONSHIP = 2;
+    public static final int SUBGRAPH = 3;
+    public static final int SUBGRAPH_END = 4;
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> strings;
+    private final boolean subgraph;
+    private final PropertyRenderer<IOException> properties = new PropertyRenderer<IOException>()
+    {
+        @Override
+        public void renderProperty( String propertyKey, Object propertyValue ) throws IOException
+        {
+            PropertyType type = PropertyType.getTypeOf( propertyValue );
+            out.writeByte( type.ordinal() + 1 );
+            writeReference( propertyKey );
+            writeValue( type, propertyValue );
+        }
+
+        @Override
+        public void done() throws IOException
+        {
+            out.writeByte( 0 );
+        }
+    };
+
+    /**
+     * @param out the stream to write the graph to, which is flushed but not closed when the graph is done.
+     */
+    public BinaryGraphRenderer( OutputStream out ) throws IOException
+    {
+        this( new DataOutputStream( out ), new HashMap<>(), false );
+        this.out.writeBytes( "NGB" );
+        this.out.writeByte( VERSION );
+    }
+
+    private BinaryGraphRenderer( DataOutputStream out, Map<String, Integer> strings, boolean subgraph )
+    {
+        this.out = out;
+        this.strings = strings;
+        this.subgraph = subgraph;
+    }
+
+    @Override
+    public PropertyRenderer<IOException> renderNode( Node node ) throws IOException
+    {
+        out.writeByte( NODE );
+        writeUnsigned( node.getId() );
+        Iterable<Label> labels = node.getLabels();
+        writeUnsigned( count( labels ) );
+        for ( Label label : labels )
+        {
+            writeReference( label.name() );
+        }
+        return properties;
+    }
+
+    @Override
+    public PropertyRenderer<IOException> renderRelationship( Relationship relationship ) throws IOException
+    {
+        out.writeByte( RELATIONSHIP );
+        writeUnsigned( relationship.getId() );
+        writeReference( relationship.getType().name() );
+        writeUnsigned( relationship.getStartNodeId() );
+        writeUnsigned( relationship.getEndNodeId() );
+        return properties;
+    }
+
+    @Override
+    public void done() throws IOException
+    {
+        if ( subgraph )
+        {
+            out.writeByte( SUBGRAPH_END );
+        }
+        else
+        {
+            out.writeByte( END );
+            out.flush();
+        }
+    }
+
+    @Override
+    public GraphRenderer<IOException> renderSubgraph( String name ) throws IOException
+    {
+        out.writeByte( SUBGRAPH );
+        writeReference( name );
+        return new BinaryGraphRenderer( out, strings, true );
+    }
+
+    private static int count( Iterable<Label> labels )
+    {
+        int count = 0;
+        for ( Label ignored : labels )
+        {
+            count++;
+        }
+        return count;
+    }
+
+    private void writeReference( String string ) throws IOException
+    {
+        Integer reference = strings.get( string );
+        if ( reference != null )
+        {
+            writeUnsigned( reference );
+            return;
+        }
+        writeUnsigned( strings.size() );
+        writeString( string );
+        strings.put( string, strings.size() );
+    }
+
+    private void writeValue( PropertyType type, Object value ) throws IOException
+    {
+        switch ( type )
+        {
+            case STRING:
+                writeString( (String) value );
+                break;
+            case INT:
+            case LONG:
+            case SHORT:
+            case BYTE:
+                writeSigned( ((Number) value).longValue() );
+                break;
+            case BOOLEAN:
+                out.writeBoolean( (Boolean) value );
+                break;
+            case CHAR:
+                out.writeChar( (Character) value );
+                break;
+            case FLOAT:
+                out.writeFloat( (Float) value );
+                break;
+            case DOUBLE:
+                out.writeDouble( (Double) value );
+                break;
+            case UNDEFINED:
+                writeString( String.valueOf( value ) );
+                break;
+            default:
+                PropertyType elementType = elementType( type );
+                int length = Array.getLength( value );
+                writeUnsigned( length );
+                for ( int i = 0; i < length; i++ )
+                {
+                    writeValue( elementType, Array.get( value, i ) );
+                }
+        }
+    }
+
+    private static PropertyType elementType( PropertyType arrayType )
+    {
+        switch ( arrayType )
+        {
+            case STRING_ARRAY:
+                return PropertyType.STRING;
+            case INT_ARRAY:
+                return PropertyType.INT;
+            case LONG_ARRAY:
+                return PropertyType.LONG;
+            case BOOLEAN_ARRAY:
+                return PropertyType.BOOLEAN;
+            case SHORT_ARRAY:
+                return PropertyType.SHORT;
+            case CHAR_ARRAY:
+                return PropertyType.CHAR;
+            case BYTE_ARRAY:
+                return PropertyType.BYTE;
+            case FLOAT_ARRAY:
+                return PropertyType.FLOAT;
+            case DOUBLE_ARRAY:
+                return PropertyType.DOUBLE;
+            default:
+                throw new IllegalArgumentException( arrayType + " is not an array type" );
+        }
+    }
+
+    private void writeString( String string ) throws IOException
+    {
+        byte[] bytes = string.getBytes( StandardCharsets.UTF_8 );
+        writeUnsigned( bytes.length );
+        out.write( bytes );
+    }
+
+    private void writeSigned( long value ) throws IOException
+    {
+        writeUnsigned( (value << 1) ^ (value >> 63) );
+    }
+
+    private void writeUnsigned( long value ) throws IOException
+    {
+        while ( (value & ~0x7FL) != 0 )
+        {
+            out.writeByte( (int) (value & 0x7F) | 0x80 );
+            value >>>= 7;
+        }
+        out.writeByte( (int) value );
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.visualization.binary;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.neo4j.visualization.Visualizer;
+import org.neo4j.walk.Walker;
+
+/**
+ * Writes graphs in the binary format of {@link BinaryGraphRenderer}, for snapshots of graphs that should
+ * take little space.
+ */
+public final class BinaryGraphWriter
+{
+    /**
+     * Emit a graph to a stream in binary format.
+     * @param outputStream
+     *            the stream to write the graph to, is flushed but not closed.
+     * @param walker
+     *            a walker that walks the graph to emit.
+     * @throws IOException
+     *             if there is an error in outputting to the specified stream.
+     */
+    public void emit( OutputStream outputStream, Walker walker ) throws IOException
+    {
+        BufferedOutputStream buffered = new BufferedOutputStream( outputStream );
+        walker.accept( new Visualizer<>( new BinaryGraphRenderer( buffered ), !walker.visitsEachEntityOnce() ) );
+    }
+}
@@ -39,30 +39,39 @@ class DefaultNodeStyle implements NodeStyle
     public void emitNodeStart( Appendable stream, Node node )
             throws IOException
     {
-        stream.append( "  N" + node.getId() + " [\n" );
+        emitNodeId( stream, node );
         config.emit( node, stream );
-        stream.append( "    label = \"{"
-                       + config.escapeLabel( config.getTitle( node ) ) );
+        stream.append( "    label = \"{" );
+        config.emitTitle( node, stream );
         Iterator<Label> labels = node.getLabels().iterator();
         if ( labels.hasNext() )
         {
-            if ( labels.hasNext() )
-            {
-                stream.append( ": " );
-                while ( labels.hasNext() )
-                {
-                    stream.append( labels.next()
-                            .name() );
-                    if ( labels.hasNext() )
-                    {
-                        stream.append( ", " );
-                    }
-                }
-            }
+            stream.append( ": " );
+            emitLabels( stream, labels );
         }
         stream.append( "|" );
     }
 
+    @Override
+    public void previewNode( Node node )
+    {
+        config.preview( node );
+    }
+
+    static void emitNodeId( Appendable stream, Node node ) throws IOException
+    {
+        stream.append( "  N" ).append( Long.toString( node.getId() ) ).append( " [\n" );
+    }
+
+    static void emitLabels( Appendable stream, Iterator<Label> labels ) throws IOException
+    {
+        stream.append( labels.next().name() );
+        while ( labels.hasNext() )
+        {
+            stream.append( ", " ).append( labels.next().name() );
+        }
+    }
+
     @Override
     public void emitEnd( Appendable stream ) throws IOException
     {
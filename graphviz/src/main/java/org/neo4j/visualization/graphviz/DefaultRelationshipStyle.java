@@ -36,6 +36,22 @@ class DefaultRelationshipStyle implements RelationshipStyle
 
     public void emitRelationshipStart( Appendable stream, Relationship relationship )
             throws IOException
+    {
+        emitStart( stream, relationship, 1 );
+    }
+
+    public void emitRelationshipsStart( Appendable stream, Relationship relationship, int count )
+            throws IOException
+    {
+        emitStart( stream, relationship, count );
+    }
+
+    public void previewRelationship( Relationship relationship )
+    {
+        config.preview( relationship );
+    }
+
+    private void emitStart( Appendable stream, Relationship relationship, int count ) throws IOException
     {
         Node start = relationship.getStartNode(), end = relationship.getEndNode();
         boolean reversed = config.reverseOrder( relationship );
@@ -46,12 +62,21 @@ class DefaultRelationshipStyle implements RelationshipStyle
             startId = endId;
             endId = tmp;
         }
-        stream.append( "  N" + startId + " -> N" + endId + " [\n" );
+        stream.append( "  N" ).append( Long.toString( startId ) )
+                .append( " -> N" ).append( Long.toString( endId ) ).append( " [\n" );
         config.emit( relationship, stream );
+        if ( count > 1 )
+        {
+            int penWidth = 32 - Integer.numberOfLeadingZeros( count );
+            stream.append( "    weight = " ).append( Integer.toString( count ) )
+                    .append( "\n    penwidth = " ).append( Integer.toString( penWidth ) ).append( '\n' );
+        }
         if ( reversed ) stream.append( "    dir = back\n" );
         if ( config.displayRelationshipLabel )
         {
-            stream.append( "    label = \"" + config.escapeLabel(config.getTitle( relationship )) + "\\n" );
+            stream.append( "    label = \"" );
+            config.emitTitle( relationship, stream );
+            stream.append( "\\n" );
         }
     }
 
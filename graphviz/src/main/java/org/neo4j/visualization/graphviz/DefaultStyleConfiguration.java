@@ -22,6 +22,8 @@ package org.neo4j.visualization.graphviz;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Predicate;
 
 import org.neo4j.graphdb.Node;
@@ -46,19 +48,97 @@ class DefaultStyleConfiguration implements StyleConfiguration
 
     public String escapeLabel( String label )
     {
-        label = label.replace( "\\", "\\\\" );
-        label = label.replace( "\"", "\\\"" );
-        label = label.replace( "'", "\\'" );
-        label = label.replace( "\n", "\\n" );
-        label = label.replace( "<", "\\<" );
-        label = label.replace( ">", "\\>" );
-        label = label.replace( "[", "\\[" );
-        label = label.replace( "]", "\\]" );
-        label = label.replace( "{", "\\{" );
-        label = label.replace( "}", "\\}" );
-        label = label.replace( "|", "\\|" );
+        int first = firstToEscape( label );
+        if ( first == -1 )
+        {
+            return label;
+        }
+        StringBuilder escaped = new StringBuilder( label.length() + 16 ).append( label, 0, first );
+        try
+        {
+            appendEscaped( escaped, label, first );
+        }
+        catch ( IOException e )
+        {
+            throw new AssertionError( "StringBuilder does not throw", e );
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Appends {@code label} {@link #escapeLabel(String) escaped} to {@code stream}, without building the
+     * escaped label first.
+     */
+    static void appendLabel( Appendable stream, String label ) throws IOException
+    {
+        int first = firstToEscape( label );
+        if ( first == -1 )
+        {
+            stream.append( label );
+        }
+        else
+        {
+            stream.append( label, 0, first );
+            appendEscaped( stream, label, first );
+        }
+    }
+
+    private static int firstToEscape( String label )
+    {
+        for ( int i = 0; i < label.length(); i++ )
+        {
+            if ( escapeOf( label.charAt( i ) ) != null )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void appendEscaped( Appendable stream, String label, int from ) throws IOException
+    {
+        int start = from;
+        for ( int i = from; i < label.length(); i++ )
+        {
+            String escape = escapeOf( label.charAt( i ) );
+            if ( escape != null )
+            {
+                stream.append( label, start, i ).append( escape );
+                start = i + 1;
+            }
+        }
+        stream.append( label, start, label.length() );
+    }
 
-        return label;
+    private static String escapeOf( char c )
+    {
+        switch ( c )
+        {
+            case '\\':
+                return "\\\\";
+            case '"':
+                return "\\\"";
+            case '\'':
+                return "\\'";
+            case '\n':
+                return "\\n";
+            case '<':
+                return "\\<";
+            case '>':
+                return "\\>";
+            case '[':
+                return "\\[";
+            case ']':
+                return "\\]";
+            case '{':
+                return "\\{";
+            case '}':
+                return "\\}";
+            case '|':
+                return "\\|";
+            default:
+                return null;
+        }
     }
 
     private final Map<String, String> header;
@@ -73,6 +153,7 @@ class DefaultStyleConfiguration implements StyleConfiguration
     private PropertyFormatter nodeFormat = null;
     private PropertyFormatter edgeFormat = null;
     private Predicate<Relationship> reversedRelationshipOrder = null;
+    private final ConcurrentMap<String, String> formattedKeys = new ConcurrentHashMap<>();
 
     boolean reverseOrder( Relationship edge )
     {
@@ -104,20 +185,50 @@ class DefaultStyleConfiguration implements StyleConfiguration
         emit( edge, edgeParams, stream );
     }
 
+    void preview( Node node )
+    {
+        preview( node, nodeParams );
+    }
+
+    void preview( Relationship edge )
+    {
+        preview( edge, edgeParams );
+    }
+
+    private static <C extends PropertyContainer> void preview( C container,
+        Map<String, ParameterGetter<? super C>> params )
+    {
+        for ( Map.Entry<String, ParameterGetter<? super C>> param : params.entrySet() )
+        {
+            param.getValue().getParameterValue( container, param.getKey() );
+        }
+    }
+
     private <C extends PropertyContainer> void emit( C container,
         Map<String, ParameterGetter<? super C>> params, Appendable stream )
         throws IOException
     {
-        for ( String key : params.keySet() )
+        for ( Map.Entry<String, ParameterGetter<? super C>> param : params.entrySet() )
         {
-            String value = params.get( key ).getParameterValue( container, key );
+            String key = param.getKey();
+            String value = param.getValue().getParameterValue( container, key );
             if ( value != null )
             {
-                stream.append( "    " + key + " = \"" + value + "\"\n" );
+                stream.append( "    " ).append( key ).append( " = \"" ).append( value ).append( "\"\n" );
             }
         }
     }
 
+    void emitTitle( Node node, Appendable stream ) throws IOException
+    {
+        appendLabel( stream, getTitle( node ) );
+    }
+
+    void emitTitle( Relationship edge, Appendable stream ) throws IOException
+    {
+        appendLabel( stream, getTitle( edge ) );
+    }
+
     String getTitle( Node node )
     {
         if ( nodeTitle != null )
@@ -169,29 +280,42 @@ class DefaultStyleConfiguration implements StyleConfiguration
     void emitNodeProperty( Appendable stream, String key, PropertyType type,
         Object value ) throws IOException
     {
-        if ( nodeFormat != null )
-        {
-            stream.append( nodeFormat.format( key, type, value ) + "\\l" );
-        }
-        else
-        {
-            stream.append( PropertyType.STRING.format(key) + " = " + PropertyType.format( value ) + " : "
-                + type.typeName + "\\l" );
-        }
+        emitProperty( stream, nodeFormat, key, type, value );
     }
 
     void emitRelationshipProperty( Appendable stream, String key,
         PropertyType type, Object value ) throws IOException
     {
-        if ( edgeFormat != null )
+        emitProperty( stream, edgeFormat, key, type, value );
+    }
+
+    private void emitProperty( Appendable stream, PropertyFormatter format, String key, PropertyType type,
+        Object value ) throws IOException
+    {
+        if ( format != null )
         {
-            stream.append( edgeFormat.format( key, type, value ) + "\\l" );
+            stream.append( format.format( key, type, value ) ).append( "\\l" );
         }
         else
         {
-            stream.append( PropertyType.STRING.format(key) + " = " + PropertyType.format( value ) + " : "
-                + type.typeName + "\\l" );
+            stream.append( formattedKey( key ) ).append( " = " ).append( PropertyType.format( value ) )
+                    .append( " : " ).append( type.typeName ).append( "\\l" );
+        }
+    }
+
+    /**
+     * Property keys are few and repeat on every node and relationship, so they are only formatted once. The
+     * configuration may be shared between styles and threads, hence the concurrent map.
+     */
+    private String formattedKey( String key )
+    {
+        String formatted = formattedKeys.get( key );
+        if ( formatted == null )
+        {
+            formatted = PropertyType.STRING.format( key );
+            formattedKeys.putIfAbsent( key, formatted );
         }
+        return formatted;
     }
 
     public void setRelationshipReverseOrderPredicate( Predicate<Relationship> reversed )
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.visualization.graphviz;
+
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveLongObjectMap;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+/**
+ * Keeps the graphviz output of nodes and relationships between renderings of a graph that changes little
+ * in between, see {@link GraphvizWriter#emit(java.io.Writer, org.neo4j.walk.Walker, DotFragmentCache)}.
+ * Register the cache as a transaction event handler of the database, so that nodes and relationships are
+ * rendered again once they have been changed.
+ * <p>
+ * A cached fragment is only used if the style starts the node or relationship exactly as it did when the
+ * fragment was cached, which takes care of state the style builds up while rendering, like automatic
+ * colors. The properties of a fragment are assumed to only depend on the kind of style, so a cache must
+ * only be used by writers with the same kind of style.
+ */
+public class DotFragmentCache extends TransactionEventHandler.Adapter<Void>
+{
+    private final PrimitiveLongObjectMap<Fragment> nodes = Primitive.longObjectMap();
+    private final PrimitiveLongObjectMap<Fragment> relationships = Primitive.longObjectMap();
+    private long reused;
+
+    @Override
+    public synchronized void afterCommit( TransactionData data, Void state )
+    {
+        for ( Node node : data.createdNodes() )
+        {
+            nodes.remove( node.getId() );
+        }
+        for ( Node node : data.deletedNodes() )
+        {
+            nodes.remove( node.getId() );
+        }
+        removeChanged( nodes, data.assignedNodeProperties() );
+        removeChanged( nodes, data.removedNodeProperties() );
+        for ( LabelEntry entry : data.assignedLabels() )
+        {
+            nodes.remove( entry.node().getId() );
+        }
+        for ( LabelEntry entry : data.removedLabels() )
+        {
+            nodes.remove( entry.node().getId() );
+        }
+        for ( Relationship relationship : data.createdRelationships() )
+        {
+            relationships.remove( relationship.getId() );
+        }
+        for ( Relationship relationship : data.deletedRelationships() )
+        {
+            relationships.remove( relationship.getId() );
+        }
+        removeChanged( relationships, data.assignedRelationshipProperties() );
+        removeChanged( relationships, data.removedRelationshipProperties() );
+    }
+
+    /**
+     * @return how many nodes and relationships have been emitted from this cache rather than rendered.
+     */
+    public synchronized long reusedFragments()
+    {
+        return reused;
+    }
+
+    public synchronized void clear()
+    {
+        nodes.clear();
+        relationships.clear();
+    }
+
+    synchronized String node( long id, CharSequence start )
+    {
+        return cached( nodes.get( id ), start );
+    }
+
+    synchronized String relationship( long id, CharSequence start )
+    {
+        return cached( relationships.get( id ), start );
+    }
+
+    synchronized String putNode( long id, int startLength, CharSequence fragment )
+    {
+        return put( nodes, id, startLength, fragment );
+    }
+
+    synchronized String putRelationship( long id, int startLength, CharSequence fragment )
+    {
+        return put( relationships, id, startLength, fragment );
+    }
+
+    private String cached( Fragment fragment, CharSequence start )
+    {
+        if ( fragment == null || !fragment.startsWith( start ) )
+        {
+            return null;
+        }
+        reused++;
+        return fragment.text;
+    }
+
+    private static String put( PrimitiveLongObjectMap<Fragment> fragments, long id, int startLength,
+            CharSequence fragment )
+    {
+        String text = fragment.toString();
+        fragments.put( id, new Fragment( text, startLength ) );
+        return text;
+    }
+
+    private static <T extends PropertyContainer> void removeChanged( PrimitiveLongObjectMap<Fragment> fragments,
+            Iterable<PropertyEntry<T>> changes )
+    {
+        for ( PropertyEntry<T> change : changes )
+        {
+            T entity = change.entity();
+            fragments.remove( entity instanceof Node ? ((Node) entity).getId() : ((Relationship) entity).getId() );
+        }
+    }
+
+    private static class Fragment
+    {
+        private final String text;
+        private final int startLength;
+
+        Fragment( String text, int startLength )
+        {
+            this.text = text;
+            this.startLength = startLength;
+        }
+
+        boolean startsWith( CharSequence start )
+        {
+            if ( start.length() != startLength )
+            {
+                return false;
+            }
+            for ( int i = 0; i < startLength; i++ )
+            {
+                if ( text.charAt( i ) != start.charAt( i ) )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
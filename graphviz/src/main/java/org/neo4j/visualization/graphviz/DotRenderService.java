@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.visualization.graphviz;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Lays out graphviz graphs as SVG with the {@code dot} program, on a bounded number of {@code dot} processes
+ * at a time, so that diagrams can be laid out in parallel while the documents they are in are written.
+ * <p>
+ * The SVG files are kept in a cache directory, named by a hash of the graph, so a graph that has been laid
+ * out before, by this service or an earlier one with the same directory, is never laid out again. The same
+ * graph requested twice at the same time is only laid out once.
+ * <p>
+ * Without a {@code dot} program nothing is laid out, see {@link #isAvailable()}.
+ */
+public class DotRenderService implements AutoCloseable
+{
+    private final File dot;
+    private final File cacheDirectory;
+    private final ExecutorService processes;
+    private final ConcurrentMap<String, Future<File>> rendering = new ConcurrentHashMap<>();
+
+    /**
+     * @param dot the {@code dot} program to run, or {@code null} to not lay anything out.
+     * @param cacheDirectory the directory to keep the SVG files in, which is created if needed.
+     * @param maxProcesses the highest number of {@code dot} processes to run at the same time.
+     */
+    public DotRenderService( File dot, File cacheDirectory, int maxProcesses ) throws IOException
+    {
+        this.dot = dot;
+        this.cacheDirectory = cacheDirectory;
+        Files.createDirectories( cacheDirectory.toPath() );
+        this.processes = dot == null ? null : Executors.newFixedThreadPool( maxProcesses, runnable ->
+        {
+            Thread thread = new Thread( runnable, "dot" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+    }
+
+    /**
+     * Lays out graphs with the {@code dot} program found on the {@code PATH}, if there is one.
+     */
+    public static DotRenderService onPath( File cacheDirectory, int maxProcesses ) throws IOException
+    {
+        return new DotRenderService( findOnPath( "dot" ), cacheDirectory, maxProcesses );
+    }
+
+    /**
+     * @return whether graphs are laid out, that is if there is a {@code dot} program to do it.
+     */
+    public boolean isAvailable()
+    {
+        return dot != null;
+    }
+
+    /**
+     * Lays out a graph in the background, unless it has been laid out before.
+     * @param graph
+     *            the graph in the graphviz format.
+     * @return the SVG file of the graph once it has been laid out, or {@code null} if the service is not
+     *         {@link #isAvailable() available}. Fails with an {@link IOException} with the messages from
+     *         {@code dot} if the graph could not be laid out.
+     */
+    public Future<File> render( String graph )
+    {
+        if ( dot == null )
+        {
+            return CompletableFuture.completedFuture( null );
+        }
+        String key = hash( graph );
+        File svg = new File( cacheDirectory, key + ".svg" );
+        if ( svg.exists() )
+        {
+            return CompletableFuture.completedFuture( svg );
+        }
+        return rendering.computeIfAbsent( key, ignored -> processes.submit( () ->
+        {
+            try
+            {
+                return layOut( graph, svg );
+            }
+            finally
+            {
+                rendering.remove( key );
+            }
+        } ) );
+    }
+
+    @Override
+    public void close()
+    {
+        if ( processes != null )
+        {
+            processes.shutdownNow();
+        }
+    }
+
+    private File layOut( String graph, File svg ) throws IOException, InterruptedException
+    {
+        if ( svg.exists() )
+        {
+            return svg;
+        }
+        File output = File.createTempFile( svg.getName(), ".tmp", cacheDirectory );
+        File errors = File.createTempFile( svg.getName(), ".err", cacheDirectory );
+        Process process = new ProcessBuilder( dot.getPath(), "-Tsvg" )
+                .redirectOutput( output )
+                .redirectError( errors )
+                .start();
+        try
+        {
+            try ( OutputStream in = process.getOutputStream() )
+            {
+                in.write( graph.getBytes( StandardCharsets.UTF_8 ) );
+            }
+            int exitValue = process.waitFor();
+            if ( exitValue != 0 )
+            {
+                String messages = new String( Files.readAllBytes( errors.toPath() ), StandardCharsets.UTF_8 );
+                throw new IOException( "dot exited with " + exitValue + ": " + messages.trim() );
+            }
+            Files.move( output.toPath(), svg.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE );
+            return svg;
+        }
+        finally
+        {
+            process.destroy();
+            Files.deleteIfExists( output.toPath() );
+            Files.deleteIfExists( errors.toPath() );
+        }
+    }
+
+    static File findOnPath( String program )
+    {
+        String path = System.getenv( "PATH" );
+        if ( path == null )
+        {
+            return null;
+        }
+        for ( String directory : path.split( File.pathSeparator ) )
+        {
+            for ( String name : new String[]{program, program + ".exe"} )
+            {
+                File candidate = new File( directory, name );
+                if ( candidate.isFile() && candidate.canExecute() )
+                {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String hash( String graph )
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance( "SHA-256" ).digest( graph.getBytes( StandardCharsets.UTF_8 ) );
+            StringBuilder hex = new StringBuilder( digest.length * 2 );
+            for ( byte b : digest )
+            {
+                hex.append( Character.forDigit( (b >> 4) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+            }
+            return hex.toString();
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new AssertionError( "SHA-256 is always supported", e );
+        }
+    }
+}
@@ -212,9 +212,10 @@ public class GraphStyle
     static void emitHeader( Appendable stream, Map<String, String> header )
         throws IOException
     {
-        for ( String key : header.keySet() )
+        for ( Map.Entry<String, String> entry : header.entrySet() )
         {
-            stream.append( "    " + key + " = \"" + header.get( key ) + "\"\n" );
+            stream.append( "    " ).append( entry.getKey() )
+                    .append( " = \"" ).append( entry.getValue() ).append( "\"\n" );
         }
     }
 
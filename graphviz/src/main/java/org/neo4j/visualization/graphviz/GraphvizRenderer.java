@@ -20,27 +20,39 @@
 package org.neo4j.visualization.graphviz;
 
 import java.io.IOException;
-import java.io.PrintStream;
 
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.visualization.GraphRenderer;
 import org.neo4j.visualization.PropertyRenderer;
 
 class GraphvizRenderer implements GraphRenderer<IOException>
 {
-    private final PrintStream stream;
+    private final Appendable stream;
     private final GraphStyle graphStyle;
     private final NodeStyle nodeStyle;
     private final RelationshipStyle edgeStyle;
 
-    GraphvizRenderer( GraphStyle style, PrintStream stream ) throws IOException
+    GraphvizRenderer( GraphStyle style, Appendable stream ) throws IOException
+    {
+        this( style, stream, true );
+    }
+
+    /**
+     * @param emitGraphStart {@code false} for rendering a part of a graph, whose start is emitted elsewhere.
+     */
+    GraphvizRenderer( GraphStyle style, Appendable stream, boolean emitGraphStart ) throws IOException
     {
         this.stream = stream;
         nodeStyle = style.nodeStyle;
         edgeStyle = style.edgeStyle;
         graphStyle = style;
-        graphStyle.emitGraphStart( stream );
+        if ( emitGraphStart )
+        {
+            graphStyle.emitGraphStart( stream );
+        }
     }
 
     public void done() throws IOException
@@ -60,6 +72,78 @@ class GraphvizRenderer implements GraphRenderer<IOException>
         return new PropertyAdapter( relationship );
     }
 
+    /**
+     * Emits a node as {@link #renderNode(Node)} and rendering all its properties would, reusing the output
+     * from {@code cache} if it is still the same.
+     */
+    void renderNode( Node node, DotFragmentCache cache ) throws IOException
+    {
+        StringBuilder fragment = new StringBuilder();
+        nodeStyle.emitNodeStart( fragment, node );
+        String text = cache.node( node.getId(), fragment );
+        if ( text == null )
+        {
+            int startLength = fragment.length();
+            for ( String key : node.getPropertyKeys() )
+            {
+                nodeStyle.emitProperty( fragment, key, node.getProperty( key ) );
+            }
+            nodeStyle.emitNodeEnd( fragment, node );
+            text = cache.putNode( node.getId(), startLength, fragment );
+        }
+        stream.append( text );
+    }
+
+    /**
+     * Emits a relationship as {@link #renderRelationship(Relationship)} and rendering all its properties
+     * would, reusing the output from {@code cache} if it is still the same.
+     */
+    void renderRelationship( Relationship relationship, DotFragmentCache cache ) throws IOException
+    {
+        StringBuilder fragment = new StringBuilder();
+        edgeStyle.emitRelationshipStart( fragment, relationship );
+        String text = cache.relationship( relationship.getId(), fragment );
+        if ( text == null )
+        {
+            int startLength = fragment.length();
+            for ( String key : relationship.getPropertyKeys() )
+            {
+                edgeStyle.emitProperty( fragment, key, relationship.getProperty( key ) );
+            }
+            edgeStyle.emitEnd( fragment );
+            text = cache.putRelationship( relationship.getId(), startLength, fragment );
+        }
+        stream.append( text );
+    }
+
+    /**
+     * Emits {@code count} relationships with the same start node, end node and type as {@code first} as a
+     * single edge, weighted by the count and with the count in place of the properties.
+     */
+    void renderRelationships( Relationship first, int count ) throws IOException
+    {
+        edgeStyle.emitRelationshipsStart( stream, first, count );
+        edgeStyle.emitProperty( stream, "count", count );
+        edgeStyle.emitEnd( stream );
+    }
+
+    /**
+     * Emits a node, with the given id, standing in for {@code count} relationships of {@code node} that are not
+     * drawn, and an edge between the two.
+     */
+    void renderSummary( String id, Node node, RelationshipType type, Direction direction, long count )
+            throws IOException
+    {
+        stream.append( "  " ).append( id ).append( " [\n    label = \"+" ).append( Long.toString( count ) )
+                .append( ' ' );
+        DefaultStyleConfiguration.appendLabel( stream, type.name() );
+        stream.append( "\"\n    style = \"dashed\"\n  ]\n" );
+        String nodeId = "N" + node.getId();
+        stream.append( "  " ).append( direction == Direction.OUTGOING ? nodeId : id )
+                .append( " -> " ).append( direction == Direction.OUTGOING ? id : nodeId )
+                .append( " [\n    style = \"dashed\"\n  ]\n" );
+    }
+
     public GraphvizRenderer renderSubgraph( String name ) throws IOException
     {
         return new GraphvizRenderer( graphStyle.getSubgraphStyle( name ), stream );
@@ -68,22 +152,32 @@ class GraphvizRenderer implements GraphRenderer<IOException>
     private class PropertyAdapter implements PropertyRenderer<IOException>
     {
         private final PropertyContainerStyle style;
+        private final Node node;
 
         PropertyAdapter( Node node ) throws IOException
         {
             nodeStyle.emitNodeStart( stream, node );
             this.style = nodeStyle;
+            this.node = node;
         }
 
         PropertyAdapter( Relationship relationship ) throws IOException
         {
             edgeStyle.emitRelationshipStart( stream, relationship );
             this.style = edgeStyle;
+            this.node = null;
         }
 
         public void done() throws IOException
         {
-            style.emitEnd( stream );
+            if ( node != null )
+            {
+                nodeStyle.emitNodeEnd( stream, node );
+            }
+            else
+            {
+                style.emitEnd( stream );
+            }
         }
 
         public void renderProperty( String propertyKey, Object propertyValue )
@@ -19,14 +19,33 @@
  */
 package org.neo4j.visualization.graphviz;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveLongSet;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.visualization.Visualizer;
+import org.neo4j.walk.ChunkedGraphWalker;
+import org.neo4j.walk.Visitor;
 import org.neo4j.walk.Walker;
 
 /**
@@ -64,9 +83,83 @@ public final class GraphvizWriter
      */
     public void emit( File dest, Walker walker ) throws IOException
     {
-        OutputStream stream = new FileOutputStream( dest );
-        emit( stream, walker );
-        stream.close();
+        try ( Writer writer = new BufferedWriter(
+                new OutputStreamWriter( new FileOutputStream( dest ), StandardCharsets.UTF_8 ) ) )
+        {
+            emit( writer, walker );
+        }
+    }
+
+    /**
+     * Emit a graph to a channel, such as a {@link java.nio.channels.FileChannel}, in graphviz format using
+     * this writer. The channel is not closed.
+     * @param channel
+     *            the channel to write the graph to.
+     * @param walker
+     *            a walker that walks the graph to emit.
+     * @throws IOException
+     *             if there is an error in outputting to the specified channel.
+     */
+    public void emit( WritableByteChannel channel, Walker walker ) throws IOException
+    {
+        Writer writer = new BufferedWriter( Channels.newWriter( channel, StandardCharsets.UTF_8.newEncoder(), -1 ) );
+        emit( writer, walker );
+        writer.flush();
+    }
+
+    /**
+     * Emit a graph to a writer in graphviz format using this writer, as it is walked, without buffering
+     * the output. The writer is not flushed or closed.
+     * @param writer
+     *            the writer to write the graph to.
+     * @param walker
+     *            a walker that walks the graph to emit.
+     * @throws IOException
+     *             if there is an error in outputting to the specified writer.
+     */
+    public void emit( Writer writer, Walker walker ) throws IOException
+    {
+        emit( walker, new GraphvizRenderer( style, writer ) );
+    }
+
+    /**
+     * Emit a graph to a writer in graphviz format using this writer, like {@link #emit(Writer, Walker)}, but
+     * with the output of nodes and relationships that have not changed since the last time taken from
+     * {@code cache} instead of rendered again.
+     * @param writer
+     *            the writer to write the graph to, is neither flushed nor closed.
+     * @param walker
+     *            a walker that walks the graph to emit.
+     * @param cache
+     *            the output of earlier graphs emitted by writers with the same kind of style.
+     * @throws IOException
+     *             if there is an error in outputting to the specified writer.
+     */
+    public void emit( Writer writer, Walker walker, DotFragmentCache cache ) throws IOException
+    {
+        walker.accept( new CachedRendering( new GraphvizRenderer( style, writer ), cache,
+                !walker.visitsEachEntityOnce() ) );
+    }
+
+    /**
+     * Emit a graph to a writer in graphviz format using this writer, with the relationships that have the same
+     * start node, end node and type drawn as one edge weighted by their number. Relationships of nodes with
+     * more than {@code denseDegree} relationships that are not drawn are summed up in one node per type and
+     * direction. Walking a {@link org.neo4j.walk.NodeSampler sample} of a big graph this way bounds the size
+     * of the output, and so the time it takes graphviz to lay it out.
+     * @param writer
+     *            the writer to write the graph to, is neither flushed nor closed.
+     * @param walker
+     *            a walker that walks the part of the graph to emit.
+     * @param denseDegree
+     *            the number of relationships above which the relationships of a node that are not drawn are
+     *            summed up.
+     * @throws IOException
+     *             if there is an error in outputting to the specified writer.
+     */
+    public void emitSummary( Writer writer, Walker walker, int denseDegree ) throws IOException
+    {
+        walker.accept( new SummarizingVisitor( new GraphvizRenderer( style, writer ), denseDegree ) );
     }
 
     /**
@@ -93,9 +186,174 @@ public final class GraphvizWriter
         }
     }
 
+    /**
+     * Emit a whole graph to a writer in graphviz format using this writer, rendering ranges of nodes on
+     * {@code parallelism} threads. The output is the same as from {@link #emit(Writer, Walker)} with the
+     * same walker.
+     * <p>
+     * Styles may hand out parameters in order of first appearance, like automatic colors. So before rendering
+     * in parallel, the parameters of every node and relationship are looked at in the sequential order, which
+     * is cheap compared to rendering the titles and properties. The style is then shared by the threads, so it
+     * must be safe to use from several threads, which holds for the styles of this package.
+     * @param writer
+     *            the writer to write the graph to, is neither flushed nor closed.
+     * @param walker
+     *            a walker that walks the graph to emit, which must not be limited.
+     * @param parallelism
+     *            the number of threads to render on.
+     * @throws IOException
+     *             if there is an error in outputting to the specified writer.
+     */
+    public void emit( Writer writer, ChunkedGraphWalker walker, int parallelism ) throws IOException
+    {
+        if ( walker.isLimited() )
+        {
+            throw new IllegalArgumentException( "Cannot emit a limited walk in parallel" );
+        }
+        List<Walker> chunks = walker.chunks();
+        StylePreview preview = new StylePreview();
+        for ( Walker chunk : chunks )
+        {
+            chunk.accept( preview );
+        }
+
+        ForkJoinPool pool = new ForkJoinPool( parallelism );
+        try
+        {
+            style.emitGraphStart( writer );
+            // keep a few chunks ahead of the writer, but never the whole graph in memory
+            Deque<Future<CharSequence>> rendering = new ArrayDeque<>();
+            Iterator<Walker> remaining = chunks.iterator();
+            while ( remaining.hasNext() || !rendering.isEmpty() )
+            {
+                while ( remaining.hasNext() && rendering.size() < 2 * parallelism )
+                {
+                    Walker chunk = remaining.next();
+                    rendering.add( pool.submit( () -> render( chunk ) ) );
+                }
+                writer.append( rendered( rendering.poll() ) );
+            }
+            style.emitGraphEnd( writer );
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    private CharSequence render( Walker chunk ) throws IOException
+    {
+        StringBuilder out = new StringBuilder();
+        chunk.accept( new Visualizer<>( new GraphvizRenderer( style, out, false ), false ) );
+        return out;
+    }
+
+    private static CharSequence rendered( Future<CharSequence> chunk ) throws IOException
+    {
+        try
+        {
+            return chunk.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while rendering" );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException( cause );
+        }
+    }
+
     private void emit( Walker walker, GraphvizRenderer renderer )
         throws IOException
     {
-        walker.accept( new Visualizer<>( renderer ) );
+        walker.accept( new Visualizer<>( renderer, !walker.visitsEachEntityOnce() ) );
+    }
+
+    private static class CachedRendering implements Visitor<Void, IOException>
+    {
+        private final GraphvizRenderer renderer;
+        private final DotFragmentCache cache;
+        private final PrimitiveLongSet visitedNodes;
+        private final PrimitiveLongSet visitedRelationships;
+
+        CachedRendering( GraphvizRenderer renderer, DotFragmentCache cache, boolean skipDuplicates )
+        {
+            this.renderer = renderer;
+            this.cache = cache;
+            this.visitedNodes = skipDuplicates ? Primitive.longSet() : null;
+            this.visitedRelationships = skipDuplicates ? Primitive.longSet() : null;
+        }
+
+        @Override
+        public void visitNode( Node node ) throws IOException
+        {
+            if ( visitedNodes == null || visitedNodes.add( node.getId() ) )
+            {
+                renderer.renderNode( node, cache );
+            }
+        }
+
+        @Override
+        public void visitRelationship( Relationship relationship ) throws IOException
+        {
+            if ( visitedRelationships == null || visitedRelationships.add( relationship.getId() ) )
+            {
+                renderer.renderRelationship( relationship, cache );
+            }
+        }
+
+        @Override
+        public Visitor<Void, IOException> visitSubgraph( String name ) throws IOException
+        {
+            return new CachedRendering( renderer.renderSubgraph( name ), cache, visitedNodes != null );
+        }
+
+        @Override
+        public Void done() throws IOException
+        {
+            renderer.done();
+            return null;
+        }
+    }
+
+    /**
+     * Looks at the parameters of every node and relationship, without emitting anything.
+     */
+    private class StylePreview implements Visitor<Void, RuntimeException>
+    {
+        @Override
+        public void visitNode( Node node )
+        {
+            style.nodeStyle.previewNode( node );
+        }
+
+        @Override
+        public void visitRelationship( Relationship relationship )
+        {
+            style.edgeStyle.previewRelationship( relationship );
+        }
+
+        @Override
+        public Visitor<Void, RuntimeException> visitSubgraph( String name )
+        {
+            return this;
+        }
+
+        @Override
+        public Void done()
+        {
+            return null;
+        }
     }
 }
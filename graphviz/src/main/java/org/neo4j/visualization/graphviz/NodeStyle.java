@@ -35,4 +35,26 @@ interface NodeStyle extends PropertyContainerStyle
      *             if there is an error on the stream.
      */
     void emitNodeStart( Appendable stream, Node node ) throws IOException;
+
+    /**
+     * Look at a node without emitting it, so that parameters handed out in order of first appearance, like
+     * automatic colors, are handed out as if the node was emitted.
+     * @param node
+     *            the node to look at.
+     */
+    void previewNode( Node node );
+
+    /**
+     * Emit the end of a node.
+     * @param stream
+     *            the stream to emit the node end to.
+     * @param node
+     *            the node to end, the same as was last started on this stream.
+     * @throws IOException
+     *             if there is an error on the stream.
+     */
+    default void emitNodeEnd( Appendable stream, Node node ) throws IOException
+    {
+        emitEnd( stream );
+    }
 }
@@ -36,4 +36,27 @@ interface RelationshipStyle extends PropertyContainerStyle
      */
     void emitRelationshipStart( Appendable stream, Relationship relationship )
         throws IOException;
+
+    /**
+     * Emit the start of an edge standing in for {@code count} relationships with the same start node, end
+     * node and type as {@code relationship}, weighted by their number.
+     * @param stream
+     *            the stream to emit the edge to.
+     * @param relationship
+     *            one of the relationships to emit.
+     * @param count
+     *            the number of relationships the edge stands in for.
+     * @throws IOException
+     *             if there is an error on the stream.
+     */
+    void emitRelationshipsStart( Appendable stream, Relationship relationship, int count )
+        throws IOException;
+
+    /**
+     * Look at a relationship without emitting it, so that parameters handed out in order of first appearance,
+     * like automatic colors, are handed out as if the relationship was emitted.
+     * @param relationship
+     *            the relationship to look at.
+     */
+    void previewRelationship( Relationship relationship );
 }
@@ -27,8 +27,6 @@ import org.neo4j.graphdb.Node;
 
 public class SimpleNodeStyle extends DefaultNodeStyle
 {
-    boolean hasLabels = false;
-
     SimpleNodeStyle( DefaultStyleConfiguration configuration )
     {
         super( configuration );
@@ -38,35 +36,26 @@ public class SimpleNodeStyle extends DefaultNodeStyle
     public void emitNodeStart( Appendable stream, Node node )
             throws IOException
     {
-        stream.append( "  N" + node.getId() + " [\n" );
+        emitNodeId( stream, node );
         config.emit( node, stream );
         stream.append( "    label = \"" );
         Iterator<Label> labels = node.getLabels().iterator();
-        hasLabels = labels.hasNext();
-        if ( hasLabels )
+        if ( labels.hasNext() )
         {
-            hasLabels = labels.hasNext();
-            if ( hasLabels )
-            {
-                stream.append( "{" );
-                while ( labels.hasNext() )
-                {
-                    stream.append( labels.next()
-                            .name() );
-                    if ( labels.hasNext() )
-                    {
-                        stream.append( ", " );
-                    }
-                }
-                stream.append( "|" );
-            }
+            stream.append( "{" );
+            emitLabels( stream, labels );
+            stream.append( "|" );
         }
     }
 
+    /**
+     * Whether the node had labels is looked up again rather than remembered from the start of the node, so
+     * that the style can be shared by renderers on several threads.
+     */
     @Override
-    public void emitEnd( Appendable stream ) throws IOException
+    public void emitNodeEnd( Appendable stream, Node node ) throws IOException
     {
-        if ( hasLabels )
+        if ( node.getLabels().iterator().hasNext() )
         {
             stream.append( "}\"\n  ]\n" );
         }
@@ -20,10 +20,10 @@
 package org.neo4j.visualization.graphviz;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
@@ -198,8 +198,8 @@ public interface StyleParameter
     /** Apply a color to a relationship based on the type of the relationship. */
     abstract class RelationshipTypeColor extends RelationshipColor
     {
-        private final Map<String, String> colors = new HashMap<>();
-        private final Map<String, String> fontColors = new HashMap<>();
+        private final Map<String, String> colors = new ConcurrentHashMap<>();
+        private final Map<String, String> fontColors = new ConcurrentHashMap<>();
 
         @Override
         protected final String getColor( Relationship relationship )
@@ -208,12 +208,7 @@ public interface StyleParameter
             String result = colors.get( type.name() );
             if ( result == null )
             {
-                result = getColor( type );
-                if ( result == null )
-                {
-                    result = "black";
-                }
-                colors.put( type.name(), result );
+                result = colors.computeIfAbsent( type.name(), name -> orBlack( getColor( type ) ) );
             }
             return result;
         }
@@ -225,16 +220,16 @@ public interface StyleParameter
             String result = fontColors.get( type.name() );
             if ( result == null )
             {
-                result = getFontColor( type );
-                if ( result == null )
-                {
-                    result = "black";
-                }
-                fontColors.put( type.name(), result );
+                result = fontColors.computeIfAbsent( type.name(), name -> orBlack( getFontColor( type ) ) );
             }
             return result;
         }
 
+        private static String orBlack( String color )
+        {
+            return color == null ? "black" : color;
+        }
+
         /**
          * Get the font color for a relationship type. Only invoked once for
          * each relationship type in the graph.
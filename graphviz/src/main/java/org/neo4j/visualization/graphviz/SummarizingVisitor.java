@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.visualization.graphviz;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveLongSet;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.visualization.PropertyRenderer;
+import org.neo4j.walk.Visitor;
+
+/**
+ * Renders a walk with the relationships that have the same start node, end node and type drawn as one edge,
+ * and with the relationships of dense nodes that are not drawn standing in as one node per type and
+ * direction. Relationships are held on to until the walk is done, so the walk should be bounded.
+ */
+class SummarizingVisitor implements Visitor<Void, IOException>
+{
+    private final GraphvizRenderer renderer;
+    private final Summary summary;
+    private final boolean subgraph;
+
+    SummarizingVisitor( GraphvizRenderer renderer, int denseDegree )
+    {
+        this( renderer, new Summary( denseDegree ), false );
+    }
+
+    private SummarizingVisitor( GraphvizRenderer renderer, Summary summary, boolean subgraph )
+    {
+        this.renderer = renderer;
+        this.summary = summary;
+        this.subgraph = subgraph;
+    }
+
+    @Override
+    public void visitNode( Node node ) throws IOException
+    {
+        if ( summary.nodes.add( node.getId() ) )
+        {
+            renderProperties( renderer.renderNode( node ), node );
+            if ( node.getDegree() > summary.denseDegree )
+            {
+                summary.denseNodes.add( node );
+            }
+        }
+    }
+
+    @Override
+    public void visitRelationship( Relationship relationship )
+    {
+        if ( summary.relationships.add( relationship.getId() ) )
+        {
+            summary.edges.computeIfAbsent( new EdgeKey( relationship ), key -> new Edge( relationship ) ).count++;
+        }
+    }
+
+    @Override
+    public Visitor<Void, IOException> visitSubgraph( String name ) throws IOException
+    {
+        return new SummarizingVisitor( renderer.renderSubgraph( name ), summary, true );
+    }
+
+    @Override
+    public Void done() throws IOException
+    {
+        if ( subgraph )
+        {
+            // relationships are rendered by the outermost visitor, once the whole walk is done
+            renderer.done();
+            return null;
+        }
+        Map<String, Integer> drawn = new HashMap<>();
+        for ( Edge edge : summary.edges.values() )
+        {
+            if ( edge.count == 1 )
+            {
+                renderProperties( renderer.renderRelationship( edge.first ), edge.first );
+            }
+            else
+            {
+                renderer.renderRelationships( edge.first, edge.count );
+            }
+            String type = edge.first.getType().name();
+            drawn.merge( end( edge.first.getStartNodeId(), Direction.OUTGOING, type ), edge.count, Integer::sum );
+            drawn.merge( end( edge.first.getEndNodeId(), Direction.INCOMING, type ), edge.count, Integer::sum );
+        }
+        int summaries = 0;
+        for ( Node node : summary.denseNodes )
+        {
+            for ( RelationshipType type : node.getRelationshipTypes() )
+            {
+                for ( Direction direction : new Direction[]{Direction.OUTGOING, Direction.INCOMING} )
+                {
+                    long notDrawn = node.getDegree( type, direction ) -
+                                    drawn.getOrDefault( end( node.getId(), direction, type.name() ), 0 );
+                    if ( notDrawn > 0 )
+                    {
+                        renderer.renderSummary( "S" + summaries++, node, type, direction, notDrawn );
+                    }
+                }
+            }
+        }
+        renderer.done();
+        return null;
+    }
+
+    private static String end( long nodeId, Direction direction, String type )
+    {
+        return nodeId + (direction == Direction.OUTGOING ? ">" : "<") + type;
+    }
+
+    private static void renderProperties( PropertyRenderer<IOException> propertyRenderer,
+            PropertyContainer container ) throws IOException
+    {
+        for ( String key : container.getPropertyKeys() )
+        {
+            propertyRenderer.renderProperty( key, container.getProperty( key ) );
+        }
+        propertyRenderer.done();
+    }
+
+    private static class Summary
+    {
+        private final int denseDegree;
+        private final PrimitiveLongSet nodes = Primitive.longSet();
+        private final PrimitiveLongSet relationships = Primitive.longSet();
+        private final List<Node> denseNodes = new ArrayList<>();
+        private final Map<EdgeKey, Edge> edges = new LinkedHashMap<>();
+
+        Summary( int denseDegree )
+        {
+            this.denseDegree = denseDegree;
+        }
+    }
+
+    private static class Edge
+    {
+        private final Relationship first;
+        private int count;
+
+        Edge( Relationship first )
+        {
+            this.first = first;
+        }
+    }
+
+    private static class EdgeKey
+    {
+        private final long startNode;
+        private final long endNode;
+        private final String type;
+
+        EdgeKey( Relationship relationship )
+        {
+            this.startNode = relationship.getStartNodeId();
+            this.endNode = relationship.getEndNodeId();
+            this.type = relationship.getType().name();
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() )
+            {
+                return false;
+            }
+            EdgeKey that = (EdgeKey) o;
+            return startNode == that.startNode && endNode == that.endNode && type.equals( that.type );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * (31 * Long.hashCode( startNode ) + Long.hashCode( endNode )) + type.hashCode();
+        }
+    }
+}
@@ -19,20 +19,28 @@
  */
 package org.neo4j.visualization.graphviz.color;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.visualization.graphviz.StyleParameter;
 
 /**
  * Color nodes automatically based on relationships. Use NodeColorConfig to set
  * different modes.
+ *
+ * Nodes are told apart by the set of relationship types they have, which is
+ * looked up through the degrees of the node per type, so that dense nodes are
+ * not slower to color than other nodes.
  */
 public class AutoNodeColor extends StyleParameter.NodeColor
 {
-    private final DefaultColorMapping<Set<String>> colors;
+    private final DefaultColorMapping<BitSet> colors;
+    private final ConcurrentMap<String, Integer> typeIds = new ConcurrentHashMap<String, Integer>();
+    private final AtomicInteger nextTypeId = new AtomicInteger();
     private Direction[] directions;
     private boolean differentiateOnDirection;
     private boolean differentiateOnDirectionOnly = false;
@@ -41,26 +49,26 @@ public class AutoNodeColor extends StyleParameter.NodeColor
     public AutoNodeColor()
     {
         NodeColorConfig.DEFAULT.configure( this );
-        this.colors = new DefaultColorMapping<Set<String>>();
+        this.colors = new DefaultColorMapping<BitSet>();
     }
 
     public AutoNodeColor( ColorMapper<Node> ncm )
     {
         NodeColorConfig.DEFAULT.configure( this );
-        this.colors = new DefaultColorMapping<Set<String>>( ncm.getColors() );
+        this.colors = new DefaultColorMapping<BitSet>( ncm.getColors() );
         this.ncm = ncm;
     }
 
     public AutoNodeColor( NodeColorConfig config )
     {
         config.configure( this );
-        this.colors = new DefaultColorMapping<Set<String>>();
+        this.colors = new DefaultColorMapping<BitSet>();
     }
 
     public AutoNodeColor( NodeColorConfig config, ColorMapper<Node> ncm )
     {
         config.configure( this );
-        this.colors = new DefaultColorMapping<Set<String>>( ncm.getColors() );
+        this.colors = new DefaultColorMapping<BitSet>( ncm.getColors() );
         this.ncm = ncm;
     }
 
@@ -75,33 +83,50 @@ public class AutoNodeColor extends StyleParameter.NodeColor
                 return colors.getColor( color );
             }
         }
-        Set<String> relationshipTypeAndDirections = new HashSet<String>();
-        for ( Direction direction : directions )
+        BitSet relationshipTypeAndDirections = new BitSet();
+        if ( differentiateOnDirectionOnly )
         {
-            if ( differentiateOnDirectionOnly )
+            for ( int i = 0; i < directions.length; i++ )
             {
-                if ( node.hasRelationship( direction ) )
+                if ( node.hasRelationship( directions[i] ) )
                 {
-                    relationshipTypeAndDirections.add( direction.name() );
+                    relationshipTypeAndDirections.set( i );
                 }
             }
+            return colors.getColor( relationshipTypeAndDirections );
+        }
+        for ( RelationshipType type : node.getRelationshipTypes() )
+        {
+            int typeId = typeId( type );
+            if ( directions.length > 1 && !differentiateOnDirection )
+            {
+                // a node has relationships of all its types in one direction or the other
+                relationshipTypeAndDirections.set( typeId );
+            }
             else
             {
-                for ( Relationship relationship : node.getRelationships( direction ) )
+                for ( int i = 0; i < directions.length; i++ )
                 {
-                    String key = relationship.getType()
-                            .name();
-                    if ( differentiateOnDirection )
+                    if ( node.getDegree( type, directions[i] ) > 0 )
                     {
-                        key += direction.name();
+                        relationshipTypeAndDirections.set( typeId * directions.length + i );
                     }
-                    relationshipTypeAndDirections.add( key );
                 }
             }
         }
         return colors.getColor( relationshipTypeAndDirections );
     }
 
+    private int typeId( RelationshipType type )
+    {
+        Integer id = typeIds.get( type.name() );
+        if ( id == null )
+        {
+            id = typeIds.computeIfAbsent( type.name(), name -> nextTypeId.getAndIncrement() );
+        }
+        return id;
+    }
+
     public enum NodeColorConfig
     {
         /**
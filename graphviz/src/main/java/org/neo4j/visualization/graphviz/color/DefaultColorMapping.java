@@ -22,9 +22,10 @@ package org.neo4j.visualization.graphviz.color;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A color mapper matching keys to colors, producing string representations of
@@ -32,12 +33,18 @@ import java.util.Map;
  *
  * The mapper uses the colors from {@link Color}, in the order they are defined
  * there. When running out of colors, it's starts over from the first one again.
+ *
+ * The mapper may be shared between threads. It remembers the colors of at most
+ * {@link #MAX_MAPPED_KEYS} keys, any keys after that get a color picked by
+ * their hash code, which is the same every time but may not be unique.
  */
 public class DefaultColorMapping<E>
 {
+    static final int MAX_MAPPED_KEYS = 4096;
+
     private final List<String> availableColors = new ArrayList<String>();
-    private int usedAvailableColors = 0;
-    private final Map<E, String> colorMappings = new HashMap<E, String>();
+    private final AtomicInteger usedAvailableColors = new AtomicInteger();
+    private final ConcurrentMap<E, String> colorMappings = new ConcurrentHashMap<E, String>();
 
     /**
      * Map colors using the full set of colors in {@link Color}.
@@ -84,14 +91,16 @@ public class DefaultColorMapping<E>
     protected String getColor( E key )
     {
         String color = colorMappings.get( key );
-        if ( color == null )
+        if ( color != null )
+        {
+            return color;
+        }
+        if ( colorMappings.size() >= MAX_MAPPED_KEYS )
         {
-            color = availableColors.get( usedAvailableColors
-                                         % availableColors.size() );
-            usedAvailableColors++;
-            colorMappings.put( key, color );
+            return availableColors.get( Math.floorMod( key.hashCode(), availableColors.size() ) );
         }
-        return color;
+        return colorMappings.computeIfAbsent( key, newKey -> availableColors.get(
+                usedAvailableColors.getAndIncrement() % availableColors.size() ) );
     }
 
     /**
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.visualization.json;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.visualization.GraphRenderer;
+import org.neo4j.visualization.PropertyRenderer;
+
+/**
+ * Renders a graph as a stream of JSON objects, in the order they are walked:
+ * <pre>
+ * {"graph":[
+ *   {"node":0,"labels":["Person"],"properties":{"name":"Emil"}},
+ *   {"relationship":0,"type":"KNOWS","start":0,"end":1,"properties":{}},
+ *   {"subgraph":"Sweden","graph":[...]}
+ * ]}
+ * </pre>
+ * Array properties are rendered as JSON arrays, and values that are neither strings, numbers nor booleans
+ * as strings.
+ */
+public class JsonGraphRenderer implements GraphRenderer<IOException>
+{
+    private final JsonGenerator generator;
+    private final boolean subgraph;
+    private final PropertyRenderer<IOException> properties = new PropertyRenderer<IOException>()
+    {
+        @Override
+        public void renderProperty( String propertyKey, Object propertyValue ) throws IOException
+        {
+            generator.writeFieldName( propertyKey );
+            writeValue( generator, propertyValue );
+        }
+
+        @Override
+        public void done() throws IOException
+        {
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+    };
+
+    /**
+     * @param generator the generator to write the graph to, which is flushed but not closed when the graph
+     * is done.
+     */
+    public JsonGraphRenderer( JsonGenerator generator ) throws IOException
+    {
+        this( generator, false );
+        generator.writeStartObject();
+        generator.writeArrayFieldStart( "graph" );
+    }
+
+    private JsonGraphRenderer( JsonGenerator generator, boolean subgraph )
+    {
+        this.generator = generator;
+        this.subgraph = subgraph;
+    }
+
+    @Override
+    public PropertyRenderer<IOException> renderNode( Node node ) throws IOException
+    {
+        generator.writeStartObject();
+        generator.writeNumberField( "node", node.getId() );
+        generator.writeArrayFieldStart( "labels" );
+        for ( Label label : node.getLabels() )
+        {
+            generator.writeString( label.name() );
+        }
+        generator.writeEndArray();
+        generator.writeObjectFieldStart( "properties" );
+        return properties;
+    }
+
+    @Override
+    public PropertyRenderer<IOException> renderRelationship( Relationship relationship ) throws IOException
+    {
+        generator.writeStartObject();
+        generator.writeNumberField( "relationship", relationship.getId() );
+        generator.writeStringField( "type", relationship.getType().name() );
+        generator.writeNumberField( "start", relationship.getStartNodeId() );
+        generator.writeNumberField( "end", relationship.getEndNodeId() );
+        generator.writeObjectFieldStart( "properties" );
+        return properties;
+    }
+
+    @Override
+    public void done() throws IOException
+    {
+        generator.writeEndArray();
+        generator.writeEndObject();
+        if ( !subgraph )
+        {
+            generator.flush();
+        }
+    }
+
+    @Override
+    public GraphRenderer<IOException> renderSubgraph( String name ) throws IOException
+    {
+        generator.writeStartObject();
+        generator.writeStringField( "subgraph", name );
+        generator.writeArrayFieldStart( "graph" );
+        return new JsonGraphRenderer( generator, true );
+    }
+
+    private static void writeValue( JsonGenerator generator, Object value ) throws IOException
+    {
+        if ( value instanceof String )
+        {
+            generator.writeString( (String) value );
+        }
+        else if ( value instanceof Integer || value instanceof Short || value instanceof Byte )
+        {
+            generator.writeNumber( ((Number) value).intValue() );
+        }
+        else if ( value instanceof Long )
+        {
+            generator.writeNumber( (Long) value );
+        }
+        else if ( value instanceof Double )
+        {
+            generator.writeNumber( (Double) value );
+        }
+        else if ( value instanceof Float )
+        {
+            generator.writeNumber( (Float) value );
+        }
+        else if ( value instanceof Boolean )
+        {
+            generator.writeBoolean( (Boolean) value );
+        }
+        else if ( value.getClass().isArray() )
+        {
+            generator.writeStartArray();
+            for ( int i = 0, length = Array.getLength( value ); i < length; i++ )
+            {
+                writeValue( generator, Array.get( value, i ) );
+            }
+            generator.writeEndArray();
+        }
+        else
+        {
+            generator.writeString( String.valueOf( value ) );
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.visualization.json;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.neo4j.visualization.Visualizer;
+import org.neo4j.walk.Walker;
+
+/**
+ * Writes graphs in the JSON format of {@link JsonGraphRenderer}, for tools that diff or store graphs rather
+ * than draw them.
+ */
+public final class JsonGraphWriter
+{
+    private static final JsonFactory JSON = new JsonFactory();
+
+    /**
+     * Emit a graph to a writer in JSON, without any whitespace.
+     * @param writer
+     *            the writer to write the graph to, is flushed but not closed.
+     * @param walker
+     *            a walker that walks the graph to emit.
+     * @throws IOException
+     *             if there is an error in outputting to the specified writer.
+     */
+    public void emit( Writer writer, Walker walker ) throws IOException
+    {
+        JsonGenerator generator = JSON.createJsonGenerator( writer );
+        walker.accept( new Visualizer<>( new JsonGraphRenderer( generator ), !walker.visitsEachEntityOnce() ) );
+    }
+}
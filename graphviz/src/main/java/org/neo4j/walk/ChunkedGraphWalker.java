@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.walk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.api.Statement;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.impl.store.id.IdGeneratorFactory;
+import org.neo4j.kernel.impl.store.id.IdType;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+/**
+ * Walks the whole graph in ranges of node ids, each range in a read transaction of its own, so that
+ * nothing is held on to between ranges and the graph can be written out with memory independent of its
+ * size. Must therefore be used outside of any transaction.
+ * <p>
+ * A relationship is visited together with the higher of the ids of its two nodes, so whenever the walk
+ * is cut off by a {@link #limit(long, long) budget} the relationships visited so far only connect nodes
+ * that were visited as well.
+ */
+public class ChunkedGraphWalker extends Walker
+{
+    private final GraphDatabaseService graphDb;
+    private final ThreadToStatementContextBridge statements;
+    private final int nodesPerTransaction;
+    private long maxNodes = Long.MAX_VALUE;
+    private long maxRelationships = Long.MAX_VALUE;
+    private boolean cutOff;
+
+    public ChunkedGraphWalker( GraphDatabaseService graphDb, int nodesPerTransaction )
+    {
+        if ( nodesPerTransaction < 1 )
+        {
+            throw new IllegalArgumentException( "Need at least one node per transaction, was " + nodesPerTransaction );
+        }
+        this.graphDb = graphDb;
+        this.statements = statements( graphDb );
+        this.nodesPerTransaction = nodesPerTransaction;
+    }
+
+    /**
+     * Stops the walk once {@code maxNodes} nodes or {@code maxRelationships} relationships have been visited.
+     */
+    public ChunkedGraphWalker limit( long maxNodes, long maxRelationships )
+    {
+        this.maxNodes = maxNodes;
+        this.maxRelationships = maxRelationships;
+        return this;
+    }
+
+    /**
+     * @return whether the last walk was stopped by the budget before it had visited the whole graph.
+     */
+    public boolean wasCutOff()
+    {
+        return cutOff;
+    }
+
+    @Override
+    public boolean visitsEachEntityOnce()
+    {
+        return true;
+    }
+
+    /**
+     * @return whether a {@link #limit(long, long) budget} has been set for this walker.
+     */
+    public boolean isLimited()
+    {
+        return maxNodes != Long.MAX_VALUE || maxRelationships != Long.MAX_VALUE;
+    }
+
+    @Override
+    public <R, E extends Throwable> R accept( Visitor<R, E> visitor ) throws E
+    {
+        cutOff = false;
+        Budget budget = new Budget( maxNodes, maxRelationships );
+        long highestId = highestPossibleNodeId();
+        for ( long from = 0; from <= highestId && !cutOff; from += nodesPerTransaction )
+        {
+            cutOff = !walk( from, Math.min( from + nodesPerTransaction, highestId + 1 ), visitor, budget );
+        }
+        return visitor.done();
+    }
+
+    /**
+     * Splits this walk into one walker per range of node ids, each visiting what this walker would visit for
+     * that range, in the same order, but without {@link Visitor#done() finishing} the visitor. Walking the
+     * chunks one after the other thus visits the same as walking this walker, except for any budget, and
+     * the chunks may be walked concurrently.
+     */
+    public List<Walker> chunks()
+    {
+        long highestId = highestPossibleNodeId();
+        List<Walker> chunks = new ArrayList<>();
+        for ( long from = 0; from <= highestId; from += nodesPerTransaction )
+        {
+            long chunkFrom = from;
+            long chunkTo = Math.min( from + nodesPerTransaction, highestId + 1 );
+            chunks.add( new Walker()
+            {
+                @Override
+                public boolean visitsEachEntityOnce()
+                {
+                    return true;
+                }
+
+                @Override
+                public <R, E extends Throwable> R accept( Visitor<R, E> visitor ) throws E
+                {
+                    walk( chunkFrom, chunkTo, visitor, new Budget( Long.MAX_VALUE, Long.MAX_VALUE ) );
+                    return null;
+                }
+            } );
+        }
+        return chunks;
+    }
+
+    /**
+     * Visits the nodes with ids in {@code [from, to)} in a transaction of its own.
+     *
+     * @return {@code false} if the walk was cut off by the budget.
+     */
+    private <E extends Throwable> boolean walk( long from, long to, Visitor<?, E> visitor, Budget budget ) throws E
+    {
+        try ( Transaction tx = graphDb.beginTx() )
+        {
+            for ( long id = from; id < to; id++ )
+            {
+                Node node = nodeOrNull( graphDb, statements, id );
+                if ( node == null )
+                {
+                    continue;
+                }
+                if ( budget.nodes-- == 0 )
+                {
+                    return false;
+                }
+                visitor.visitNode( node );
+                for ( Relationship relationship : node.getRelationships( Direction.BOTH ) )
+                {
+                    if ( relationship.getOtherNodeId( id ) <= id )
+                    {
+                        if ( budget.relationships-- == 0 )
+                        {
+                            return false;
+                        }
+                        visitor.visitRelationship( relationship );
+                    }
+                }
+            }
+            tx.success();
+            return true;
+        }
+    }
+
+    private long highestPossibleNodeId()
+    {
+        return highestPossibleId( graphDb, IdType.NODE );
+    }
+
+    static long highestPossibleId( GraphDatabaseService graphDb, IdType type )
+    {
+        return ((GraphDatabaseAPI) graphDb).getDependencyResolver().resolveDependency( IdGeneratorFactory.class )
+                .get( type ).getHighestPossibleIdInUse();
+    }
+
+    static ThreadToStatementContextBridge statements( GraphDatabaseService graphDb )
+    {
+        return ((GraphDatabaseAPI) graphDb).getDependencyResolver()
+                .resolveDependency( ThreadToStatementContextBridge.class );
+    }
+
+    /**
+     * @return the node with the given id, or {@code null} if it was deleted or never used. This is checked
+     * through the kernel first, since the core API throws for every unused id, and there may be many of those.
+     */
+    static Node nodeOrNull( GraphDatabaseService graphDb, ThreadToStatementContextBridge statements, long id )
+    {
+        try ( Statement statement = statements.get() )
+        {
+            return statement.readOperations().nodeExists( id ) ? graphDb.getNodeById( id ) : null;
+        }
+    }
+
+    private static class Budget
+    {
+        private long nodes;
+        private long relationships;
+
+        Budget( long nodes, long relationships )
+        {
+            this.nodes = nodes;
+            this.relationships = relationships;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.walk;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.impl.store.id.IdType;
+
+/**
+ * Picks a bounded number of nodes from a graph that is too big to look at as a whole, by looking up random
+ * ids, so that the time taken depends on the size of the sample rather than on the size of the graph. Must
+ * be used within a transaction.
+ */
+public class NodeSampler
+{
+    public enum Strategy
+    {
+        /**
+         * Follows random relationships from a random node, starting over from another random node now and
+         * then, so the sample is made up of connected neighbourhoods.
+         */
+        RANDOM_WALK,
+        /**
+         * Picks an end of random relationships, so that nodes are picked in proportion to their degree.
+         */
+        DEGREE_BIASED
+    }
+
+    private static final double RESTART_PROBABILITY = 0.15;
+    private static final int ATTEMPTS_PER_NODE = 32;
+    private static final int MAX_RELATIONSHIPS_TO_CHOOSE_FROM = 1024;
+    private static final Direction[] DIRECTIONS = {Direction.OUTGOING, Direction.INCOMING};
+
+    private final GraphDatabaseService graphDb;
+    private final ThreadToStatementContextBridge statements;
+    private final Random random;
+
+    public NodeSampler( GraphDatabaseService graphDb, long seed )
+    {
+        this.graphDb = graphDb;
+        this.statements = ChunkedGraphWalker.statements( graphDb );
+        this.random = new Random( seed );
+    }
+
+    /**
+     * @return a walker over at most {@code maxNodes} nodes, fewer if the graph is small or sparsely
+     * populated with ids in use.
+     */
+    public NodeSetWalker sample( int maxNodes, Strategy strategy )
+    {
+        NodeSetWalker sample = new NodeSetWalker( graphDb );
+        long highestNodeId = ChunkedGraphWalker.highestPossibleId( graphDb, IdType.NODE );
+        long highestRelationshipId = ChunkedGraphWalker.highestPossibleId( graphDb, IdType.RELATIONSHIP );
+        Node current = null;
+        long attempts = (long) maxNodes * ATTEMPTS_PER_NODE;
+        while ( sample.size() < maxNodes && attempts-- > 0 )
+        {
+            if ( strategy == Strategy.DEGREE_BIASED && highestRelationshipId >= 0 )
+            {
+                current = endOfRandomRelationship( highestRelationshipId );
+            }
+            else if ( current == null || random.nextDouble() < RESTART_PROBABILITY )
+            {
+                current = randomNode( highestNodeId );
+            }
+            else
+            {
+                current = randomNeighbour( current );
+            }
+            if ( current != null )
+            {
+                sample.add( current.getId() );
+            }
+        }
+        return sample;
+    }
+
+    private Node randomNode( long highestId )
+    {
+        return ChunkedGraphWalker.nodeOrNull( graphDb, statements, (long) (random.nextDouble() * (highestId + 1)) );
+    }
+
+    private Node endOfRandomRelationship( long highestId )
+    {
+        try
+        {
+            Relationship relationship =
+                    graphDb.getRelationshipById( (long) (random.nextDouble() * (highestId + 1)) );
+            return random.nextBoolean() ? relationship.getStartNode() : relationship.getEndNode();
+        }
+        catch ( NotFoundException e )
+        {
+            // the kernel has no way to tell whether a relationship id is in use without throwing either
+            return null;
+        }
+    }
+
+    /**
+     * Picks a type and direction in proportion to the degree of the node for it, and then a relationship of
+     * that type and direction. Only the first relationships of a type and direction are chosen among, rather
+     * than going through all of them, so for the very dense ones the choice is biased within the type and
+     * direction, but not towards the relationships the node happens to list first.
+     */
+    private Node randomNeighbour( Node node )
+    {
+        int degree = node.getDegree( Direction.OUTGOING ) + node.getDegree( Direction.INCOMING );
+        if ( degree == 0 )
+        {
+            return null;
+        }
+        int chosen = random.nextInt( degree );
+        for ( RelationshipType type : node.getRelationshipTypes() )
+        {
+            for ( Direction direction : DIRECTIONS )
+            {
+                int typeDegree = node.getDegree( type, direction );
+                if ( chosen < typeDegree )
+                {
+                    return randomNeighbour( node, type, direction, typeDegree );
+                }
+                chosen -= typeDegree;
+            }
+        }
+        // the degrees changed since we summed them up
+        return null;
+    }
+
+    private Node randomNeighbour( Node node, RelationshipType type, Direction direction, int degree )
+    {
+        Iterator<Relationship> relationships = node.getRelationships( type, direction ).iterator();
+        for ( int skip = random.nextInt( Math.min( degree, MAX_RELATIONSHIPS_TO_CHOOSE_FROM ) );
+              skip > 0 && relationships.hasNext(); skip-- )
+        {
+            relationships.next();
+        }
+        return relationships.hasNext() ? relationships.next().getOtherNode( node ) : null;
+    }
+}
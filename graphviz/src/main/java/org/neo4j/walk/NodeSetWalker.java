@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.walk;
+
+import java.util.Arrays;
+
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveLongIntMap;
+import org.neo4j.collection.primitive.PrimitiveLongIterator;
+import org.neo4j.collection.primitive.PrimitiveLongSet;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * Walks a set of nodes, in order of id, and the relationships between them, optionally only those of some
+ * types. Must be used within a transaction.
+ * <p>
+ * Only node ids are kept, in a primitive set, and each relationship is visited once, when reading the
+ * relationships of the endpoint with the lower degree. So the relationships of the densest node of the set
+ * are never read, since all of those to other nodes of the set are found from the other ends. Only its
+ * loops, if its degrees say it has any, are read by type from the node itself.
+ */
+public class NodeSetWalker extends Walker
+{
+    private final GraphDatabaseService graphDb;
+    private final RelationshipType[] types;
+    private final PrimitiveLongSet nodeIds = Primitive.longSet();
+    private int maxRelationshipsPerNode = Integer.MAX_VALUE;
+
+    public NodeSetWalker( GraphDatabaseService graphDb, RelationshipType... types )
+    {
+        this.graphDb = graphDb;
+        this.types = types;
+    }
+
+    public NodeSetWalker add( long nodeId )
+    {
+        nodeIds.add( nodeId );
+        return this;
+    }
+
+    public NodeSetWalker addAll( Iterable<Node> nodes )
+    {
+        for ( Node node : nodes )
+        {
+            nodeIds.add( node.getId() );
+        }
+        return this;
+    }
+
+    public int size()
+    {
+        return nodeIds.size();
+    }
+
+    /**
+     * Looks at no more than {@code max} relationships of each node, so that walking a set with a few very dense
+     * nodes in it stays cheap, at the price of missing some relationships between dense nodes.
+     */
+    public NodeSetWalker limitRelationshipsPerNode( int max )
+    {
+        this.maxRelationshipsPerNode = max;
+        return this;
+    }
+
+    @Override
+    public boolean visitsEachEntityOnce()
+    {
+        return true;
+    }
+
+    @Override
+    public <R, E extends Throwable> R accept( Visitor<R, E> visitor ) throws E
+    {
+        long[] ids = sortedIds();
+        PrimitiveLongIntMap degrees = Primitive.longIntMap( ids.length );
+        long densest = -1;
+        for ( long id : ids )
+        {
+            int degree = degree( graphDb.getNodeById( id ) );
+            degrees.put( id, degree );
+            if ( densest == -1 || ranksBelow( degrees.get( densest ), densest, degree, id ) )
+            {
+                densest = id;
+            }
+        }
+
+        for ( long id : ids )
+        {
+            Node node = graphDb.getNodeById( id );
+            visitor.visitNode( node );
+            if ( id == densest )
+            {
+                visitLoops( node, visitor );
+                continue;
+            }
+            int degree = degrees.get( id );
+            int remaining = maxRelationshipsPerNode;
+            for ( Relationship relationship : relationships( node ) )
+            {
+                if ( remaining-- == 0 )
+                {
+                    break;
+                }
+                long otherId = relationship.getOtherNodeId( id );
+                int otherDegree = degrees.get( otherId );
+                if ( otherDegree != -1 && (otherId == id || ranksBelow( degree, id, otherDegree, otherId )) )
+                {
+                    visitor.visitRelationship( relationship );
+                }
+            }
+        }
+        return visitor.done();
+    }
+
+    /**
+     * A loop is counted in both the outgoing and the incoming degree of its node, but only once in the total.
+     */
+    private <R, E extends Throwable> void visitLoops( Node node, Visitor<R, E> visitor ) throws E
+    {
+        for ( RelationshipType type : types.length == 0 ? node.getRelationshipTypes() : Arrays.asList( types ) )
+        {
+            if ( node.getDegree( type, Direction.OUTGOING ) + node.getDegree( type, Direction.INCOMING ) >
+                    node.getDegree( type ) )
+            {
+                for ( Relationship relationship : node.getRelationships( Direction.OUTGOING, type ) )
+                {
+                    if ( relationship.getEndNodeId() == node.getId() )
+                    {
+                        visitor.visitRelationship( relationship );
+                    }
+                }
+            }
+        }
+    }
+
+    private long[] sortedIds()
+    {
+        long[] ids = new long[nodeIds.size()];
+        int i = 0;
+        for ( PrimitiveLongIterator iterator = nodeIds.iterator(); iterator.hasNext(); )
+        {
+            ids[i++] = iterator.next();
+        }
+        Arrays.sort( ids );
+        return ids;
+    }
+
+    private Iterable<Relationship> relationships( Node node )
+    {
+        return types.length == 0 ? node.getRelationships() : node.getRelationships( types );
+    }
+
+    private int degree( Node node )
+    {
+        if ( types.length == 0 )
+        {
+            return node.getDegree();
+        }
+        int degree = 0;
+        for ( RelationshipType type : types )
+        {
+            degree += node.getDegree( type );
+        }
+        return degree;
+    }
+
+    private static boolean ranksBelow( int degree, long id, int otherDegree, long otherId )
+    {
+        return degree != otherDegree ? degree < otherDegree : id < otherId;
+    }
+}
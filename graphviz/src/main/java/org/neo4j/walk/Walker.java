@@ -19,9 +19,6 @@
  */
 package org.neo4j.walk;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
@@ -32,10 +29,25 @@ public abstract class Walker
 {
     public abstract <R, E extends Throwable> R accept( Visitor<R, E> visitor ) throws E;
 
+    /**
+     * @return whether this walker never visits the same node or relationship twice, in which case visitors
+     * need not keep track of what they have seen.
+     */
+    public boolean visitsEachEntityOnce()
+    {
+        return false;
+    }
+
     public static Walker fullGraph( final GraphDatabaseService graphDb )
     {
         return new Walker()
         {
+            @Override
+            public boolean visitsEachEntityOnce()
+            {
+                return true;
+            }
+
             @Override
             public <R, E extends Throwable> R accept( Visitor<R, E> visitor ) throws E
             {
@@ -52,29 +64,44 @@ public abstract class Walker
         };
     }
 
+    /**
+     * Walks the whole graph in transactions of its own, see {@link ChunkedGraphWalker}.
+     */
+    public static ChunkedGraphWalker fullGraph( GraphDatabaseService graphDb, int nodesPerTransaction )
+    {
+        return new ChunkedGraphWalker( graphDb, nodesPerTransaction );
+    }
+
+    /**
+     * Walks the given nodes and the relationships of the given types between them, see {@link NodeSetWalker}.
+     */
     public static Walker crosscut( Iterable<Node> traverser, final RelationshipType... types )
     {
-        final Set<Node> nodes = new HashSet<Node>();
+        NodeSetWalker walker = null;
         for ( Node node : traverser )
         {
-            nodes.add( node );
+            if ( walker == null )
+            {
+                walker = new NodeSetWalker( node.getGraphDatabase(), types );
+            }
+            walker.add( node.getId() );
         }
+        return walker != null ? walker : empty();
+    }
+
+    private static Walker empty()
+    {
         return new Walker()
         {
+            @Override
+            public boolean visitsEachEntityOnce()
+            {
+                return true;
+            }
+
             @Override
             public <R, E extends Throwable> R accept( Visitor<R, E> visitor ) throws E
             {
-                for ( Node node : nodes )
-                {
-                    visitor.visitNode( node );
-                    for ( Relationship relationship : node.getRelationships( types ) )
-                    {
-                        if ( nodes.contains( relationship.getOtherNode( node ) ) )
-                        {
-                            visitor.visitRelationship( relationship );
-                        }
-                    }
-                }
                 return visitor.done();
             }
         };
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.visualization.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DatabaseRule;
+import org.neo4j.test.rule.ImpermanentDatabaseRule;
+import org.neo4j.visualization.PropertyType;
+import org.neo4j.walk.Walker;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.hasItems;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class TestBinaryGraphWriter
+{
+    @Rule
+    public final DatabaseRule dbRule = new ImpermanentDatabaseRule();
+
+    @Test
+    public void shouldWriteEachStringOfTheStringTableOnce() throws Exception
+    {
+        GraphDatabaseService db = dbRule.getGraphDatabaseAPI();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try ( Transaction tx = db.beginTx() )
+        {
+            Node previous = null;
+            for ( int i = 0; i < 10; i++ )
+            {
+                Node node = db.createNode( Label.label( "Person" ) );
+                node.setProperty( "name", "person " + i );
+                node.setProperty( "age", -i );
+                if ( previous != null )
+                {
+                    previous.createRelationshipTo( node, RelationshipType.withName( "KNOWS" ) )
+                            .setProperty( "weights", new double[]{0.5, i} );
+                }
+                previous = node;
+            }
+            new BinaryGraphWriter().emit( out, Walker.fullGraph( db ) );
+            tx.success();
+        }
+
+        Decoder decoder = new Decoder( out.toByteArray() );
+        assertEquals( asList( "Person", "name", "age", "KNOWS", "weights" ), decoder.strings );
+        assertEquals( 10, decoder.nodes );
+        assertEquals( 9, decoder.relationships );
+        assertThat( decoder.values, hasItems( "person 9", -9L, 9.0 ) );
+    }
+
+    /**
+     * Reads all of the format apart from subgraphs, which the full graph walker does not have.
+     */
+    private static class Decoder
+    {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+        private final List<Object> values = new ArrayList<>();
+        private int nodes;
+        private int relationships;
+
+        Decoder( byte[] bytes ) throws IOException
+        {
+            in = new DataInputStream( new ByteArrayInputStream( bytes ) );
+            byte[] header = new byte[4];
+            in.readFully( header );
+            assertEquals( "NGB", new String( header, 0, 3, StandardCharsets.US_ASCII ) );
+            assertEquals( BinaryGraphRenderer.VERSION, header[3] );
+            for ( int tag = in.readByte(); tag != BinaryGraphRenderer.END; tag = in.readByte() )
+            {
+                readUnsigned();
+                if ( tag == BinaryGraphRenderer.NODE )
+                {
+                    nodes++;
+                    for ( long labels = readUnsigned(); labels > 0; labels-- )
+                    {
+                        readReference();
+                    }
+                }
+                else
+                {
+                    assertEquals( BinaryGraphRenderer.RELATIONSHIP, tag );
+                    relationships++;
+                    readReference();
+                    readUnsigned();
+                    readUnsigned();
+                }
+                for ( int type = in.readByte(); type != 0; type = in.readByte() )
+                {
+                    readReference();
+                    readValue( PropertyType.values()[type - 1] );
+                }
+            }
+            assertEquals( -1, in.read() );
+        }
+
+        private void readValue( PropertyType type ) throws IOException
+        {
+            switch ( type )
+            {
+                case STRING:
+                    values.add( readString() );
+                    break;
+                case INT:
+                    long value = readUnsigned();
+                    values.add( (value >>> 1) ^ -(value & 1) );
+                    break;
+                case DOUBLE_ARRAY:
+                    for ( long length = readUnsigned(); length > 0; length-- )
+                    {
+                        values.add( in.readDouble() );
+                    }
+                    break;
+                default:
+                    throw new AssertionError( type );
+            }
+        }
+
+        private void readReference() throws IOException
+        {
+            if ( readUnsigned() == strings.size() )
+            {
+                strings.add( readString() );
+            }
+        }
+
+        private String readString() throws IOException
+        {
+            byte[] bytes = new byte[(int) readUnsigned()];
+            in.readFully( bytes );
+            return new String( bytes, StandardCharsets.UTF_8 );
+        }
+
+        private long readUnsigned() throws IOException
+        {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do
+            {
+                b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            }
+            while ( (b & 0x80) != 0 );
+            return value;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.visualization.graphviz;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DatabaseRule;
+import org.neo4j.test.rule.ImpermanentDatabaseRule;
+import org.neo4j.walk.ChunkedGraphWalker;
+import org.neo4j.walk.Walker;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestChunkedGraphvizOutput
+{
+    private static final Pattern NODE = Pattern.compile( "^  N(\\d+) \\[$", Pattern.MULTILINE );
+    private static final Pattern NODE_COLOR = Pattern.compile( "^    color = \"([^\"]+)\"$", Pattern.MULTILINE );
+    private static final Pattern EDGE = Pattern.compile( "^  N(\\d+) -> N(\\d+) \\[$", Pattern.MULTILINE );
+
+    @Rule
+    public final DatabaseRule dbRule = new ImpermanentDatabaseRule();
+
+    @Test
+    public void shouldEmitSameGraphAsSingleTransactionWalk() throws Exception
+    {
+        GraphDatabaseService db = dbRule.getGraphDatabaseAPI();
+        createRing( db, 50 );
+
+        String expected;
+        try ( Transaction tx = db.beginTx() )
+        {
+            expected = emit( Walker.fullGraph( db ) );
+            tx.success();
+        }
+        ChunkedGraphWalker walker = Walker.fullGraph( db, 7 );
+        String chunked = emit( walker );
+
+        assertFalse( walker.wasCutOff() );
+        assertEquals( blocks( expected ), blocks( chunked ) );
+        assertTrue( chunked.startsWith( "digraph Neo {" ) );
+        assertTrue( chunked.endsWith( "}\n" ) );
+    }
+
+    @Test
+    public void shouldOnlyEmitRelationshipsBetweenEmittedNodesWhenCutOff() throws Exception
+    {
+        GraphDatabaseService db = dbRule.getGraphDatabaseAPI();
+        createRing( db, 50 );
+
+        ChunkedGraphWalker walker = Walker.fullGraph( db, 7 ).limit( 20, Long.MAX_VALUE );
+        String output = emit( walker );
+
+        assertTrue( walker.wasCutOff() );
+        assertTrue( output.endsWith( "}\n" ) );
+        Set<String> nodes = nodeIds( output );
+        assertEquals( 20, nodes.size() );
+        Matcher edges = EDGE.matcher( output );
+        int edgeCount = 0;
+        while ( edges.find() )
+        {
+            assertTrue( nodes.contains( edges.group( 1 ) ) );
+            assertTrue( nodes.contains( edges.group( 2 ) ) );
+            edgeCount++;
+        }
+        assertEquals( 19, edgeCount );
+    }
+
+    @Test
+    public void shouldStopAtRelationshipBudgetAndSkipDeletedNodes() throws Exception
+    {
+        GraphDatabaseService db = dbRule.getGraphDatabaseAPI();
+        List<Node> nodes = createRing( db, 30 );
+        try ( Transaction tx = db.beginTx() )
+        {
+            Node deleted = nodes.get( 10 );
+            deleted.getRelationships().forEach( relationship -> relationship.delete() );
+            deleted.delete();
+            tx.success();
+        }
+
+        String complete = emit( Walker.fullGraph( db, 4 ) );
+        assertEquals( 29, matches( NODE, complete ).size() );
+        assertEquals( 28, matches( EDGE, complete ).size() );
+
+        ChunkedGraphWalker walker = Walker.fullGraph( db, 4 ).limit( Long.MAX_VALUE, 5 );
+        String output = emit( walker );
+        assertTrue( walker.wasCutOff() );
+        assertEquals( 5, matches( EDGE, output ).size() );
+    }
+
+    @Test
+    public void shouldEmitSameOutputInParallel() throws Exception
+    {
+        GraphDatabaseService db = dbRule.getGraphDatabaseAPI();
+        createRandomGraph( db );
+
+        for ( int parallelism : new int[]{1, 3, 8} )
+        {
+            StringWriter sequential = new StringWriter();
+            new GraphvizWriter( AsciiDocStyle.withAutomaticRelationshipTypeColors() )
+                    .emit( sequential, Walker.fullGraph( db, 9 ) );
+            StringWriter parallel = new StringWriter();
+            new GraphvizWriter( AsciiDocStyle.withAutomaticRelationshipTypeColors() )
+                    .emit( parallel, Walker.fullGraph( db, 9 ), parallelism );
+            assertEquals( sequential.toString(), parallel.toString() );
+
+            sequential = new StringWriter();
+            new GraphvizWriter( AsciiDocSimpleStyle.withAutomaticNodeAndRelationshipTypeColors() )
+                    .emit( sequential, Walker.fullGraph( db, 9 ) );
+            parallel = new StringWriter();
+            new GraphvizWriter( AsciiDocSimpleStyle.withAutomaticNodeAndRelationshipTypeColors() )
+                    .emit( parallel, Walker.fullGraph( db, 9 ), parallelism );
+            assertEquals( sequential.toString(), parallel.toString() );
+        }
+    }
+
+    @Test
+    public void shouldGiveNodesWithDifferentRelationshipTypesDifferentAutomaticColors() throws Exception
+    {
+        GraphDatabaseService db = dbRule.getGraphDatabaseAPI();
+        try ( Transaction tx = db.beginTx() )
+        {
+            db.createNode();
+            for ( int i = 0; i < 8; i++ )
+            {
+                db.createNode().createRelationshipTo( db.createNode(), RelationshipType.withName( "TYPE" + i ) );
+            }
+            tx.success();
+        }
+
+        for ( int parallelism : new int[]{1, 4} )
+        {
+            StringWriter output = new StringWriter();
+            new GraphvizWriter( AsciiDocSimpleStyle.withAutomaticNodeColors() )
+                    .emit( output, Walker.fullGraph( db, 3 ), parallelism );
+            Set<String> colors = new HashSet<>();
+            for ( String block : output.toString().split( "\\n  \\]\\n" ) )
+            {
+                Matcher color = NODE_COLOR.matcher( block );
+                if ( NODE.matcher( block ).find() && color.find() )
+                {
+                    colors.add( color.group( 1 ) );
+                }
+            }
+            // one color for the node without relationships and one for each type
+            assertEquals( 9, colors.size() );
+        }
+    }
+
+    private static List<Node> createRandomGraph( GraphDatabaseService db )
+    {
+        List<Node> nodes = createRing( db, 200 );
+        try ( Transaction tx = db.beginTx() )
+        {
+            Random random = new Random( 42 );
+            for ( int i = 0; i < 400; i++ )
+            {
+                Node from = nodes.get( random.nextInt( nodes.size() ) );
+                Relationship relationship = from.createRelationshipTo( nodes.get( random.nextInt( nodes.size() ) ),
+                        RelationshipType.withName( "TYPE" + random.nextInt( 12 ) ) );
+                relationship.setProperty( "weight", random.nextDouble() );
+            }
+            for ( int i = 0; i < nodes.size(); i += 3 )
+            {
+                nodes.get( i ).addLabel( Label.label( "Label" + random.nextInt( 4 ) ) );
+            }
+            tx.success();
+        }
+        return nodes;
+    }
+
+    private static List<Node> createRing( GraphDatabaseService db, int size )
+    {
+        List<Node> nodes = new ArrayList<>();
+        try ( Transaction tx = db.beginTx() )
+        {
+            for ( int i = 0; i < size; i++ )
+            {
+                Node node = db.createNode();
+                node.setProperty( "name", "node" + i );
+                nodes.add( node );
+            }
+            for ( int i = 0; i < size; i++ )
+            {
+                nodes.get( i ).createRelationshipTo( nodes.get( (i + 1) % size ), RelationshipType.withName( "NEXT" ) );
+            }
+            tx.success();
+        }
+        return nodes;
+    }
+
+    private static String emit( Walker walker ) throws Exception
+    {
+        StringWriter out = new StringWriter();
+        new GraphvizWriter().emit( out, walker );
+        return out.toString();
+    }
+
+    private static Set<String> blocks( String output )
+    {
+        return new HashSet<>( asList( output.split( "\n  \\]\n" ) ) );
+    }
+
+    private static Set<String> nodeIds( String output )
+    {
+        Set<String> ids = new HashSet<>();
+        Matcher matcher = NODE.matcher( output );
+        while ( matcher.find() )
+        {
+            ids.add( matcher.group( 1 ) );
+        }
+        return ids;
+    }
+
+    private static Set<String> matches( Pattern pattern, String output )
+    {
+        Set<String> matches = new HashSet<>();
+        Matcher matcher = pattern.matcher( output );
+        while ( matcher.find() )
+        {
+            matches.add( matcher.group() );
+        }
+        return matches;
+    }
+}
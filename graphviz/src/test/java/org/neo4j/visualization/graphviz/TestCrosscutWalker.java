@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.visualization.graphviz;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.Iterables;
+import org.neo4j.test.rule.DatabaseRule;
+import org.neo4j.test.rule.ImpermanentDatabaseRule;
+import org.neo4j.walk.NodeSetWalker;
+import org.neo4j.walk.Visitor;
+import org.neo4j.walk.Walker;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestCrosscutWalker
+{
+    private static final RelationshipType KNOWS = RelationshipType.withName( "KNOWS" );
+    private static final RelationshipType LIKES = RelationshipType.withName( "LIKES" );
+
+    @Rule
+    public final DatabaseRule dbRule = new ImpermanentDatabaseRule();
+
+    @Test
+    public void shouldVisitEachRelationshipBetweenGivenNodesOnce() throws Exception
+    {
+        GraphDatabaseService db = dbRule.getGraphDatabaseAPI();
+        try ( Transaction tx = db.beginTx() )
+        {
+            Node hub = db.createNode();
+            List<Node> spokes = new ArrayList<>();
+            for ( int i = 0; i < 500; i++ )
+            {
+                Node spoke = db.createNode();
+                hub.createRelationshipTo( spoke, KNOWS );
+                spokes.add( spoke );
+            }
+            Node a = spokes.get( 3 ), b = spokes.get( 7 ), outside = spokes.get( 9 );
+            Relationship aLikesB = a.createRelationshipTo( b, LIKES );
+            Relationship bKnowsA = b.createRelationshipTo( a, KNOWS );
+            Relationship loop = a.createRelationshipTo( a, KNOWS );
+            a.createRelationshipTo( outside, KNOWS );
+
+            Relationship hubA = single( hub, a ), hubB = single( hub, b );
+
+            Recorder all = Walker.crosscut( asList( b, hub, a ) ).accept( new Recorder() );
+            assertEquals( asList( hub.getId(), a.getId(), b.getId() ), all.nodes );
+            assertEquals( 5, all.relationships.size() );
+            assertEquals( new HashSet<>( asList( hubA, hubB, aLikesB, bKnowsA, loop ) ),
+                    new HashSet<>( all.relationships ) );
+
+            Recorder knows = Walker.crosscut( asList( b, hub, a ), KNOWS ).accept( new Recorder() );
+            assertEquals( 4, knows.relationships.size() );
+            assertEquals( new HashSet<>( asList( hubA, hubB, bKnowsA, loop ) ), new HashSet<>( knows.relationships ) );
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldNotReadTheRelationshipsOfTheDensestNode() throws Exception
+    {
+        GraphDatabaseService db = dbRule.getGraphDatabaseAPI();
+        try ( Transaction tx = db.beginTx() )
+        {
+            Node dense = db.createNode();
+            for ( int i = 0; i < 1000; i++ )
+            {
+                dense.createRelationshipTo( db.createNode(), KNOWS );
+            }
+            Node a = db.createNode(), b = db.createNode();
+            Relationship denseKnowsA = dense.createRelationshipTo( a, KNOWS );
+            Relationship bLikesDense = b.createRelationshipTo( dense, LIKES );
+            Relationship loop = dense.createRelationshipTo( dense, LIKES );
+            Relationship aKnowsB = a.createRelationshipTo( b, KNOWS );
+
+            AtomicInteger reads = new AtomicInteger();
+            Recorder all = new NodeSetWalker( countingReads( db, reads ) )
+                    .add( dense.getId() ).add( a.getId() ).add( b.getId() )
+                    .accept( new Recorder() );
+            assertEquals( asList( dense.getId(), a.getId(), b.getId() ), all.nodes );
+            assertEquals( 4, all.relationships.size() );
+            assertEquals( new HashSet<>( asList( denseKnowsA, bLikesDense, loop, aKnowsB ) ),
+                    new HashSet<>( all.relationships ) );
+            // two relationships each of a and b, and the outgoing LIKES of the dense node, which is the loop
+            assertEquals( 5, reads.get() );
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldWalkNothingForNoNodes() throws Exception
+    {
+        Recorder none = Walker.crosscut( new ArrayList<>() ).accept( new Recorder() );
+        assertTrue( none.nodes.isEmpty() );
+        assertTrue( none.relationships.isEmpty() );
+    }
+
+    private static GraphDatabaseService countingReads( GraphDatabaseService db, AtomicInteger reads )
+    {
+        return delegate( GraphDatabaseService.class, db,
+                ( method, result ) -> result instanceof Node ? countingReads( (Node) result, reads ) : result );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private static Node countingReads( Node node, AtomicInteger reads )
+    {
+        return delegate( Node.class, node, ( method, result ) -> !method.getName().equals( "getRelationships" )
+                ? result : Iterables.map( relationship ->
+                {
+                    reads.incrementAndGet();
+                    return relationship;
+                }, (Iterable<Relationship>) result ) );
+    }
+
+    private static <T> T delegate( Class<T> type, T target, BiFunction<Method,Object,Object> results )
+    {
+        return type.cast( Proxy.newProxyInstance( type.getClassLoader(), new Class<?>[]{type},
+                ( proxy, method, args ) ->
+                {
+                    try
+                    {
+                        return results.apply( method, method.invoke( target, args ) );
+                    }
+                    catch ( InvocationTargetException e )
+                    {
+                        throw e.getCause();
+                    }
+                } ) );
+    }
+
+    private static Relationship single( Node from, Node to )
+    {
+        for ( Relationship relationship : from.getRelationships() )
+        {
+            if ( relationship.getOtherNode( from ).equals( to ) )
+            {
+                return relationship;
+            }
+        }
+        throw new AssertionError( "No relationship from " + from + " to " + to );
+    }
+
+    private static class Recorder implements Visitor<Recorder, RuntimeException>
+    {
+        final List<Long> nodes = new ArrayList<>();
+        final List<Relationship> relationships = new ArrayList<>();
+
+        @Override
+        public void visitNode( Node node )
+        {
+            nodes.add( node.getId() );
+        }
+
+        @Override
+        public void visitRelationship( Relationship relationship )
+        {
+            relationships.add( relationship );
+        }
+
+        @Override
+        public Visitor<Recorder, RuntimeException> visitSubgraph( String name )
+        {
+            return this;
+        }
+
+        @Override
+        public Recorder done()
+        {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.visualization.graphviz;
+
+import java.io.StringWriter;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DatabaseRule;
+import org.neo4j.test.rule.ImpermanentDatabaseRule;
+import org.neo4j.walk.Walker;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestDotFragmentCache
+{
+    @Rule
+    public final DatabaseRule dbRule = new ImpermanentDatabaseRule();
+    private GraphDatabaseService db;
+    private final DotFragmentCache cache = new DotFragmentCache();
+
+    @Before
+    public void setup()
+    {
+        db = dbRule.getGraphDatabaseAPI();
+        db.registerTransactionEventHandler( cache );
+    }
+
+    @Test
+    public void shouldOnlyRenderChangedNodesAndRelationshipsAgain() throws Exception
+    {
+        Node first;
+        Relationship likes;
+        try ( Transaction tx = db.beginTx() )
+        {
+            first = db.createNode( Label.label( "Person" ) );
+            first.setProperty( "name", "first" );
+            Node second = db.createNode();
+            second.setProperty( "name", "second" );
+            likes = first.createRelationshipTo( second, RelationshipType.withName( "LIKES" ) );
+            likes.setProperty( "since", 2010 );
+            second.createRelationshipTo( first, RelationshipType.withName( "KNOWS" ) );
+            tx.success();
+        }
+        assertSameAsUncached();
+        assertSameAsUncached();
+        assertEquals( 4, cache.reusedFragments() );
+
+        try ( Transaction tx = db.beginTx() )
+        {
+            first.setProperty( "name", "changed" );
+            likes.removeProperty( "since" );
+            tx.success();
+        }
+        assertSameAsUncached();
+        assertEquals( 4 + 2, cache.reusedFragments() );
+
+        try ( Transaction tx = db.beginTx() )
+        {
+            first.removeLabel( Label.label( "Person" ) );
+            tx.success();
+        }
+        assertSameAsUncached();
+    }
+
+    @Test
+    public void shouldNotReuseFragmentsWhoseColorsHaveChanged() throws Exception
+    {
+        Relationship likes;
+        try ( Transaction tx = db.beginTx() )
+        {
+            Node first = db.createNode();
+            Node second = db.createNode();
+            likes = first.createRelationshipTo( second, RelationshipType.withName( "LIKES" ) );
+            second.createRelationshipTo( first, RelationshipType.withName( "KNOWS" ) );
+            tx.success();
+        }
+        assertSameAsUncached();
+
+        // KNOWS now gets the first automatic color, that LIKES had before
+        try ( Transaction tx = db.beginTx() )
+        {
+            likes.delete();
+            tx.success();
+        }
+        assertSameAsUncached();
+    }
+
+    private void assertSameAsUncached() throws Exception
+    {
+        try ( Transaction tx = db.beginTx() )
+        {
+            StringWriter uncached = new StringWriter();
+            new GraphvizWriter( AsciiDocSimpleStyle.withAutomaticRelationshipTypeColors() )
+                    .emit( uncached, Walker.fullGraph( db ) );
+            StringWriter cached = new StringWriter();
+            new GraphvizWriter( AsciiDocSimpleStyle.withAutomaticRelationshipTypeColors() )
+                    .emit( cached, Walker.fullGraph( db ), cache );
+            assertEquals( uncached.toString(), cached.toString() );
+            tx.success();
+        }
+    }
+}
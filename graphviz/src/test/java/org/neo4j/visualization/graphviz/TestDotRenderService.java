@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.visualization.graphviz;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.neo4j.test.rule.TestDirectory;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+
+public class TestDotRenderService
+{
+    @Rule
+    public final TestDirectory directory = TestDirectory.testDirectory();
+
+    @Test
+    public void shouldLayOutEachGraphOnce() throws Exception
+    {
+        File dot = fakeDot();
+        File cache = directory.directory( "cache" );
+        List<Future<File>> svgs = new ArrayList<>();
+        try ( DotRenderService service = new DotRenderService( dot, cache, 4 ) )
+        {
+            for ( int i = 0; i < 20; i++ )
+            {
+                svgs.add( service.render( "digraph { N" + i % 5 + " }" ) );
+            }
+            for ( int i = 0; i < 20; i++ )
+            {
+                String svg = new String( Files.readAllBytes( svgs.get( i ).get().toPath() ), StandardCharsets.UTF_8 );
+                assertEquals( "<svg>digraph { N" + i % 5 + " }</svg>\n", svg );
+            }
+        }
+        try ( DotRenderService service = new DotRenderService( dot, cache, 4 ) )
+        {
+            assertEquals( svgs.get( 0 ).get(), service.render( "digraph { N0 }" ).get() );
+        }
+        assertEquals( 5, Files.readAllLines( directory.file( "runs" ).toPath() ).size() );
+    }
+
+    @Test
+    public void shouldReportErrorsFromDot() throws Exception
+    {
+        try ( DotRenderService service = new DotRenderService( fakeDot(), directory.directory( "cache" ), 1 ) )
+        {
+            service.render( "fail" ).get();
+            fail( "should not lay out a broken graph" );
+        }
+        catch ( ExecutionException e )
+        {
+            assertThat( e.getCause().getMessage(), containsString( "syntax error" ) );
+        }
+    }
+
+    @Test
+    public void shouldDoNothingWithoutDot() throws Exception
+    {
+        try ( DotRenderService service = new DotRenderService( null, directory.directory( "cache" ), 1 ) )
+        {
+            assertFalse( service.isAvailable() );
+            assertNull( service.render( "digraph {}" ).get() );
+        }
+    }
+
+    private File fakeDot() throws Exception
+    {
+        assumeFalse( SystemUtils.IS_OS_WINDOWS );
+        File dot = directory.file( "dot" );
+        String script = "#!/bin/sh\n" +
+                        "echo run >> '" + directory.file( "runs" ).getAbsolutePath() + "'\n" +
+                        "input=$(cat)\n" +
+                        "case \"$input\" in fail) echo 'syntax error' >&2; exit 1;; esac\n" +
+                        "echo \"<svg>$input</svg>\"\n";
+        Files.write( dot.toPath(), script.getBytes( StandardCharsets.UTF_8 ) );
+        assertTrue( dot.setExecutable( true ) );
+        return dot;
+    }
+}
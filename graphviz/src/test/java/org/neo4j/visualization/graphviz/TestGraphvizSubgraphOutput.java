@@ -20,7 +20,6 @@
 package org.neo4j.visualization.graphviz;
 
 import java.io.ByteArrayOutputStream;
-import java.io.OutputStream;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -35,6 +34,9 @@ import org.neo4j.test.rule.ImpermanentDatabaseRule;
 import org.neo4j.visualization.SubgraphMapper;
 
 import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class TestGraphvizSubgraphOutput
 {
@@ -67,7 +69,7 @@ public class TestGraphvizSubgraphOutput
             final Relationship tobiasKNOWSjohan = tobias.createRelationshipTo( johan, type.KNOWS );
             final Relationship tobiasWORKS_FORemil = tobias.createRelationshipTo( emil, type.WORKS_FOR );
 
-            OutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
             SubgraphMapper subgraphMapper = new SubgraphMapper()
             {
                 @Override
@@ -98,6 +100,20 @@ public class TestGraphvizSubgraphOutput
             };
 
             writer.emit( out, walker );
+            String output = out.toString( "UTF-8" );
+            int sweden = output.indexOf( "subgraph cluster_Sweden {" );
+            int usa = output.indexOf( "subgraph cluster_USA {" );
+            assertTrue( sweden >= 0 && usa > sweden );
+            String swedenCluster = output.substring( sweden, usa );
+            assertTrue( swedenCluster.contains( "N" + tobias.getId() + " [" ) );
+            assertTrue( swedenCluster.contains( "N" + johan.getId() + " [" ) );
+            assertFalse( swedenCluster.contains( "N" + emil.getId() + " [" ) );
+            assertEquals( 4, output.split( " -> " ).length - 1 );
+
+            // walking again gives the same output, since nothing is kept from the last walk
+            ByteArrayOutputStream again = new ByteArrayOutputStream();
+            writer.emit( again, walker );
+            assertEquals( output, again.toString( "UTF-8" ) );
             tx.success();
         }
     }
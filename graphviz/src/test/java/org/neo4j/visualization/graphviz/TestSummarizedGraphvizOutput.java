@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.visualization.graphviz;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DatabaseRule;
+import org.neo4j.test.rule.ImpermanentDatabaseRule;
+import org.neo4j.walk.NodeSampler;
+import org.neo4j.walk.NodeSetWalker;
+import org.neo4j.walk.Visitor;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class TestSummarizedGraphvizOutput
+{
+    private static final Pattern NODE = Pattern.compile( "^  N(\\d+) \\[$", Pattern.MULTILINE );
+    private static final Pattern EDGE = Pattern.compile( "^  N(\\d+) -> N(\\d+) \\[$", Pattern.MULTILINE );
+    private static final RelationshipType KNOWS = RelationshipType.withName( "KNOWS" );
+    private static final RelationshipType LIKES = RelationshipType.withName( "LIKES" );
+
+    @Rule
+    public final DatabaseRule dbRule = new ImpermanentDatabaseRule();
+
+    @Test
+    public void shouldAggregateParallelRelationshipsAndSumUpDenseNodes() throws Exception
+    {
+        GraphDatabaseService db = dbRule.getGraphDatabaseAPI();
+        try ( Transaction tx = db.beginTx() )
+        {
+            Node hub = db.createNode();
+            Node friend = db.createNode();
+            for ( int i = 0; i < 3; i++ )
+            {
+                hub.createRelationshipTo( friend, KNOWS );
+            }
+            for ( int i = 0; i < 40; i++ )
+            {
+                hub.createRelationshipTo( db.createNode(), KNOWS );
+            }
+
+            String output = emitSummary( new NodeSetWalker( db ).add( hub.getId() ).add( friend.getId() ), 10 );
+
+            assertEquals( 2, count( NODE, output ) );
+            assertEquals( 1, count( EDGE, output ) );
+            assertThat( output, containsString( "weight = 3\n" ) );
+            assertThat( output, containsString( "label = \"+40 KNOWS\"" ) );
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldBoundOutputBySampleSize() throws Exception
+    {
+        GraphDatabaseService db = dbRule.getGraphDatabaseAPI();
+        List<Node> nodes = new ArrayList<>();
+        try ( Transaction tx = db.beginTx() )
+        {
+            for ( int i = 0; i < 1000; i++ )
+            {
+                Node node = db.createNode();
+                if ( i > 0 )
+                {
+                    node.createRelationshipTo( nodes.get( i / 2 ), KNOWS );
+                }
+                nodes.add( node );
+            }
+            tx.success();
+        }
+
+        try ( Transaction tx = db.beginTx() )
+        {
+            for ( NodeSampler.Strategy strategy : NodeSampler.Strategy.values() )
+            {
+                NodeSetWalker sample = new NodeSampler( db, 42 ).sample( 50, strategy );
+                assertEquals( 50, sample.size() );
+                String output = emitSummary( sample, 20 );
+                assertEquals( 50, count( NODE, output ) );
+                assertThat( count( EDGE, output ), lessThanOrEqualTo( 49 ) );
+            }
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldWalkToNeighboursOfAllTypesOfDenseNodes() throws Exception
+    {
+        GraphDatabaseService db = dbRule.getGraphDatabaseAPI();
+        Set<Long> known = new HashSet<>(), liked = new HashSet<>();
+        try ( Transaction tx = db.beginTx() )
+        {
+            // the relationships of a dense node are listed by type, all KNOWS before any LIKES
+            Node hub = db.createNode();
+            for ( int i = 0; i < 3000; i++ )
+            {
+                known.add( hub.createRelationshipTo( db.createNode(), KNOWS ).getEndNodeId() );
+            }
+            for ( int i = 0; i < 3000; i++ )
+            {
+                liked.add( hub.createRelationshipTo( db.createNode(), LIKES ).getEndNodeId() );
+            }
+            tx.success();
+        }
+
+        try ( Transaction tx = db.beginTx() )
+        {
+            Set<Long> sampled = nodeIds( new NodeSampler( db, 42 ).sample( 400, NodeSampler.Strategy.RANDOM_WALK ) );
+            int sampledKnown = intersection( sampled, known ), sampledLiked = intersection( sampled, liked );
+            assertThat( sampledKnown, greaterThan( (sampledKnown + sampledLiked) / 3 ) );
+            assertThat( sampledLiked, greaterThan( (sampledKnown + sampledLiked) / 3 ) );
+            tx.success();
+        }
+    }
+
+    private static Set<Long> nodeIds( NodeSetWalker walker )
+    {
+        Set<Long> ids = new HashSet<>();
+        walker.accept( new Visitor<Void, RuntimeException>()
+        {
+            @Override
+            public void visitNode( Node node )
+            {
+                ids.add( node.getId() );
+            }
+
+            @Override
+            public void visitRelationship( Relationship relationship )
+            {
+            }
+
+            @Override
+            public Visitor<Void, RuntimeException> visitSubgraph( String name )
+            {
+                return this;
+            }
+
+            @Override
+            public Void done()
+            {
+                return null;
+            }
+        } );
+        return ids;
+    }
+
+    private static int intersection( Set<Long> sampled, Set<Long> ids )
+    {
+        Set<Long> both = new HashSet<>( sampled );
+        both.retainAll( ids );
+        return both.size();
+    }
+
+    private static String emitSummary( NodeSetWalker walker, int denseDegree ) throws Exception
+    {
+        StringWriter out = new StringWriter();
+        new GraphvizWriter().emitSummary( out, walker, denseDegree );
+        return out.toString();
+    }
+
+    private static int count( Pattern pattern, String output )
+    {
+        int count = 0;
+        Matcher matcher = pattern.matcher( output );
+        while ( matcher.find() )
+        {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.visualization.graphviz.color;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DatabaseRule;
+import org.neo4j.test.rule.ImpermanentDatabaseRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestAutoNodeColor
+{
+    private static final RelationshipType KNOWS = RelationshipType.withName( "KNOWS" );
+    private static final RelationshipType LIKES = RelationshipType.withName( "LIKES" );
+
+    @Rule
+    public final DatabaseRule dbRule = new ImpermanentDatabaseRule();
+
+    @Test
+    public void shouldColorDenseNodesByTheirRelationshipTypes() throws Exception
+    {
+        GraphDatabaseService db = dbRule.getGraphDatabaseAPI();
+        try ( Transaction tx = db.beginTx() )
+        {
+            Node dense = db.createNode();
+            for ( int i = 0; i < 200; i++ )
+            {
+                dense.createRelationshipTo( db.createNode(), KNOWS );
+            }
+            db.createNode().createRelationshipTo( dense, LIKES );
+            Node sparse = db.createNode();
+            sparse.createRelationshipTo( db.createNode(), LIKES );
+            db.createNode().createRelationshipTo( sparse, KNOWS );
+            Node knowsOnly = db.createNode();
+            knowsOnly.createRelationshipTo( db.createNode(), KNOWS );
+
+            AutoNodeColor ignoringDirection = new AutoNodeColor();
+            assertEquals( ignoringDirection.getColor( dense ), ignoringDirection.getColor( sparse ) );
+            assertNotEquals( ignoringDirection.getColor( dense ), ignoringDirection.getColor( knowsOnly ) );
+
+            AutoNodeColor withDirection = new AutoNodeColor( AutoNodeColor.NodeColorConfig.BOTH );
+            assertNotEquals( withDirection.getColor( dense ), withDirection.getColor( sparse ) );
+
+            AutoNodeColor outgoing = new AutoNodeColor( AutoNodeColor.NodeColorConfig.OUTGOING );
+            assertEquals( outgoing.getColor( dense ), outgoing.getColor( knowsOnly ) );
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldKeepColorsOfKeysWhenSharedAndFull() throws Exception
+    {
+        DefaultColorMapping<Integer> colors = new DefaultColorMapping<>();
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try
+        {
+            List<Future<List<String>>> mapped = new ArrayList<>();
+            for ( int thread = 0; thread < 4; thread++ )
+            {
+                mapped.add( executor.submit( () ->
+                {
+                    List<String> result = new ArrayList<>();
+                    for ( int key = 0; key < 2 * DefaultColorMapping.MAX_MAPPED_KEYS; key++ )
+                    {
+                        result.add( colors.getColor( key ) );
+                    }
+                    return result;
+                } ) );
+            }
+            List<String> first = mapped.get( 0 ).get();
+            for ( Future<List<String>> other : mapped )
+            {
+                assertEquals( first, other.get() );
+            }
+            Set<String> colorsOfFirstKeys = new HashSet<>( first.subList( 0, Color.values().length * 2 ) );
+            assertEquals( Color.values().length * 2, colorsOfFirstKeys.size() );
+            for ( int key = 0; key < 2 * DefaultColorMapping.MAX_MAPPED_KEYS; key++ )
+            {
+                assertEquals( first.get( key ), colors.getColor( key ) );
+            }
+            assertTrue( colorsOfFirstKeys.containsAll( first ) );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2002-2017 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.visualization.json;
+
+import java.io.StringWriter;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.rule.DatabaseRule;
+import org.neo4j.test.rule.ImpermanentDatabaseRule;
+import org.neo4j.visualization.SubgraphMapper;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class TestJsonGraphWriter
+{
+    @Rule
+    public final DatabaseRule dbRule = new ImpermanentDatabaseRule();
+
+    @Test
+    public void shouldWriteNodesRelationshipsAndSubgraphsInWalkOrder() throws Exception
+    {
+        GraphDatabaseService db = dbRule.getGraphDatabaseAPI();
+        try ( Transaction tx = db.beginTx() )
+        {
+            Node emil = db.createNode( Label.label( "Person" ) );
+            emil.setProperty( "name", "Emil \"the\" founder" );
+            emil.setProperty( "country", "Sweden" );
+            Node jim = db.createNode();
+            jim.setProperty( "scores", new int[]{1, 2} );
+            jim.setProperty( "country", "USA" );
+            Relationship knows = emil.createRelationshipTo( jim, RelationshipType.withName( "KNOWS" ) );
+            knows.setProperty( "since", 2009L );
+
+            StringWriter out = new StringWriter();
+            new JsonGraphWriter().emit( out, new SubgraphMapper.SubgraphMappingWalker(
+                    node -> (String) node.getProperty( "country" ) )
+            {
+                @Override
+                protected Iterable<Node> nodes()
+                {
+                    return asList( emil, jim );
+                }
+
+                @Override
+                protected Iterable<Relationship> relationships()
+                {
+                    return asList( knows );
+                }
+            } );
+            JsonNode graph = new ObjectMapper().readTree( out.toString() ).get( "graph" );
+
+            assertEquals( 3, graph.size() );
+            JsonNode sweden = graph.get( 0 );
+            assertEquals( "Sweden", sweden.get( "subgraph" ).getTextValue() );
+            JsonNode node = sweden.get( "graph" ).get( 0 );
+            assertEquals( emil.getId(), node.get( "node" ).getLongValue() );
+            assertEquals( "Person", node.get( "labels" ).get( 0 ).getTextValue() );
+            assertEquals( "Emil \"the\" founder", node.get( "properties" ).get( "name" ).getTextValue() );
+            JsonNode scores = graph.get( 1 ).get( "graph" ).get( 0 ).get( "properties" ).get( "scores" );
+            assertEquals( 2, scores.get( 1 ).getIntValue() );
+            JsonNode relationship = graph.get( 2 );
+            assertEquals( "KNOWS", relationship.get( "type" ).getTextValue() );
+            assertEquals( jim.getId(), relationship.get( "end" ).getLongValue() );
+            assertEquals( 2009L, relationship.get( "properties" ).get( "since" ).getLongValue() );
+            tx.success();
+        }
+    }
+}